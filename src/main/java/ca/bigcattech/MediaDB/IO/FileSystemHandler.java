@@ -46,6 +46,7 @@ public class FileSystemHandler {
 	public static final File CONTENT_DIR = createRootSubdirectory(new File("content"));
 	public static final File CONTENT_THUMBNAIL_DIR = createSubdirectory(new File("content"), new File("thumbnails"));
 	public static final File TRASH_DIR = createRootSubdirectory(new File("trash"));
+	public static final File SIGNATURE_STORE_FILE = new File("signatures.dat");
 	private static final Logger log = LoggerFactory.getLogger(FileSystemHandler.class.getName());
 	
 	private static final String FONT_URL = "https://use.fontawesome.com/releases/v5.15.3/fontawesome-free-5.15.3-desktop.zip";
@@ -79,6 +80,9 @@ public class FileSystemHandler {
 	private static final String KEY_SEARCH_OPTIONS_SEARCH_ORDER = "search_options_search_order";
 	private static final String KEY_SEARCH_OPTIONS_RESTRICTED = "search_options_restricted";
 	private static final String KEY_CONTENT_OPTIONS_SLIDESHOW_TIMER = "content_options_slideshow_timer";
+	private static final String KEY_DB_OPTIONS_BULK_WRITE_BATCH_SIZE = "db_options_bulk_write_batch_size";
+	private static final String KEY_DB_OPTIONS_COUNTER_FLUSH_INTERVAL = "db_options_counter_flush_interval";
+	private static final String KEY_INGEST_OPTIONS_SIMILARITY_MODE = "ingest_options_similarity_mode";
 	
 	public static Options getOptions() {
 		
@@ -105,6 +109,9 @@ public class FileSystemHandler {
 		document.putIfAbsent(KEY_SEARCH_OPTIONS_SEARCH_ORDER, Options.SearchOptions.SortType.HASH);
 		document.putIfAbsent(KEY_CONTENT_OPTIONS_SLIDESHOW_TIMER, 5);
 		document.putIfAbsent(KEY_SEARCH_OPTIONS_RESTRICTED, false);
+		document.putIfAbsent(KEY_DB_OPTIONS_BULK_WRITE_BATCH_SIZE, 1000);
+		document.putIfAbsent(KEY_DB_OPTIONS_COUNTER_FLUSH_INTERVAL, 5000);
+		document.putIfAbsent(KEY_INGEST_OPTIONS_SIMILARITY_MODE, Options.SimilarityMode.COLOUR_GRID.name());
 		return document;
 		
 	}
@@ -121,6 +128,9 @@ public class FileSystemHandler {
 		options.getSearchOptions().setReverseOrder(document.getBoolean(KEY_SEARCH_OPTIONS_REVERSE_ORDER));
 		options.getSearchOptions().setSearchType(Options.SearchOptions.SortType.valueOf(document.getString(KEY_SEARCH_OPTIONS_SEARCH_ORDER)));
 		options.setSlideshowTimer(document.getInteger(KEY_CONTENT_OPTIONS_SLIDESHOW_TIMER));
+		options.setBulkWriteBatchSize(document.getInteger(KEY_DB_OPTIONS_BULK_WRITE_BATCH_SIZE));
+		options.setCounterFlushInterval(document.getInteger(KEY_DB_OPTIONS_COUNTER_FLUSH_INTERVAL));
+		options.setSimilarityMode(Options.SimilarityMode.valueOf(document.getString(KEY_INGEST_OPTIONS_SIMILARITY_MODE)));
 		return options;
 		
 	}
@@ -160,6 +170,9 @@ public class FileSystemHandler {
 		document.put(KEY_SEARCH_OPTIONS_REVERSE_ORDER, options.getSearchOptions().isReverseOrder());
 		document.put(KEY_SEARCH_OPTIONS_SEARCH_ORDER, options.getSearchOptions().getSearchType().name());
 		document.put(KEY_CONTENT_OPTIONS_SLIDESHOW_TIMER, options.getSlideshowTimer());
+		document.put(KEY_DB_OPTIONS_BULK_WRITE_BATCH_SIZE, options.getBulkWriteBatchSize());
+		document.put(KEY_DB_OPTIONS_COUNTER_FLUSH_INTERVAL, options.getCounterFlushInterval());
+		document.put(KEY_INGEST_OPTIONS_SIMILARITY_MODE, options.getSimilarityMode().name());
 		return document;
 		
 	}
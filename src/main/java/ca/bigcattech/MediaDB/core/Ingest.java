@@ -23,7 +23,12 @@ import ca.bigcattech.MediaDB.IO.FileSystemHandler;
 import ca.bigcattech.MediaDB.db.DBHandler;
 import ca.bigcattech.MediaDB.db.content.Content;
 import ca.bigcattech.MediaDB.db.content.ContentType;
+import ca.bigcattech.MediaDB.image.DuplicateClusterJob;
 import ca.bigcattech.MediaDB.image.ImageSignature;
+import ca.bigcattech.MediaDB.image.PerceptualHashIndex;
+import ca.bigcattech.MediaDB.image.SignatureIndex;
+import ca.bigcattech.MediaDB.image.SignatureRegistry;
+import ca.bigcattech.MediaDB.image.SignatureStore;
 import ca.bigcattech.MediaDB.image.SimilarityFinder;
 import ca.bigcattech.MediaDB.image.ThumbnailHandler;
 import ca.bigcattech.MediaDB.utils.ImageUtils;
@@ -63,6 +68,13 @@ public class Ingest {
 	//public static final String PREFIX_DUPLICATE_SIMILARITY_100 = "DUPLICATE_SIMILARITY_100_";
 	public static final String PREFIX_DUPLICATE_SIMILARITY_500 = "DUPLICATE_SIMILARITY_500_";
 	
+	//Signature distances under which a new image counts as a duplicate of something already in the library
+	private static final double SIMILARITY_DUPLICATE_100 = 100;
+	private static final double SIMILARITY_DUPLICATE_500 = 500;
+	//The same for the number of bits that differ between perceptual hashes
+	private static final int PERCEPTUAL_DUPLICATE_100 = 2;
+	private static final int PERCEPTUAL_DUPLICATE_500 = 8;
+	
 	//=======================================BEGIN CLASS=======================================
 	private static final Logger log = LoggerFactory.getLogger(Ingest.class);
 	private final DBHandler mDBHandler;
@@ -75,14 +87,27 @@ public class Ingest {
 	private Session mSession;
 	private boolean mRun = false;
 
-	private ArrayList<ImageSignature> mSignatures;
+	private final SignatureIndex mSignatures = new SignatureIndex();
+	//In perceptual hash mode anything that has a perceptual hash goes in here instead of mSignatures
+	private final PerceptualHashIndex mPerceptualHashes = new PerceptualHashIndex();
+	//Everything ingested since we started, which isn't in the signature file yet. While the indexes build in the background checks scan these and the file instead.
+	// Shared with the SimilarityFinder so its lookups see them too
+	private final SignatureRegistry mNewSignatures = new SignatureRegistry();
+	private SignatureStore mSignatureStore = null;
+	private Thread mIndexThread = null;
+	private volatile boolean mIndexReady = false;
+	private volatile boolean mPerceptualMode = false;
+	private volatile int mIndexedRecords = 0;
+	private volatile int mIndexedNewSignatures = 0;
+	//Its own lock instead of the Ingest one, so a duplicate scan doesn't hold up ingest, purging or validating while it runs
+	private final Object mDuplicateScanLock = new Object();
 	
 	public Ingest(DBHandler dbHandler) {
 		
 		log.info("Setting up ingest handler");
 		
 		mDBHandler = dbHandler;
-		mSimilarityFinder = new SimilarityFinder(mDBHandler);
+		mSimilarityFinder = new SimilarityFinder(mDBHandler, mNewSignatures);
 		
 		mIngestThread = new Thread(() -> {
 			
@@ -136,8 +161,11 @@ public class Ingest {
 	
 	public void stop() {
 
-		if (mSignatures != null && !mSignatures.isEmpty())
-			mSignatures.clear();
+		mSignatures.clear();
+		mPerceptualHashes.clear();
+		mNewSignatures.clear();
+		mIndexedNewSignatures = 0;
+		mIndexReady = false;
 		log.info("Stopping ingest handler");
 		mRun = false;
 		try {
@@ -204,6 +232,142 @@ public class Ingest {
 		
 	}
 	
+	/**
+	 * Get the signatures ready for the similarity checks. With a signature file there's nothing to wait for, the indexes are built in the background and checks scan the file until they're done
+	 */
+	private void loadSignatures() {
+		
+		boolean perceptual = mSession != null && mSession.getOptions().getSimilarityMode() == Options.SimilarityMode.PERCEPTUAL_HASH;
+		
+		SignatureStore store = mDBHandler.getSignatureStore();
+		if (store == null) {
+			mSignatureStore = null;
+			loadIndexes(mDBHandler.getAllSignatures(), perceptual);
+			mIndexedNewSignatures = 0;
+			mIndexReady = true;
+			return;
+		}
+		
+		mSignatureStore = store;
+		//If the mode changed while they're being built it gets picked up next time
+		if (mIndexThread != null && mIndexThread.isAlive()) return;
+		if (mIndexReady && mPerceptualMode == perceptual) return;
+		mIndexReady = false;
+		
+		mIndexThread = new Thread(() -> {
+			long start = System.currentTimeMillis();
+			int count = store.getNumRecords();
+			loadIndexes(store.load(0, count), perceptual);
+			mIndexedRecords = count;
+			mIndexedNewSignatures = 0;
+			mIndexReady = true;
+			log.info("Built the signature indexes from {} records in {}ms", count, System.currentTimeMillis() - start);
+		}, "SignatureIndex");
+		mIndexThread.setDaemon(true);
+		mIndexThread.start();
+		
+	}
+	
+	private void loadIndexes(Collection<ImageSignature> signatures, boolean perceptual) {
+		
+		mPerceptualMode = perceptual;
+		if (!perceptual) {
+			mSignatures.load(signatures);
+			mPerceptualHashes.clear();
+			return;
+		}
+		
+		//Only the signatures from before perceptual hashes were added still need comparing by colour
+		List<ImageSignature> colour = new ArrayList<>();
+		List<ImageSignature> hashed = new ArrayList<>();
+		for (ImageSignature signature : signatures) {
+			if (signature.hasPerceptualHash()) hashed.add(signature);
+			else colour.add(signature);
+		}
+		mSignatures.load(colour);
+		mPerceptualHashes.load(hashed);
+		
+	}
+	
+	private void indexSignature(ImageSignature signature) {
+		
+		if (mPerceptualMode && signature.hasPerceptualHash()) mPerceptualHashes.add(signature);
+		else mSignatures.add(signature);
+		
+	}
+	
+	/**
+	 * Only called from the ingest thread
+	 *
+	 * @return how close the closest match is, or null if nothing is close enough to count as a duplicate
+	 */
+	private IngestResult findDuplicate(ImageSignature signature) {
+		
+		List<Map.Entry<String, Double>> colour;
+		List<Map.Entry<String, Double>> perceptual = new ArrayList<>();
+		
+		SignatureStore store = mSignatureStore;
+		if (!mIndexReady) {
+			//Everything gets compared by colour until the indexes are ready, it's the only thing every signature has
+			colour = mSimilarityFinder.findMostSimilar(signature, store, 1, SIMILARITY_DUPLICATE_500);
+			List<Map.Entry<String, Double>> newResults = mSimilarityFinder.findMostSimilar(signature, mNewSignatures.snapshot(), 1, SIMILARITY_DUPLICATE_500);
+			if (colour.isEmpty() || (!newResults.isEmpty() && newResults.get(0).getValue() < colour.get(0).getValue())) colour = newResults;
+		}
+		else {
+			
+			//Catch the indexes up with anything added to the file or ingested while they were being built
+			if (store != null && mIndexedRecords < store.getNumRecords()) {
+				int count = store.getNumRecords();
+				for (ImageSignature added : store.load(mIndexedRecords, count)) {
+					indexSignature(added);
+				}
+				mIndexedRecords = count;
+			}
+			//Anything that's made it into the file has just been indexed from there, indexing it again would count it twice
+			SignatureRegistry.Snapshot newSignatures = mNewSignatures.snapshot();
+			for (int id = mIndexedNewSignatures; id < newSignatures.size(); id++) {
+				if (store != null && store.contains(newSignatures.getHash(id))) continue;
+				indexSignature(newSignatures.getSignature(id));
+			}
+			mIndexedNewSignatures = newSignatures.size();
+			
+			colour = mSimilarityFinder.findMostSimilar(signature, mSignatures, 1, SIMILARITY_DUPLICATE_500);
+			if (mPerceptualMode && signature.hasPerceptualHash())
+				perceptual = mPerceptualHashes.findNearest(signature.getPerceptualHash(), 1, PERCEPTUAL_DUPLICATE_500);
+			
+		}
+		
+		if (!colour.isEmpty() && colour.get(0).getValue() <= SIMILARITY_DUPLICATE_100) return IngestResult.SIMILARITY_DUPLICATE_100;
+		if (!perceptual.isEmpty() && perceptual.get(0).getValue() <= PERCEPTUAL_DUPLICATE_100) return IngestResult.SIMILARITY_DUPLICATE_100;
+		if (!colour.isEmpty() || !perceptual.isEmpty()) return IngestResult.SIMILARITY_DUPLICATE_500;
+		return null;
+		
+	}
+	
+	/**
+	 * @return a job that groups every near duplicate already in the library with the same thresholds ingest uses
+	 */
+	public DuplicateClusterJob createDuplicateClusterJob() {
+		
+		boolean perceptual = mSession != null && mSession.getOptions().getSimilarityMode() == Options.SimilarityMode.PERCEPTUAL_HASH;
+		return new DuplicateClusterJob(mDBHandler, SIMILARITY_DUPLICATE_500, perceptual ? PERCEPTUAL_DUPLICATE_500 : -1);
+		
+	}
+	
+	/**
+	 * Run the job and save the groups it finds, picking up where it left off if it was stopped partway through.
+	 * This takes a long time so it shouldn't be called from the EDT, only one runs at a time and it doesn't hold up ingest
+	 *
+	 * @return the content hashes in each group
+	 */
+	public List<List<String>> findDuplicateClusters(DuplicateClusterJob job) {
+		
+		synchronized (mDuplicateScanLock) {
+			return job.run();
+		}
+		
+	}
+	
 	public int getNumIngestTasks() {
 		return mIngestTasks.size();
 	}
@@ -220,7 +384,7 @@ public class Ingest {
 		
 		mHashes.clear();
 
-		mSignatures = new ArrayList<>(mDBHandler.getAllSignatures());
+		loadSignatures();
 		
 		start();
 		
@@ -416,7 +580,7 @@ public class Ingest {
 				Content content = packageContent();
 				//Send the content object to the database
 				export(content);
-				mSignatures.add(mSignature);
+				mNewSignatures.add(mSignature);
 				
 			}
 			
@@ -532,20 +696,13 @@ public class Ingest {
 			mSignature = ImageUtils.calcImageSignature(thumbnail);
 			mSignature.setHash(mHash);
 			long start = System.currentTimeMillis();
-			List<Map.Entry<String, Double>> results = mSimilarityFinder.checkSimilarity(mSignature, mSignatures);
+			//Only the closest match within the looser threshold changes what we do
+			IngestResult result = findDuplicate(mSignature);
 			log.info("Similarity check took: " + (System.currentTimeMillis() - start) + "ms to check similarity");
 			
-			if (results.isEmpty()) return false; //No similar images
-			if (results.get(0).getValue() <= 100) {
-				mResult = IngestResult.SIMILARITY_DUPLICATE_100;
-				return true;
-			}
-			if (results.get(0).getValue() <= 500) {
-				mResult = IngestResult.SIMILARITY_DUPLICATE_500;
-				return true;
-			}
-
-			return false;
+			if (result == null) return false; //No similar images
+			mResult = result;
+			return true;
 			
 		}
 		
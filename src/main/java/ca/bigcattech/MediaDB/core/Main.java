@@ -20,28 +20,51 @@
 package ca.bigcattech.MediaDB.core;
 
 import ca.bigcattech.MediaDB.IO.FileSystemHandler;
+import ca.bigcattech.MediaDB.db.CachingDBHandler;
 import ca.bigcattech.MediaDB.db.DBHandler;
+import ca.bigcattech.MediaDB.db.InMemoryDBHandler;
 import ca.bigcattech.MediaDB.db.MongoDBHandler;
 import ca.bigcattech.MediaDB.gui.frames.MainFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+
 public class Main {
 	
 	private static final Logger log = LoggerFactory.getLogger(Main.class);
 	
+	//Start with an empty database that only lives as long as the program does, nothing is saved
+	public static final String ARG_IN_MEMORY = "--in-memory";
+	
 	public static void main(String[] args) {
 		
 		log.info("Starting up");
 		
 		FileSystemHandler.init();
 		
-		DBHandler dbHandler = new MongoDBHandler("media_db", "127.0.0.1");
+		Options options = FileSystemHandler.getOptions();
+		
+		DBHandler dbHandler;
+		if (Arrays.asList(args).contains(ARG_IN_MEMORY)) {
+			dbHandler = new InMemoryDBHandler();
+		}
+		else {
+			MongoDBHandler mongoDBHandler = new MongoDBHandler("media_db", "127.0.0.1");
+			mongoDBHandler.setBulkWriteBatchSize(options.getBulkWriteBatchSize());
+			mongoDBHandler.setSignatureStoreFile(FileSystemHandler.SIGNATURE_STORE_FILE);
+			Runtime.getRuntime().addShutdownHook(new Thread(mongoDBHandler::logHashFilterStats));
+			Runtime.getRuntime().addShutdownHook(new Thread(mongoDBHandler::closeSignatureStore));
+			dbHandler = mongoDBHandler;
+		}
+		
+		CachingDBHandler cachingDBHandler = new CachingDBHandler(dbHandler);
+		Runtime.getRuntime().addShutdownHook(new Thread(cachingDBHandler::logCacheStats));
+		dbHandler = cachingDBHandler;
 		dbHandler.initDB();
 		
 		Ingest ingest = new Ingest(dbHandler);
 		
-		Options options = FileSystemHandler.getOptions();
 		MainFrame mainFrame = new MainFrame(options);
 		Session session = new Session(mainFrame, dbHandler, ingest, options);
 		
@@ -32,6 +32,9 @@ public class Options {
 	private int mResultsPerPage = 250;
 	private int mSlideshowTimer = 5;
 	private boolean mIngestAutoTagField = false;
+	private int mBulkWriteBatchSize = 1000;
+	private int mCounterFlushInterval = 5000;
+	private SimilarityMode mSimilarityMode = SimilarityMode.COLOUR_GRID;
 	
 	public Options() {
 		mSearchOptions = new SearchOptions();
@@ -69,10 +72,44 @@ public class Options {
 		mIngestAutoTagField = ingestAutoTagField;
 	}
 	
+	public int getBulkWriteBatchSize() {
+		return mBulkWriteBatchSize;
+	}
+	
+	public void setBulkWriteBatchSize(int bulkWriteBatchSize) {
+		mBulkWriteBatchSize = bulkWriteBatchSize;
+	}
+	
+	public int getCounterFlushInterval() {
+		return mCounterFlushInterval;
+	}
+	
+	public void setCounterFlushInterval(int counterFlushInterval) {
+		mCounterFlushInterval = counterFlushInterval;
+	}
+	
+	public SimilarityMode getSimilarityMode() {
+		return mSimilarityMode;
+	}
+	
+	public void setSimilarityMode(SimilarityMode similarityMode) {
+		mSimilarityMode = similarityMode;
+	}
+	
 	public SearchOptions getSearchOptions() {
 		return mSearchOptions;
 	}
 	
+	/**
+	 * How ingest decides if a new image is a duplicate of one already in the library
+	 */
+	public enum SimilarityMode {
+		//Distance between the 5x5 grids of average colours
+		COLOUR_GRID,
+		//Bits that differ between the perceptual hashes, anything without one yet is still compared by colour
+		PERCEPTUAL_HASH
+	}
+	
 	public static class SearchOptions {
 		
 		private static final String KEY_CONTENT_TYPE = "content_type";
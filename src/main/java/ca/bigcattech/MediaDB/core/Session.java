@@ -20,9 +20,11 @@
 package ca.bigcattech.MediaDB.core;
 
 import ca.bigcattech.MediaDB.IO.FileSystemHandler;
+import ca.bigcattech.MediaDB.db.CounterWriteBuffer;
 import ca.bigcattech.MediaDB.db.DBHandler;
 import ca.bigcattech.MediaDB.db.content.Content;
-import ca.bigcattech.MediaDB.db.content.ContentComparator;
+import ca.bigcattech.MediaDB.db.content.ContentPage;
+import ca.bigcattech.MediaDB.db.content.ContentSummary;
 import ca.bigcattech.MediaDB.db.content.ContentType;
 import ca.bigcattech.MediaDB.db.pool.Pool;
 import ca.bigcattech.MediaDB.db.pool.PoolBuilder;
@@ -31,7 +33,6 @@ import ca.bigcattech.MediaDB.db.tag.TagNameComparator;
 import ca.bigcattech.MediaDB.gui.forms.DisplayContentForm;
 import ca.bigcattech.MediaDB.gui.frames.MainFrame;
 import ca.bigcattech.MediaDB.gui.interfaces.IKeyListener;
-import ca.bigcattech.MediaDB.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,20 +41,21 @@ import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Locale;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class Session {
 	
 	private static final Logger log = LoggerFactory.getLogger(Session.class);
 	private final MainFrame mMainFrame;
 	private final DBHandler mDBHandler;
+	private final CounterWriteBuffer mCounterBuffer;
 	private final Ingest mIngest;
 	private final ArrayList<String> mDictionary = new ArrayList<>();
 	private volatile boolean mSorting = false;
 	private SessionState mSessionState;
-	private Content[] mContentResults;
+	private ContentSummary[] mContentResults;
+	private long mNumContentResults = 0;
+	private int mContentResultsPage = -1;
 	private Content mContent;
 	private Pool[] mPoolResults;
 	private Pool mPool;
@@ -87,6 +89,7 @@ public class Session {
 		mMainFrame.setSession(this);
 		
 		mDBHandler = dbHandler;
+		mCounterBuffer = new CounterWriteBuffer(dbHandler, options.getCounterFlushInterval());
 		
 		mIngest = ingest;
 		mIngest.setSession(this);
@@ -211,19 +214,12 @@ public class Session {
 		mSearchTags = tags;
 		mSearchTagsBlacklist = bannedTags;
 		
-		ConcurrentLinkedQueue<Pool> results = new ConcurrentLinkedQueue<>();
-		
 		long start = System.currentTimeMillis();
-		Pool[] unfiltered = mDBHandler.searchForPoolsByTags(mOptions.getSearchOptions().isRestricted(), tags);
+		mPoolResults = mDBHandler.searchForPoolsByTags(mOptions.getSearchOptions().isRestricted(), tags, mSearchTagsBlacklist);
 		log.info((System.currentTimeMillis() - start) + "ms to get Pools from the database");
 		
-		start = System.currentTimeMillis();
-		Arrays.stream(unfiltered).parallel().forEach(pool -> {
-			if (checkPoolWithBlackList(pool)) results.add(pool);
-		});
-		log.info((System.currentTimeMillis() - start) + "ms to remove blacklisted pools");
-		
-		mPoolResults = results.toArray(new Pool[]{});
+		mContentResults = new ContentSummary[]{};
+		mNumContentResults = 0;
 		
 		//TODO sort the results
 		
@@ -255,32 +251,10 @@ public class Session {
 		mSearchTags = tags;
 		mSearchTagsBlacklist = bannedTags;
 		
-		ConcurrentLinkedQueue<Content> results = new ConcurrentLinkedQueue<>();
-		
-		long start = System.currentTimeMillis();
-		Content[] unfiltered = mDBHandler.searchForContentByTags(mOptions.getSearchOptions(), mSearchTags);
-		log.info((System.currentTimeMillis() - start) + "ms to get content from the database");
-		
-		start = System.currentTimeMillis();
-		Arrays.stream(unfiltered).parallel().forEach(content -> {
-			if (checkContentWithBlacklist(content)) results.add(content);
-		});
-		log.info((System.currentTimeMillis() - start) + "ms to remove blacklisted content");
-		
-		mContentResults = results.toArray(new Content[]{});
-		
-		//Hash only sort
-		/*start = System.currentTimeMillis();
-		Arrays.sort(mResults, Comparator.comparing(Content::getHash));
-		log.info((System.currentTimeMillis() - start) + "ms to sort content");*/
+		mPoolResults = new Pool[]{};
+		loadContentResultsPage();
 		
-		//Dynamic search options
-		start = System.currentTimeMillis();
-		ContentComparator comparator = new ContentComparator(mOptions.getSearchOptions());
-		Arrays.sort(mContentResults, comparator);
-		log.info((System.currentTimeMillis() - start) + "ms to sort content");
-		
-		if (mContentResults.length > 0) {
+		if (mNumContentResults > 0) {
 			
 			mSessionState = SessionState.SEARCH_RESULTS;
 			displaySession();
@@ -289,12 +263,20 @@ public class Session {
 		
 	}
 	
-	private boolean checkContentWithBlacklist(Content content) {
-		return Utils.stringArrNotContainsStrFromArray(content.getTags(), mSearchTagsBlacklist);
-	}
-	
-	private boolean checkPoolWithBlackList(Pool pool) {
-		return Utils.stringArrNotContainsStrFromArray(pool.getAllTags(), mSearchTagsBlacklist);
+	/**
+	 * Get the current page of results from the database, the database handles the filtering, sorting, and paging
+	 */
+	private void loadContentResultsPage() {
+		
+		long start = System.currentTimeMillis();
+		ContentPage page = mDBHandler.searchForContentPage(mOptions.getSearchOptions(), mSearchTags, mSearchTagsBlacklist, mResultPage, mOptions.getResultsPerPage());
+		log.info((System.currentTimeMillis() - start) + "ms to get page " + (mResultPage + 1) + " of the content results from the database");
+		
+		mContentResults = page.getResults();
+		mNumContentResults = page.getTotalResults();
+		mNumResultPages = page.getNumPages();
+		mContentResultsPage = mResultPage;
+		
 	}
 	
 	public void home() {
@@ -310,7 +292,8 @@ public class Session {
 		log.info("Home");
 		
 		mSessionState = SessionState.HOME;
-		mContentResults = new Content[]{};
+		mContentResults = new ContentSummary[]{};
+		mNumContentResults = 0;
 		mSearchTags = new String[]{};
 		mSearchTagsBlacklist = new String[]{};
 		
@@ -328,11 +311,12 @@ public class Session {
 		mKeyListener = null;
 		mContentFromPool = false;
 		
-		int resultsLength = mContentResults.length > 0 ? mContentResults.length : mPoolResults.length;
-		
-		if (mResultPage == 0 && mOptions.getResultsPerPage() != 0) {
-			mNumResultPages = resultsLength / mOptions.getResultsPerPage();
-			if (resultsLength % mOptions.getResultsPerPage() > 0) mNumResultPages++;
+		if (mNumContentResults > 0) {
+			if (mResultPage != mContentResultsPage) loadContentResultsPage();
+		}
+		else if (mResultPage == 0 && mOptions.getResultsPerPage() != 0) {
+			mNumResultPages = mPoolResults.length / mOptions.getResultsPerPage();
+			if (mPoolResults.length % mOptions.getResultsPerPage() > 0) mNumResultPages++;
 		}
 		long start = System.currentTimeMillis();
 		
@@ -366,6 +350,20 @@ public class Session {
 		
 	}
 	
+	/**
+	 * Load the full Content object for a search result and display it
+	 */
+	public void content(ContentSummary summary) {
+		
+		Content content = mDBHandler.getContentFromHash(summary.getHash());
+		if (content == null) {
+			log.warn("Content " + summary.getHash() + " is no longer in the database");
+			return;
+		}
+		content(content);
+		
+	}
+	
 	public void pool(Pool pool) {
 		
 		mPool = pool;
@@ -408,7 +406,8 @@ public class Session {
 		
 		boolean update = mSessionState == SessionState.INGEST || mSessionState == SessionState.INGEST_TASK;
 		mSessionState = SessionState.INGEST;
-		mContentResults = new Content[]{};
+		mContentResults = new ContentSummary[]{};
+		mNumContentResults = 0;
 		mSearchTags = new String[]{};
 		mSearchTagsBlacklist = new String[]{};
 		if (!update) {
@@ -437,7 +436,8 @@ public class Session {
 		
 		boolean update = mSessionState == SessionState.INGEST || mSessionState == SessionState.INGEST_TASK;
 		mSessionState = SessionState.INGEST;
-		mContentResults = new Content[]{};
+		mContentResults = new ContentSummary[]{};
+		mNumContentResults = 0;
 		mSearchTags = new String[]{};
 		mSearchTagsBlacklist = new String[]{};
 		if (!update) {
@@ -636,11 +636,76 @@ public class Session {
 		return mSessionState;
 	}
 	
-	public Content[] getContentResults() {
+	public ContentSummary[] getContentResults() {
 		
 		return mContentResults;
 	}
 	
+	public long getNumContentResults() {
+		
+		return mNumContentResults;
+	}
+	
+	/**
+	 * @return the index of the content in the current page of search results, or -1 if it's not one of them
+	 */
+	public int indexOfContentResult(Content content) {
+		
+		for (int i = 0; i < mContentResults.length; i++) {
+			if (mContentResults[i].getHash().equals(content.getHash())) return i;
+		}
+		return -1;
+		
+	}
+	
+	public boolean hasPreviousContentResult(Content content) {
+		
+		int index = indexOfContentResult(content);
+		return index > 0 || (index == 0 && mResultPage > 0);
+		
+	}
+	
+	public boolean hasNextContentResult(Content content) {
+		
+		int index = indexOfContentResult(content);
+		return index != -1 && (index < mContentResults.length - 1 || mResultPage < mNumResultPages - 1);
+		
+	}
+	
+	/**
+	 * Display the search result before this one, loading the previous page of results if we need to
+	 */
+	public void previousContentResult(Content content) {
+		
+		if (!hasPreviousContentResult(content)) return;
+		
+		int index = indexOfContentResult(content);
+		if (index == 0) {
+			mResultPage--;
+			loadContentResultsPage();
+			index = mContentResults.length;
+		}
+		if (index > 0) content(mContentResults[index - 1]);
+		
+	}
+	
+	/**
+	 * Display the search result after this one, loading the next page of results if we need to
+	 */
+	public void nextContentResult(Content content) {
+		
+		if (!hasNextContentResult(content)) return;
+		
+		int index = indexOfContentResult(content);
+		if (index == mContentResults.length - 1) {
+			mResultPage++;
+			loadContentResultsPage();
+			index = -1;
+		}
+		if (index + 1 < mContentResults.length) content(mContentResults[index + 1]);
+		
+	}
+	
 	public Pool[] getPoolResults() {
 		
 		return mPoolResults;
@@ -660,10 +725,17 @@ public class Session {
 		
 		return mDBHandler;
 	}
+	
+	public CounterWriteBuffer getCounterBuffer() {
+		
+		return mCounterBuffer;
+	}
 
 	public void exit() {
 		if (mKeyListener != null)
 			mKeyListener.exit();
+		//Make sure any views and time spent that haven't been written yet make it to the database
+		mCounterBuffer.close();
 	}
 	
 	public enum SessionState {
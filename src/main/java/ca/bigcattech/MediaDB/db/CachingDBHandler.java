@@ -0,0 +1,549 @@
+/*
+ *     CachingDBHandler
+ *     Last Modified: 2026-10-18, 2:05 p.m.
+ *     Copyright (C) 2026-10-18, 2:05 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.MediaDB.db;
+
+import ca.bigcattech.MediaDB.core.Options;
+import ca.bigcattech.MediaDB.db.content.Content;
+import ca.bigcattech.MediaDB.db.content.ContentPage;
+import ca.bigcattech.MediaDB.db.content.ContentSummary;
+import ca.bigcattech.MediaDB.db.pool.Pool;
+import ca.bigcattech.MediaDB.db.tag.Tag;
+import ca.bigcattech.MediaDB.db.tag.TagGraph;
+import ca.bigcattech.MediaDB.image.DuplicateScanProgress;
+import ca.bigcattech.MediaDB.image.ImageSignature;
+import ca.bigcattech.MediaDB.image.SignatureStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps another DBHandler and keeps every tag in memory so that getTagFromName doesn't need a database round trip.
+ * The cache is loaded by initDB and kept up to date by the tag write methods, anything that can touch a lot of tags at once reloads it.
+ * Cached tags are never handed out directly, callers always get a copy they're free to change.
+ */
+public class CachingDBHandler implements DBHandler {
+	
+	private static final Logger log = LoggerFactory.getLogger(CachingDBHandler.class);
+	
+	private final DBHandler mDBHandler;
+	private final ConcurrentHashMap<String, Tag> mTags = new ConcurrentHashMap<>();
+	
+	private final AtomicLong mHits = new AtomicLong();
+	private final AtomicLong mMisses = new AtomicLong();
+	
+	public CachingDBHandler(DBHandler dbHandler) {
+		
+		mDBHandler = dbHandler;
+	}
+	
+	public long getCacheHits() {
+		
+		return mHits.get();
+	}
+	
+	public long getCacheMisses() {
+		
+		return mMisses.get();
+	}
+	
+	public int getCacheSize() {
+		
+		return mTags.size();
+	}
+	
+	public void logCacheStats() {
+		
+		long hits = mHits.get();
+		long total = hits + mMisses.get();
+		log.info("Tag cache: " + mTags.size() + " tags, " + hits + " hits, " + (total - hits) + " misses, " + (total == 0 ? 0 : hits * 100 / total) + "% hit rate");
+		
+	}
+	
+	/**
+	 * Throw out everything and load all the tags from the database again
+	 */
+	public void reloadTagCache() {
+		
+		mTags.clear();
+		cacheTags(mDBHandler.getAllTags());
+		
+	}
+	
+	private void cacheTags(List<Tag> tags) {
+		
+		//Tags with no uses get recounted by the database the first time they're requested, so leave them out until then
+		tags.stream().filter(tag -> tag.getNumUses() != 0).forEach(tag -> mTags.put(tag.getName(), new Tag(tag)));
+	}
+	
+	private void invalidateTags(String[] tags) {
+		
+		if (tags == null) return;
+		for (String tag : tags) {
+			mTags.remove(tag);
+		}
+		
+	}
+	
+	@Override
+	public boolean poolExists(int uid) {
+		
+		return mDBHandler.poolExists(uid);
+	}
+	
+	@Override
+	public void initDB() {
+		
+		mDBHandler.initDB();
+		reloadTagCache();
+		log.info("Loaded " + mTags.size() + " tags into the tag cache");
+		
+	}
+	
+	@Override
+	public void migrate() {
+		
+		mDBHandler.migrate();
+		reloadTagCache();
+		
+	}
+	
+	@Override
+	public void manualMigrate() {
+		
+		mDBHandler.manualMigrate();
+		reloadTagCache();
+		
+	}
+	
+	@Override
+	public boolean checkHash(String hash) {
+		
+		return mDBHandler.checkHash(hash);
+	}
+	
+	@Override
+	public void exportContent(Content content) throws Content.ContentValidationException {
+		
+		try {
+			mDBHandler.exportContent(content);
+		}
+		finally {
+			//Exporting can create tags for us, so make sure we pick those up next time they're asked for
+			invalidateTags(content.getTags());
+		}
+		
+	}
+	
+	@Override
+	public void exportContent(Collection<Content> content) {
+		
+		mDBHandler.exportContent(content);
+		content.forEach(c -> invalidateTags(c.getTags()));
+		
+	}
+	
+	@Override
+	public void deleteContent(String hash) {
+		
+		mDBHandler.deleteContent(hash);
+	}
+	
+	@Override
+	public Set<String> incrementContentCounters(Map<String, Integer> views, Map<String, Long> timeSpent) {
+		
+		return mDBHandler.incrementContentCounters(views, timeSpent);
+	}
+	
+	@Override
+	public long getNumContent() {
+		
+		return mDBHandler.getNumContent();
+	}
+	
+	@Override
+	public Pool[] getPoolFromUID(int[] uids) {
+		
+		return mDBHandler.getPoolFromUID(uids);
+	}
+	
+	@Override
+	public Pool getPoolFromUID(int uid) {
+		
+		return mDBHandler.getPoolFromUID(uid);
+	}
+	
+	@Override
+	public void exportPool(Pool pool) {
+		
+		mDBHandler.exportPool(pool);
+	}
+	
+	@Override
+	public void exportPool(Collection<Pool> pools) {
+		
+		mDBHandler.exportPool(pools);
+	}
+	
+	@Override
+	public List<String> getAllPoolNames() {
+		
+		return mDBHandler.getAllPoolNames();
+	}
+	
+	@Override
+	public Content[] getContentFromHash(String[] hashes) {
+		
+		return mDBHandler.getContentFromHash(hashes);
+	}
+	
+	@Override
+	public Content getContentFromHash(String hash) {
+		
+		return mDBHandler.getContentFromHash(hash);
+	}
+	
+	@Override
+	public Pool[] searchForPoolsByTags(boolean restricted, String[] tags, String[] blacklist) {
+		
+		return mDBHandler.searchForPoolsByTags(restricted, tags, blacklist);
+	}
+	
+	@Override
+	public Content[] searchForContentByTags(Options.SearchOptions searchOptions, String[] tags, String[] blacklist) {
+		
+		return mDBHandler.searchForContentByTags(searchOptions, tags, blacklist);
+	}
+	
+	@Override
+	public ContentSummary[] searchForContentSummariesByTags(Options.SearchOptions searchOptions, String[] tags, String[] blacklist) {
+		
+		return mDBHandler.searchForContentSummariesByTags(searchOptions, tags, blacklist);
+	}
+	
+	@Override
+	public ContentPage searchForContentPage(Options.SearchOptions searchOptions, String[] tags, String[] blacklist, int page, int pageSize) {
+		
+		return mDBHandler.searchForContentPage(searchOptions, tags, blacklist, page, pageSize);
+	}
+	
+	@Override
+	public List<ImageSignature> getAllSignatures() {
+		
+		return mDBHandler.getAllSignatures();
+	}
+	
+	@Override
+	public void exportSignature(ImageSignature signature) {
+		
+		mDBHandler.exportSignature(signature);
+	}
+	
+	@Override
+	public ImageSignature getSignatureFromHash(String hash) {
+		
+		return mDBHandler.getSignatureFromHash(hash);
+	}
+	
+	@Override
+	public boolean checkSignatureExists(String hash) {
+		
+		return mDBHandler.checkSignatureExists(hash);
+	}
+	
+	@Override
+	public void exportDuplicateClusters(Collection<List<String>> clusters) {
+		
+		mDBHandler.exportDuplicateClusters(clusters);
+	}
+	
+	@Override
+	public List<List<String>> getDuplicateClusters() {
+		
+		return mDBHandler.getDuplicateClusters();
+	}
+	
+	@Override
+	public DuplicateScanProgress getDuplicateScanProgress() {
+		
+		return mDBHandler.getDuplicateScanProgress();
+	}
+	
+	@Override
+	public void exportDuplicateScanCheckpoint(DuplicateScanProgress progress, List<String> pairs) {
+		
+		mDBHandler.exportDuplicateScanCheckpoint(progress, pairs);
+	}
+	
+	@Override
+	public List<String> getDuplicateScanPairs(DuplicateScanProgress progress) {
+		
+		return mDBHandler.getDuplicateScanPairs(progress);
+	}
+	
+	@Override
+	public void clearDuplicateScan() {
+		
+		mDBHandler.clearDuplicateScan();
+	}
+	
+	@Override
+	public void updateAllContentWithTags(String[] tags) {
+		
+		mDBHandler.updateAllContentWithTags(tags);
+		reloadTagCache();
+		
+	}
+	
+	@Override
+	public void updateAllWithTags(Tag[] tags) {
+		
+		mDBHandler.updateAllWithTags(tags);
+		reloadTagCache();
+		
+	}
+	
+	@Override
+	public void updateAllWithTags(String[] tags) {
+		
+		mDBHandler.updateAllWithTags(tags);
+		reloadTagCache();
+		
+	}
+	
+	@Override
+	public void updateAllPoolsWithTags(String[] tags) {
+		
+		mDBHandler.updateAllPoolsWithTags(tags);
+	}
+	
+	@Override
+	public void updateAllContent() {
+		
+		mDBHandler.updateAllContent();
+		reloadTagCache();
+		
+	}
+	
+	@Override
+	public void updateAllPools() {
+		
+		mDBHandler.updateAllPools();
+	}
+	
+	@Override
+	public void updateAll() {
+		
+		mDBHandler.updateAll();
+		reloadTagCache();
+		
+	}
+	
+	@Override
+	public void removeTagFromAllContent(String tag) {
+		
+		mDBHandler.removeTagFromAllContent(tag);
+		reloadTagCache();
+		
+	}
+	
+	@Override
+	public void removeTagFromAll(String tag) {
+		
+		mDBHandler.removeTagFromAll(tag);
+		reloadTagCache();
+		
+	}
+	
+	@Override
+	public void removeTagFromAll(String[] tags) {
+		
+		mDBHandler.removeTagFromAll(tags);
+		reloadTagCache();
+		
+	}
+	
+	@Override
+	public long getNumTags() {
+		
+		return mDBHandler.getNumTags();
+	}
+	
+	@Override
+	public void removeTagFromAllContent(String[] tags) {
+		
+		mDBHandler.removeTagFromAllContent(tags);
+		reloadTagCache();
+		
+	}
+	
+	@Override
+	public boolean isTagRestricted(String[] tags) {
+		
+		//The tag graph already keeps this in memory
+		return mDBHandler.isTagRestricted(tags);
+	}
+	
+	@Override
+	public boolean deleteTag(String tag) {
+		
+		boolean result = mDBHandler.deleteTag(tag);
+		mTags.remove(tag);
+		return result;
+		
+	}
+	
+	@Override
+	public List<Tag> getAllTagsWithParent(String name) {
+		
+		return mDBHandler.getAllTagsWithParent(name);
+	}
+	
+	@Override
+	public List<Tag> getAllTags() {
+		
+		List<Tag> tags = mDBHandler.getAllTags();
+		cacheTags(tags);
+		return tags;
+		
+	}
+	
+	@Override
+	public boolean exportTag(Tag tag, boolean manualCount) {
+		
+		//Only cache what was actually written, a rejected tag is dropped so the next read gets what's really stored
+		if (!mDBHandler.exportTag(tag, manualCount)) {
+			mTags.remove(tag.getName());
+			return false;
+		}
+		mTags.put(tag.getName(), new Tag(tag));
+		return true;
+		
+	}
+	
+	@Override
+	public boolean exportTagParents(String tag, String[] parents) {
+		
+		if (!mDBHandler.exportTagParents(tag, parents)) {
+			mTags.remove(tag);
+			return false;
+		}
+		mTags.computeIfPresent(tag, (name, cached) -> {
+			cached.setParentTags(parents.clone());
+			return cached;
+		});
+		return true;
+		
+	}
+	
+	@Override
+	public void decrementTagUses(String[] tags) {
+		
+		mDBHandler.decrementTagUses(tags);
+		for (String name : tags) {
+			//Once the count hits zero the database recounts it the next time it's requested, so we have to ask for it
+			mTags.computeIfPresent(name, (key, tag) -> {
+				tag.decrementUses();
+				return tag.getNumUses() > 0 ? tag : null;
+			});
+		}
+		
+	}
+	
+	@Override
+	public void incrementTagUses(String[] tags) {
+		
+		mDBHandler.incrementTagUses(tags);
+		for (String name : tags) {
+			mTags.computeIfPresent(name, (key, tag) -> {
+				tag.incrementUses();
+				return tag;
+			});
+		}
+		
+	}
+	
+	@Override
+	public void addTag(String tag) {
+		
+		addTag(new String[]{tag});
+	}
+	
+	@Override
+	public void addTag(String[] tags) {
+		
+		//New tags start with no uses, so there's nothing to cache until someone asks for them
+		mDBHandler.addTag(tags);
+	}
+	
+	@Override
+	public Tag getTagFromName(String name) {
+		
+		if (name == null) return null;
+		
+		Tag tag = mTags.get(name);
+		if (tag != null) {
+			mHits.incrementAndGet();
+			return new Tag(tag);
+		}
+		
+		mMisses.incrementAndGet();
+		tag = mDBHandler.getTagFromName(name);
+		if (tag != null) mTags.put(name, new Tag(tag));
+		return tag;
+		
+	}
+	
+	@Override
+	public void updateAllTags() {
+		
+		mDBHandler.updateAllTags();
+		reloadTagCache();
+		
+	}
+	
+	@Override
+	public void updateAllTags(Tag[] tags) {
+		
+		mDBHandler.updateAllTags(tags);
+		for (Tag tag : tags) {
+			mTags.put(tag.getName(), new Tag(tag));
+		}
+		
+	}
+	
+	@Override
+	public TagGraph getTagGraph() {
+		
+		return mDBHandler.getTagGraph();
+	}
+	
+	@Override
+	public SignatureStore getSignatureStore() {
+		
+		return mDBHandler.getSignatureStore();
+	}
+	
+}
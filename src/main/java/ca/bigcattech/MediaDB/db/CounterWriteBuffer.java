@@ -0,0 +1,156 @@
+/*
+ *     CounterWriteBuffer
+ *     Last Modified: 2026-10-18, 7:10 p.m.
+ *     Copyright (C) 2026-10-18, 7:10 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.MediaDB.db;
+
+import ca.bigcattech.MediaDB.db.content.Content;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects view and time spent increments in memory and writes them in the background, so moving between content never waits on the database.
+ * Increments for the same content are merged, and everything that built up during the flush interval is sent together as one bulk increment.
+ * Increments the DBHandler reports as not written are kept for the next flush, anything that might have been written is dropped rather than risk counting it twice.
+ * Call close before the program exits, or anything still waiting is lost.
+ */
+public class CounterWriteBuffer {
+	
+	private static final Logger log = LoggerFactory.getLogger(CounterWriteBuffer.class);
+	
+	private final DBHandler mDBHandler;
+	private final ConcurrentHashMap<String, Integer> mViews = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Long> mTimeSpent = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService mExecutor;
+	
+	/**
+	 * @param dbHandler     the DBHandler to write the increments through
+	 * @param flushInterval how long to collect increments for before writing them, in milliseconds
+	 */
+	public CounterWriteBuffer(DBHandler dbHandler, long flushInterval) {
+		
+		mDBHandler = dbHandler;
+		mExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "CounterWriteBuffer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		long interval = Math.max(1, flushInterval);
+		mExecutor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+		
+	}
+	
+	public void addViews(String hash, int views) {
+		
+		if (views != 0) mViews.merge(hash, views, Integer::sum);
+	}
+	
+	public void addTimeSpent(String hash, long timeSpent) {
+		
+		if (timeSpent != 0) mTimeSpent.merge(hash, timeSpent, Long::sum);
+	}
+	
+	/**
+	 * Move the content's pending view and time spent increments into the buffer, so exporting the content afterwards won't write them again
+	 */
+	public void takeCounters(Content content) {
+		
+		synchronized (content) {
+			addViews(content.getHash(), content.getViewsDelta());
+			addTimeSpent(content.getHash(), content.getTimeSpentDelta());
+			content.clearCounterDeltas();
+		}
+		
+	}
+	
+	public int getNumPending() {
+		
+		Set<String> hashes = new HashSet<>(mViews.keySet());
+		hashes.addAll(mTimeSpent.keySet());
+		return hashes.size();
+		
+	}
+	
+	/**
+	 * Write everything that's built up so far, safe to call from any thread
+	 */
+	public synchronized void flush() {
+		
+		Map<String, Integer> views = drain(mViews);
+		Map<String, Long> timeSpent = drain(mTimeSpent);
+		if (views.isEmpty() && timeSpent.isEmpty()) return;
+		
+		Set<String> failed;
+		try {
+			failed = mDBHandler.incrementContentCounters(views, timeSpent);
+		}
+		catch (RuntimeException e) {
+			//There's no telling how much of it was written, trying it all again could count some of it twice
+			log.error("Failed to write view counts, they may not have been saved", e);
+			return;
+		}
+		
+		//Only put back what definitely wasn't written, so it gets tried again with the next flush
+		if (failed.isEmpty()) return;
+		log.warn("{} view counts weren't written, will try again", failed.size());
+		for (String hash : failed) {
+			addViews(hash, views.getOrDefault(hash, 0));
+			addTimeSpent(hash, timeSpent.getOrDefault(hash, 0L));
+		}
+		
+	}
+	
+	private static <T> Map<String, T> drain(ConcurrentHashMap<String, T> map) {
+		
+		Map<String, T> out = new HashMap<>();
+		for (String key : map.keySet()) {
+			//remove hands back the value atomically, so anything merged in after this goes into the next flush
+			T value = map.remove(key);
+			if (value != null) out.put(key, value);
+		}
+		return out;
+		
+	}
+	
+	/**
+	 * Stop the background flushes and write anything that's left
+	 */
+	public void close() {
+		
+		mExecutor.shutdown();
+		try {
+			if (!mExecutor.awaitTermination(10, TimeUnit.SECONDS)) log.warn("Timed out waiting for the last background flush");
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		
+	}
+	
+}
@@ -21,11 +21,19 @@ package ca.bigcattech.MediaDB.db;
 
 import ca.bigcattech.MediaDB.core.Options;
 import ca.bigcattech.MediaDB.db.content.Content;
+import ca.bigcattech.MediaDB.db.content.ContentPage;
+import ca.bigcattech.MediaDB.db.content.ContentSummary;
 import ca.bigcattech.MediaDB.db.pool.Pool;
 import ca.bigcattech.MediaDB.db.tag.Tag;
+import ca.bigcattech.MediaDB.db.tag.TagGraph;
+import ca.bigcattech.MediaDB.image.DuplicateScanProgress;
 import ca.bigcattech.MediaDB.image.ImageSignature;
+import ca.bigcattech.MediaDB.image.SignatureStore;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public interface DBHandler {
 	
@@ -47,8 +55,24 @@ public interface DBHandler {
 	
 	void exportContent(Content content) throws Content.ContentValidationException;
 	
+	/**
+	 * Export many content objects at once, content that fails validation is skipped
+	 *
+	 * @param content the content objects to update and write to the database
+	 */
+	void exportContent(Collection<Content> content);
+	
 	void deleteContent(String hash);
 	
+	/**
+	 * Add to the views and time spent of many content objects at once, content that doesn't exist is skipped
+	 *
+	 * @param views     the number of views to add, by content hash
+	 * @param timeSpent the time spent to add, in milliseconds, by content hash
+	 * @return the hashes whose increments were definitely not written and can be sent again, increments that might have been written aren't included
+	 */
+	Set<String> incrementContentCounters(Map<String, Integer> views, Map<String, Long> timeSpent);
+	
 	long getNumContent();
 	
 	Pool[] getPoolFromUID(int[] uids);
@@ -57,15 +81,49 @@ public interface DBHandler {
 	
 	void exportPool(Pool pool);
 	
+	/**
+	 * Export many pools at once
+	 *
+	 * @param pools the pools to update and write to the database
+	 */
+	void exportPool(Collection<Pool> pools);
+	
 	List<String> getAllPoolNames();
 	
 	Content[] getContentFromHash(String[] hashes);
 	
 	Content getContentFromHash(String hash);
 	
-	Pool[] searchForPoolsByTags(boolean restricted, String[] tags);
+	/**
+	 * @param restricted if restricted pools are allowed in the results
+	 * @param tags       the tags that all the results must have
+	 * @param blacklist  the tags that none of the results can have
+	 */
+	Pool[] searchForPoolsByTags(boolean restricted, String[] tags, String[] blacklist);
 	
-	Content[] searchForContentByTags(Options.SearchOptions searchOptions, String[] tags);
+	Content[] searchForContentByTags(Options.SearchOptions searchOptions, String[] tags, String[] blacklist);
+	
+	/**
+	 * Same as searchForContentByTags, but only loads what's needed to display, sort, and filter the results
+	 *
+	 * @param searchOptions the search options to filter and sort with, the title is only loaded when sorting by title
+	 * @param tags          the tags that all the results must have
+	 * @param blacklist     the tags that none of the results can have
+	 * @return a summary of each piece of content that matched the search
+	 */
+	ContentSummary[] searchForContentSummariesByTags(Options.SearchOptions searchOptions, String[] tags, String[] blacklist);
+	
+	/**
+	 * Get one page of search results, already sorted the same way ContentComparator would sort them
+	 *
+	 * @param searchOptions the search options to filter and sort with
+	 * @param tags          the tags that all the results must have
+	 * @param blacklist     the tags that none of the results can have
+	 * @param page          the page to get, starting at 0
+	 * @param pageSize      the max number of results per page, 0 for all the results on one page
+	 * @return the page of results and the total number of results
+	 */
+	ContentPage searchForContentPage(Options.SearchOptions searchOptions, String[] tags, String[] blacklist, int page, int pageSize);
 	
 	List<ImageSignature> getAllSignatures();
 	
@@ -75,6 +133,36 @@ public interface DBHandler {
 	
 	boolean checkSignatureExists(String hash);
 	
+	/**
+	 * Replace every saved group of near duplicate content, each one a list of content hashes
+	 */
+	void exportDuplicateClusters(Collection<List<String>> clusters);
+	
+	List<List<String>> getDuplicateClusters();
+	
+	/**
+	 * @return how far the unfinished duplicate scan got, or null if there isn't one to pick up
+	 */
+	DuplicateScanProgress getDuplicateScanProgress();
+	
+	/**
+	 * Save one checkpoint of a duplicate scan. The pairs go in before the progress, so a checkpoint only counts once all of it is saved,
+	 * and pairs from a checkpoint that didn't finish saving are replaced
+	 *
+	 * @param pairs the content hashes the checkpoint joined into the same group, two at a time
+	 */
+	void exportDuplicateScanCheckpoint(DuplicateScanProgress progress, List<String> pairs);
+	
+	/**
+	 * @return the pairs from every checkpoint of the run up to and including the progress' checkpoint, two hashes at a time
+	 */
+	List<String> getDuplicateScanPairs(DuplicateScanProgress progress);
+	
+	/**
+	 * Throw away the progress and pairs of the unfinished duplicate scan, if there is one
+	 */
+	void clearDuplicateScan();
+	
 	void updateAllContentWithTags(String[] tags);
 	
 	void updateAllWithTags(Tag[] tags);
@@ -99,6 +187,11 @@ public interface DBHandler {
 	
 	void removeTagFromAllContent(String[] tags);
 	
+	/**
+	 * Answered from the tag graph, so it's safe to call once per item during bulk updates
+	 *
+	 * @return true if any of the tags, or any of their parents, are restricted
+	 */
 	boolean isTagRestricted(String[] tags);
 	
 	boolean deleteTag(String tag);
@@ -107,7 +200,19 @@ public interface DBHandler {
 	
 	List<Tag> getAllTags();
 	
-	void exportTag(Tag tag, boolean manualCount);
+	/**
+	 * @return false if the tag wasn't written because its parents would make it its own ancestor
+	 */
+	boolean exportTag(Tag tag, boolean manualCount);
+	
+	/**
+	 * Write just the tag's parents, and update the tag graph to match. The tag is created if it doesn't exist yet
+	 *
+	 * @param tag     the name of the tag
+	 * @param parents the tag's full list of parents
+	 * @return false if the parents weren't written because they would make the tag its own ancestor
+	 */
+	boolean exportTagParents(String tag, String[] parents);
 	
 	void decrementTagUses(String[] tags);
 	
@@ -123,4 +228,14 @@ public interface DBHandler {
 	
 	void updateAllTags(Tag[] tags);
 	
+	/**
+	 * @return the parent/child graph of every tag, kept up to date as tags are exported and deleted
+	 */
+	TagGraph getTagGraph();
+	
+	/**
+	 * @return the memory mapped copy of every ImageSignature, which can be scanned without loading anything, or null if there isn't one
+	 */
+	SignatureStore getSignatureStore();
+	
 }
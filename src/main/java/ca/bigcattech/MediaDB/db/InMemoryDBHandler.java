@@ -0,0 +1,760 @@
+/*
+ *     InMemoryDBHandler
+ *     Last Modified: 2026-10-18, 1:12 p.m.
+ *     Copyright (C) 2026-10-18, 1:12 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.MediaDB.db;
+
+import ca.bigcattech.MediaDB.core.Options;
+import ca.bigcattech.MediaDB.db.content.Content;
+import ca.bigcattech.MediaDB.db.content.ContentComparator;
+import ca.bigcattech.MediaDB.db.content.ContentPage;
+import ca.bigcattech.MediaDB.db.content.ContentSummary;
+import ca.bigcattech.MediaDB.db.content.ContentType;
+import ca.bigcattech.MediaDB.db.pool.Pool;
+import ca.bigcattech.MediaDB.db.tag.Tag;
+import ca.bigcattech.MediaDB.db.tag.TagGraph;
+import ca.bigcattech.MediaDB.image.DuplicateScanProgress;
+import ca.bigcattech.MediaDB.image.ImageSignature;
+import ca.bigcattech.MediaDB.image.SignatureStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A DBHandler that keeps everything in concurrent hash maps, nothing is saved when the program closes.
+ * It's meant to behave the same way as the MongoDBHandler, so it can be used for offline runs, tests and benchmarks.
+ * Objects are copied on the way in and out, just like they would be when serialized to and from the database,
+ * so changes to a returned object don't show up until it's exported again.
+ */
+public class InMemoryDBHandler implements DBHandler {
+	
+	private static final Logger log = LoggerFactory.getLogger(InMemoryDBHandler.class);
+	
+	private final ConcurrentHashMap<String, Content> mContent = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Tag> mTags = new ConcurrentHashMap<>();
+	private final TagGraph mTagGraph = new TagGraph();
+	private final ConcurrentHashMap<Integer, Pool> mPools = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, ImageSignature> mSignatures = new ConcurrentHashMap<>();
+	private volatile List<List<String>> mDuplicateClusters = new ArrayList<>();
+	private volatile DuplicateScanProgress mDuplicateScanProgress = null;
+	//Run id -> checkpoint -> the pairs that checkpoint joined
+	private final Map<String, NavigableMap<Integer, List<String>>> mDuplicateScanPairs = new HashMap<>();
+	
+	//Posting lists, tag name -> the content hashes or pool UIDs that have that tag
+	private final ConcurrentHashMap<String, Set<String>> mContentByTag = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Set<Integer>> mPoolsByTag = new ConcurrentHashMap<>();
+	
+	private static Content copyContent(Content content) {
+		
+		if (content == null) return null;
+		
+		try {
+			Content copy = Content.builder(content.getType())
+								  .hash(content.getHash())
+								  .file(content.getFile())
+								  .tags(content.getTags().clone())
+								  .restricted(content.isRestricted())
+								  .setPrivate(content.isPrivate())
+								  .setFavorite(content.isFavorite())
+								  .title(content.getTitle())
+								  .description(content.getDescription())
+								  .views(content.getViews())
+								  .signature(content.getSignature())
+								  .videoLength(content.getVideoLength())
+								  .timeSpent(content.getTimeSpent())
+								  .pools(content.getPools().clone())
+								  .build();
+			copy.markClean();
+			return copy;
+		}
+		catch (Content.ContentValidationException e) {
+			e.printStackTrace();
+		}
+		
+		return null;
+		
+	}
+	
+	private static Pool copyPool(Pool pool) {
+		
+		if (pool == null) return null;
+		
+		return Pool.builder(pool.getUID())
+				   .title(pool.getTitle())
+				   .description(pool.getDescription())
+				   .isPrivate(pool.isPrivate())
+				   .isRestricted(pool.isRestricted())
+				   .allTags(pool.getAllTags() == null ? new String[]{} : pool.getAllTags().clone())
+				   .contentHashes(pool.getContentHashes().clone())
+				   .isFavorite(pool.isFavorite())
+				   .thumbnailFile(pool.getThumbnailFile())
+				   .build();
+		
+	}
+	
+	private static Tag copyTag(Tag tag) {
+		
+		if (tag == null) return null;
+		return new Tag(tag);
+	}
+	
+	private static ImageSignature copySignature(ImageSignature signature) {
+		
+		if (signature == null) return null;
+		
+		ImageSignature copy = new ImageSignature(signature.getHash(), signature.getData().clone());
+		if (signature.hasPerceptualHash()) copy.setPerceptualHash(signature.getPerceptualHash());
+		return copy;
+		
+	}
+	
+	private static <T> void addPostings(ConcurrentHashMap<String, Set<T>> postings, String[] tags, T value) {
+		
+		if (tags == null) return;
+		for (String tag : tags) {
+			postings.computeIfAbsent(tag, k -> ConcurrentHashMap.newKeySet()).add(value);
+		}
+		
+	}
+	
+	private static <T> void removePostings(ConcurrentHashMap<String, Set<T>> postings, String[] tags, T value) {
+		
+		if (tags == null) return;
+		for (String tag : tags) {
+			Set<T> set = postings.get(tag);
+			if (set != null) set.remove(value);
+		}
+		
+	}
+	
+	/**
+	 * Equivalent to a Filters.all query, finds everything that has all the provided tags by intersecting the posting lists.
+	 * Starts from the smallest list so that we're doing as few lookups as possible.
+	 */
+	private static <T> Stream<T> allWithTags(ConcurrentHashMap<String, Set<T>> postings, String[] tags) {
+		
+		List<Set<T>> sets = new ArrayList<>(tags.length);
+		for (String tag : tags) {
+			Set<T> set = postings.get(tag);
+			if (set == null || set.isEmpty()) return Stream.empty();
+			sets.add(set);
+		}
+		
+		sets.sort(Comparator.comparingInt(Set::size));
+		Set<T> smallest = sets.get(0);
+		List<Set<T>> rest = sets.subList(1, sets.size());
+		return new ArrayList<>(smallest).stream().filter(value -> rest.stream().allMatch(set -> set.contains(value)));
+		
+	}
+	
+	/**
+	 * Equivalent to a Filters.in query, finds everything that has any of the provided tags
+	 */
+	private static <T> Set<T> anyWithTags(ConcurrentHashMap<String, Set<T>> postings, String[] tags) {
+		
+		Set<T> out = new HashSet<>();
+		for (String tag : tags) {
+			Set<T> set = postings.get(tag);
+			if (set != null) out.addAll(set);
+		}
+		return out;
+		
+	}
+	
+	private static boolean contentTypeAllowed(Options.SearchOptions searchOptions, ContentType type) {
+		
+		return switch (type) {
+			case IMAGE -> searchOptions.isImages();
+			case VIDEO -> searchOptions.isVideos();
+			case GIF -> searchOptions.isGIFs();
+			case CONTENT -> searchOptions.isOther();
+		};
+		
+	}
+	
+	@Override
+	public boolean poolExists(int uid) {
+		
+		return mPools.containsKey(uid);
+	}
+	
+	@Override
+	public void initDB() {
+		
+		log.info("Init InMemoryDBHandler");
+		log.info("Using InMemoryDBHandler, nothing will be saved when the program closes");
+		
+		mTagGraph.load(mTags.values());
+		
+	}
+	
+	@Override
+	public void migrate() {
+		
+		//Nothing to migrate, we start empty every time
+	}
+	
+	@Override
+	public void manualMigrate() {
+		
+		mContent.replaceAll((hash, content) -> {
+			content.setFile(new File(content.getFile().toString().replace("\\", "/")));
+			return content;
+		});
+		
+	}
+	
+	@Override
+	public boolean checkHash(String hash) {
+		
+		if (hash == null) return false;
+		return mContent.containsKey(hash);
+	}
+	
+	private void putContent(Content content) {
+		
+		Content copy = copyContent(content);
+		if (copy == null) return;
+		
+		//Like the MongoDBHandler, tracked content only writes its dirty fields and adds its counter increments,
+		// so the views and time spent it was loaded with don't overwrite increments that were written some other way since
+		boolean tracked = content.isTracked();
+		Set<Content.Field> dirty = content.getDirtyFields();
+		mContent.compute(copy.getHash(), (hash, old) -> {
+			Content stored = tracked && old != null ? copyContent(old) : null;
+			if (stored != null) {
+				stored.applyChanges(content, dirty);
+				stored.markClean();
+			}
+			else stored = copy;
+			if (old != null) removePostings(mContentByTag, old.getTags(), hash);
+			addPostings(mContentByTag, stored.getTags(), hash);
+			return stored;
+		});
+		
+	}
+	
+	@Override
+	public void exportContent(Content content) throws Content.ContentValidationException {
+		
+		//Same as the MongoDBHandler, tracked content only needs the tag work if its tags changed
+		Set<Content.Field> dirty = content.getDirtyFields();
+		if (!content.isTracked() || dirty.contains(Content.Field.TAGS) || dirty.contains(Content.Field.PRIVATE)) {
+			content.update(this);
+			content.validate();
+			addTag(content.getTags());
+		}
+		
+		putContent(content);
+		content.markClean();
+		
+	}
+	
+	@Override
+	public void exportContent(Collection<Content> content) {
+		
+		content.stream().parallel().filter(Objects::nonNull).forEach(c -> {
+			try {
+				exportContent(c);
+			}
+			catch (Content.ContentValidationException e) {
+				log.warn("Skipping content {}: {}", c.getHash(), e.getMessage());
+			}
+		});
+		
+	}
+	
+	@Override
+	public void deleteContent(String hash) {
+		
+		Content old = mContent.remove(hash);
+		if (old != null) removePostings(mContentByTag, old.getTags(), hash);
+		
+	}
+	
+	@Override
+	public Set<String> incrementContentCounters(Map<String, Integer> views, Map<String, Long> timeSpent) {
+		
+		views.forEach((hash, count) -> mContent.computeIfPresent(hash, (key, content) -> {
+			content.incrementViews(count);
+			return content;
+		}));
+		timeSpent.forEach((hash, time) -> mContent.computeIfPresent(hash, (key, content) -> {
+			content.incrementTimeSpent(time);
+			return content;
+		}));
+		return Collections.emptySet();
+		
+	}
+	
+	@Override
+	public long getNumContent() {
+		
+		return mContent.size();
+	}
+	
+	@Override
+	public Pool[] getPoolFromUID(int[] uids) {
+		
+		return Arrays.stream(uids).mapToObj(this::getPoolFromUID).filter(Objects::nonNull).toArray(Pool[]::new);
+	}
+	
+	@Override
+	public Pool getPoolFromUID(int uid) {
+		
+		return copyPool(mPools.get(uid));
+	}
+	
+	@Override
+	public void exportPool(Pool pool) {
+		
+		pool.update(this);
+		
+		Pool copy = copyPool(pool);
+		mPools.compute(copy.getUID(), (uid, old) -> {
+			if (old != null) removePostings(mPoolsByTag, old.getAllTags(), uid);
+			addPostings(mPoolsByTag, copy.getAllTags(), uid);
+			return copy;
+		});
+		
+	}
+	
+	@Override
+	public void exportPool(Collection<Pool> pools) {
+		
+		pools.stream().parallel().filter(Objects::nonNull).forEach(this::exportPool);
+	}
+	
+	@Override
+	public List<String> getAllPoolNames() {
+		
+		return mPools.values().stream().map(Pool::getTitle).collect(Collectors.toList());
+	}
+	
+	@Override
+	public Content[] getContentFromHash(String[] hashes) {
+		
+		return Arrays.stream(hashes).map(this::getContentFromHash).filter(Objects::nonNull).toArray(Content[]::new);
+	}
+	
+	@Override
+	public Content getContentFromHash(String hash) {
+		
+		if (hash == null) return null;
+		return copyContent(mContent.get(hash));
+	}
+	
+	@Override
+	public Pool[] searchForPoolsByTags(boolean restricted, String[] tags, String[] blacklist) {
+		
+		Set<Integer> banned = anyWithTags(mPoolsByTag, blacklist);
+		Stream<Pool> pools = tags.length == 0 ? mPools.values().stream() : allWithTags(mPoolsByTag, tags).map(mPools::get);
+		return pools.filter(Objects::nonNull)
+					.filter(pool -> !pool.isRestricted() || restricted)
+					.filter(pool -> !banned.contains(pool.getUID()))
+					.map(InMemoryDBHandler::copyPool)
+					.toArray(Pool[]::new);
+		
+	}
+	
+	private Stream<Content> searchContent(Options.SearchOptions searchOptions, String[] tags, String[] blacklist) {
+		
+		Set<String> banned = anyWithTags(mContentByTag, blacklist);
+		Stream<Content> content = tags.length == 0 ? mContent.values().stream() : allWithTags(mContentByTag, tags).map(mContent::get);
+		return content.parallel()
+					  .filter(Objects::nonNull)
+					  .filter(c -> searchOptions.allContentAllowed() || contentTypeAllowed(searchOptions, c.getType()))
+					  .filter(c -> !c.isRestricted() || searchOptions.isRestricted())
+					  .filter(c -> !banned.contains(c.getHash()));
+		
+	}
+	
+	@Override
+	public Content[] searchForContentByTags(Options.SearchOptions searchOptions, String[] tags, String[] blacklist) {
+		
+		return searchContent(searchOptions, tags, blacklist).map(InMemoryDBHandler::copyContent).filter(Objects::nonNull).toArray(Content[]::new);
+	}
+	
+	@Override
+	public ContentSummary[] searchForContentSummariesByTags(Options.SearchOptions searchOptions, String[] tags, String[] blacklist) {
+		
+		return searchContent(searchOptions, tags, blacklist).map(ContentSummary::new).toArray(ContentSummary[]::new);
+	}
+	
+	@Override
+	public ContentPage searchForContentPage(Options.SearchOptions searchOptions, String[] tags, String[] blacklist, int page, int pageSize) {
+		
+		ContentSummary[] all = searchContent(searchOptions, tags, blacklist)
+				.map(ContentSummary::new)
+				.sorted(new ContentComparator(searchOptions))
+				.toArray(ContentSummary[]::new);
+		
+		if (pageSize == 0) return new ContentPage(all, all.length, 0, 0);
+		
+		int from = (int) Math.min((long) page * pageSize, all.length);
+		int to = Math.min(from + pageSize, all.length);
+		return new ContentPage(Arrays.copyOfRange(all, from, to), all.length, page, pageSize);
+		
+	}
+	
+	@Override
+	public List<ImageSignature> getAllSignatures() {
+		
+		return mSignatures.values().stream().map(InMemoryDBHandler::copySignature).collect(Collectors.toList());
+	}
+	
+	@Override
+	public void exportSignature(ImageSignature signature) {
+		
+		mSignatures.put(signature.getHash(), copySignature(signature));
+	}
+	
+	@Override
+	public ImageSignature getSignatureFromHash(String hash) {
+		
+		if (hash == null) return null;
+		return copySignature(mSignatures.get(hash));
+	}
+	
+	@Override
+	public boolean checkSignatureExists(String hash) {
+		
+		if (hash == null) return false;
+		return mSignatures.containsKey(hash);
+	}
+	
+	@Override
+	public void exportDuplicateClusters(Collection<List<String>> clusters) {
+		
+		List<List<String>> copy = new ArrayList<>(clusters.size());
+		for (List<String> cluster : clusters) {
+			copy.add(new ArrayList<>(cluster));
+		}
+		mDuplicateClusters = copy;
+		
+	}
+	
+	@Override
+	public List<List<String>> getDuplicateClusters() {
+		
+		List<List<String>> copy = new ArrayList<>();
+		for (List<String> cluster : mDuplicateClusters) {
+			copy.add(new ArrayList<>(cluster));
+		}
+		return copy;
+		
+	}
+	
+	@Override
+	public DuplicateScanProgress getDuplicateScanProgress() {
+		
+		return mDuplicateScanProgress;
+	}
+	
+	@Override
+	public void exportDuplicateScanCheckpoint(DuplicateScanProgress progress, List<String> pairs) {
+		
+		synchronized (mDuplicateScanPairs) {
+			mDuplicateScanPairs.computeIfAbsent(progress.getRunId(), key -> new TreeMap<>()).put(progress.getCheckpoint(), new ArrayList<>(pairs));
+			mDuplicateScanProgress = progress;
+		}
+		
+	}
+	
+	@Override
+	public List<String> getDuplicateScanPairs(DuplicateScanProgress progress) {
+		
+		List<String> pairs = new ArrayList<>();
+		synchronized (mDuplicateScanPairs) {
+			NavigableMap<Integer, List<String>> checkpoints = mDuplicateScanPairs.get(progress.getRunId());
+			if (checkpoints != null) checkpoints.headMap(progress.getCheckpoint(), true).values().forEach(pairs::addAll);
+		}
+		return pairs;
+		
+	}
+	
+	@Override
+	public void clearDuplicateScan() {
+		
+		synchronized (mDuplicateScanPairs) {
+			mDuplicateScanPairs.clear();
+			mDuplicateScanProgress = null;
+		}
+		
+	}
+	
+	@Override
+	public void updateAllContentWithTags(String[] tags) {
+		
+		if (tags.length == 0) return;
+		exportContent(Arrays.asList(getContentFromHash(anyWithTags(mContentByTag, tags).toArray(new String[0]))));
+		
+	}
+	
+	@Override
+	public void updateAllWithTags(Tag[] tags) {
+		
+		if (tags.length == 0) return;
+		updateAllWithTags(Arrays.stream(tags).map(Tag::getName).toArray(String[]::new));
+		
+	}
+	
+	@Override
+	public void updateAllWithTags(String[] tags) {
+		
+		updateAllContentWithTags(tags);
+		updateAllPoolsWithTags(tags);
+		
+	}
+	
+	@Override
+	public void updateAllPoolsWithTags(String[] tags) {
+		
+		if (tags.length == 0) return;
+		
+		Set<Integer> uids = anyWithTags(mPoolsByTag, tags);
+		exportPool(Arrays.asList(getPoolFromUID(uids.stream().mapToInt(Integer::intValue).toArray())));
+		
+	}
+	
+	@Override
+	public void updateAllContent() {
+		
+		exportContent(Arrays.asList(getContentFromHash(mContent.keySet().toArray(new String[0]))));
+	}
+	
+	@Override
+	public void updateAllPools() {
+		
+		exportPool(Arrays.asList(getPoolFromUID(mPools.keySet().stream().mapToInt(Integer::intValue).toArray())));
+	}
+	
+	@Override
+	public void updateAll() {
+		
+		updateAllContent();
+		updateAllPools();
+		updateAllTags();
+		
+	}
+	
+	@Override
+	public void removeTagFromAllContent(String tag) {
+		
+		removeTagFromAllContent(new String[]{tag});
+	}
+	
+	@Override
+	public void removeTagFromAll(String tag) {
+		
+		removeTagFromAll(new String[]{tag});
+	}
+	
+	@Override
+	public void removeTagFromAll(String[] tags) {
+		
+		removeTagFromAllContent(tags);
+		updateAllPools();
+		
+	}
+	
+	@Override
+	public long getNumTags() {
+		
+		return mTags.size();
+	}
+	
+	@Override
+	public void removeTagFromAllContent(String[] tags) {
+		
+		List<Content> content = Arrays.asList(getContentFromHash(anyWithTags(mContentByTag, tags).toArray(new String[0])));
+		content.stream().parallel().forEach(c -> c.removeTag(tags, this));
+		exportContent(content);
+		
+	}
+	
+	@Override
+	public boolean isTagRestricted(String[] tags) {
+		
+		return mTagGraph.isRestricted(tags);
+	}
+	
+	@Override
+	public boolean deleteTag(String tag) {
+		
+		mTags.remove(tag);
+		mTagGraph.removeTag(tag);
+		return true;
+		
+	}
+	
+	@Override
+	public List<Tag> getAllTagsWithParent(String name) {
+		
+		return mTags.values().stream()
+					.filter(tag -> Arrays.asList(tag.getParentTags()).contains(name))
+					.map(InMemoryDBHandler::copyTag)
+					.collect(Collectors.toList());
+		
+	}
+	
+	@Override
+	public List<Tag> getAllTags() {
+		
+		return mTags.values().stream().map(InMemoryDBHandler::copyTag).collect(Collectors.toList());
+	}
+	
+	private int countContentWithTag(String tag) {
+		
+		Set<String> set = mContentByTag.get(tag);
+		return set == null ? 0 : set.size();
+		
+	}
+	
+	@Override
+	public boolean exportTag(Tag tag, boolean manualCount) {
+		
+		try {
+			mTagGraph.putTag(tag);
+		}
+		catch (TagGraph.TagCycleException e) {
+			log.error("Not saving tag " + tag.getName(), e);
+			return false;
+		}
+		
+		if (manualCount) tag.setUses(countContentWithTag(tag.getName()));
+		
+		//Same as the database, an existing count is only replaced by a recount
+		Tag stored = mTags.compute(tag.getName(), (name, existing) -> {
+			Tag copy = copyTag(tag);
+			if (!manualCount && existing != null) copy.setUses(existing.getNumUses());
+			return copy;
+		});
+		tag.setUses(stored.getNumUses());
+		return true;
+		
+	}
+	
+	@Override
+	public boolean exportTagParents(String tag, String[] parents) {
+		
+		try {
+			mTagGraph.setTagParents(tag, parents);
+		}
+		catch (TagGraph.TagCycleException e) {
+			log.error("Not saving parents for tag " + tag, e);
+			return false;
+		}
+		
+		mTags.compute(tag, (name, existing) -> {
+			Tag updated = existing == null ? new Tag(name) : copyTag(existing);
+			updated.setParentTags(parents.clone());
+			return updated;
+		});
+		return true;
+		
+	}
+	
+	@Override
+	public void decrementTagUses(String[] tags) {
+		
+		for (String name : tags) {
+			mTags.computeIfPresent(name, (key, tag) -> {
+				tag.decrementUses();
+				return tag;
+			});
+		}
+		
+	}
+	
+	@Override
+	public void incrementTagUses(String[] tags) {
+		
+		for (String name : tags) {
+			mTags.compute(name, (key, tag) -> {
+				if (tag == null) tag = new Tag(name);
+				tag.incrementUses();
+				return tag;
+			});
+		}
+		
+	}
+	
+	@Override
+	public void addTag(String tag) {
+		
+		addTag(new String[]{tag});
+	}
+	
+	@Override
+	public void addTag(String[] tags) {
+		
+		for (String tag : tags) {
+			
+			if (mTags.containsKey(tag.toLowerCase(Locale.ROOT))) continue;
+			mTags.putIfAbsent(tag, new Tag(tag));
+			
+		}
+		
+	}
+	
+	@Override
+	public Tag getTagFromName(String name) {
+		
+		Tag tag = copyTag(mTags.get(name));
+		if (tag == null) return null;
+		
+		if (tag.getNumUses() == 0) {
+			exportTag(tag, true);
+		}
+		return tag;
+		
+	}
+	
+	@Override
+	public void updateAllTags() {
+		
+		getAllTags().forEach(tag -> exportTag(tag, true));
+	}
+	
+	@Override
+	public void updateAllTags(Tag[] tags) {
+		
+		Arrays.stream(tags).forEach(tag -> exportTag(tag, true));
+	}
+	
+	@Override
+	public TagGraph getTagGraph() {
+		
+		return mTagGraph;
+	}
+	
+	@Override
+	public SignatureStore getSignatureStore() {
+		
+		//Everything's in memory already, there's nothing to gain from a file
+		return null;
+	}
+	
+}
@@ -21,29 +21,61 @@ package ca.bigcattech.MediaDB.db;
 
 import ca.bigcattech.MediaDB.core.Options;
 import ca.bigcattech.MediaDB.db.content.Content;
+import ca.bigcattech.MediaDB.db.content.ContentPage;
+import ca.bigcattech.MediaDB.db.content.ContentSummary;
 import ca.bigcattech.MediaDB.db.content.ContentType;
 import ca.bigcattech.MediaDB.db.pool.Pool;
 import ca.bigcattech.MediaDB.db.tag.Tag;
+import ca.bigcattech.MediaDB.db.tag.TagGraph;
+import ca.bigcattech.MediaDB.image.DuplicateScanProgress;
 import ca.bigcattech.MediaDB.image.ImageSignature;
+import ca.bigcattech.MediaDB.image.SignatureStore;
+import ca.bigcattech.MediaDB.image.SimilarityFinder;
+import ca.bigcattech.MediaDB.utils.CountingBloomFilter;
+import ca.bigcattech.MediaDB.utils.ImageUtils;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.MongoSocketOpenException;
+import com.mongodb.MongoTimeoutException;
 import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.MongoClient;
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import org.bson.Document;
 import org.bson.conversions.Bson;
+import org.bson.types.Binary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.function.Predicate;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class MongoDBHandler implements DBHandler {
@@ -52,6 +84,9 @@ public class MongoDBHandler implements DBHandler {
 	private static final String COLLECTION_TAGS = "tags";
 	private static final String COLLECTION_POOLS = "pools";
 	private static final String COLLECTION_SIGNATURES = "signature";
+	private static final String COLLECTION_META = "meta";
+	private static final String COLLECTION_DUPLICATES = "duplicates";
+	private static final String COLLECTION_DUPLICATE_SCAN = "duplicate_scan";
 	
 	private static final String KEY_CONTENT_HASH = "content_hash";
 	private static final String KEY_CONTENT_FILE = "content_file";
@@ -85,10 +120,67 @@ public class MongoDBHandler implements DBHandler {
 	private static final String KEY_POOLS_FAVORITE = "pools_favorite";
 	
 	private static final String KEY_SIGNATURE_CONTENT_HASH = "signature_content_hash";
+	private static final String KEY_SIGNATURE_DATA = "signature_data";
+	//Only there for signatures calculated since perceptual hashes were added
+	private static final String KEY_SIGNATURE_PERCEPTUAL_HASH = "signature_perceptual_hash";
+	//The signature revision it was last written at, signatures written before revisions were added don't have one
+	private static final String KEY_SIGNATURE_REVISION = "signature_revision";
+	//The old format, one list of hex colour strings per column
+	private static final String[] KEY_SIGNATURE_LEGACY_COLUMNS = {"0", "1", "2", "3", "4"};
+	
+	private static final String KEY_META_NAME = "meta_name";
+	private static final String KEY_META_SCHEMA_VERSION = "meta_schema_version";
+	private static final String META_SCHEMA = "schema";
+	private static final String KEY_META_DUPLICATE_SCAN_SETTINGS = "meta_duplicate_scan_settings";
+	private static final String KEY_META_DUPLICATE_SCAN_LAST_HASH = "meta_duplicate_scan_last_hash";
+	private static final String KEY_META_DUPLICATE_SCAN_RUN = "meta_duplicate_scan_run";
+	private static final String KEY_META_DUPLICATE_SCAN_FINGERPRINT = "meta_duplicate_scan_fingerprint";
+	private static final String KEY_META_DUPLICATE_SCAN_CHECKPOINT = "meta_duplicate_scan_checkpoint";
+	private static final String META_DUPLICATE_SCAN = "duplicate_scan";
+	//Goes up by one every time a signature is written, so the signature file can tell if it's missed anything
+	private static final String KEY_META_SIGNATURE_REVISION = "meta_signature_revision";
+	private static final String META_SIGNATURES = "signatures";
+	
+	private static final String KEY_DUPLICATES_HASHES = "duplicates_hashes";
+	
+	private static final String KEY_DUPLICATE_SCAN_RUN = "duplicate_scan_run";
+	private static final String KEY_DUPLICATE_SCAN_CHECKPOINT = "duplicate_scan_checkpoint";
+	//The content hashes a checkpoint joined, two at a time
+	private static final String KEY_DUPLICATE_SCAN_PAIRS = "duplicate_scan_pairs";
+	//Keeps each document of pairs well under the 16MB limit
+	private static final int DUPLICATE_SCAN_PAIRS_PER_DOCUMENT = 10000;
+	
+	/**
+	 * Bump this and add a step to migrate whenever the way things are stored changes
+	 * 1: ImageSignatures stored as 75 bytes of BinData instead of lists of hex strings
+	 * 2: ImageSignatures worked out again for the thumbnails the old sampling got wrong, see SimilarityFinder.matchesOldSignature
+	 */
+	private static final int SCHEMA_VERSION = 2;
+	
+	public static final int DEFAULT_BULK_WRITE_BATCH_SIZE = 1000;
+	private static final int ERROR_DUPLICATE_KEY = 11000;
+	
+	private static final double HASH_FILTER_FALSE_POSITIVE_RATE = 0.01;
+	private static final int HASH_FILTER_MIN_CAPACITY = 100000;
 	
 	private static final Logger log = LoggerFactory.getLogger(MongoDBHandler.class);
 	
 	private final MongoDatabase mDatabase;
+	private final TagGraph mTagGraph = new TagGraph();
+	
+	//Answers checkHash locally for any hash we definitely don't have, null until initDB loads it
+	private volatile CountingBloomFilter mHashFilter;
+	private final AtomicLong mHashFilterNegatives = new AtomicLong();
+	private final AtomicLong mHashFilterHits = new AtomicLong();
+	private final AtomicLong mHashFilterFalsePositives = new AtomicLong();
+	private int mBulkWriteBatchSize = DEFAULT_BULK_WRITE_BATCH_SIZE;
+	
+	//Local copy of the signature collection, null if it's not being used
+	private File mSignatureStoreFile = null;
+	private volatile SignatureStore mSignatureStore = null;
+	//The revision the signature file was brought up to when it was opened, and how many signatures we've written to both since
+	private long mSignatureRevisionBase = 0;
+	private final AtomicLong mSignatureExports = new AtomicLong();
 	
 	public MongoDBHandler(String database, String address) {
 		
@@ -105,6 +197,71 @@ public class MongoDBHandler implements DBHandler {
 		
 	}
 	
+	/**
+	 * Set the max number of write operations sent to the database in a single bulk write
+	 *
+	 * @param batchSize the number of writes per batch, values less than 1 are treated as 1
+	 */
+	public void setBulkWriteBatchSize(int batchSize) {
+		
+		mBulkWriteBatchSize = Math.max(1, batchSize);
+	}
+	
+	public int getBulkWriteBatchSize() {
+		
+		return mBulkWriteBatchSize;
+	}
+	
+	/**
+	 * Keep a memory mapped copy of every ImageSignature in this file, must be set before initDB to take effect
+	 *
+	 * @param file where to keep the signatures, null to not keep a local copy
+	 */
+	public void setSignatureStoreFile(File file) {
+		
+		mSignatureStoreFile = file;
+	}
+	
+	/**
+	 * Sends the provided writes to the collection in unordered batches of mBulkWriteBatchSize.
+	 * A failed write doesn't stop the rest of the batch, the failures are logged.
+	 *
+	 * @param collection the collection to write to
+	 * @param requests   the writes to send
+	 */
+	private void bulkWrite(MongoCollection<Document> collection, List<WriteModel<Document>> requests) {
+		
+		if (requests.isEmpty()) return;
+		
+		BulkWriteOptions options = new BulkWriteOptions().ordered(false);
+		for (int i = 0; i < requests.size(); i += mBulkWriteBatchSize) {
+			
+			List<WriteModel<Document>> batch = requests.subList(i, Math.min(i + mBulkWriteBatchSize, requests.size()));
+			try {
+				collection.bulkWrite(batch, options);
+			}
+			catch (MongoBulkWriteException e) {
+				
+				//Two upserts for the same key racing each other will fail one of them with a duplicate key error, the document exists now so just try those again
+				List<WriteModel<Document>> retry = e.getWriteErrors().stream().filter(error -> error.getCode() == ERROR_DUPLICATE_KEY).map(error -> batch.get(error.getIndex())).collect(Collectors.toList());
+				if (retry.size() != e.getWriteErrors().size())
+					log.error("{} of {} writes failed in bulk write", e.getWriteErrors().size() - retry.size(), batch.size(), e);
+				
+				if (!retry.isEmpty()) {
+					try {
+						collection.bulkWrite(retry, options);
+					}
+					catch (MongoBulkWriteException e2) {
+						log.error("{} of {} writes failed in bulk write retry", e2.getWriteErrors().size(), retry.size(), e2);
+					}
+				}
+				
+			}
+			
+		}
+		
+	}
+	
 	private static Document ensureContentDocumentValid(Document document) {
 		
 		document.putIfAbsent(KEY_CONTENT_HASH, "null");
@@ -183,21 +340,23 @@ public class MongoDBHandler implements DBHandler {
 		ensureContentDocumentValid(document);
 		
 		try {
-			return Content.builder(ContentType.valueOf(document.getString(KEY_CONTENT_TYPE)))
-						  .hash(document.getString(KEY_CONTENT_HASH))
-						  .file(new File(document.getString(KEY_CONTENT_FILE)))
-						  .tags(document.getList(KEY_CONTENT_TAGS, String.class).toArray(new String[0]))
-						  .restricted(document.getBoolean(KEY_CONTENT_RESTRICTED))
-						  .setPrivate(document.getBoolean(KEY_CONTENT_PRIVATE))
-						  .setFavorite(document.getBoolean(KEY_CONTENT_FAVORITE))
-						  .title(document.getString(KEY_CONTENT_TITLE))
-						  .description(document.getString(KEY_CONTENT_DESCRIPTION))
-						  .views(document.getInteger(KEY_CONTENT_VIEWS))
-						  .signature(loadImageSignatureFromContentDocument(document))
-						  .videoLength(document.getLong(KEY_CONTENT_VIDEO_LENGTH))
-						  .timeSpent(document.getLong(KEY_CONTENT_TIME_SPENT))
-						  .pools(Arrays.stream(document.getList(KEY_CONTENT_POOLS, String.class).toArray(new String[]{})).mapToInt(Integer::valueOf).toArray())
-						  .build();
+			Content content = Content.builder(ContentType.valueOf(document.getString(KEY_CONTENT_TYPE)))
+									 .hash(document.getString(KEY_CONTENT_HASH))
+									 .file(new File(document.getString(KEY_CONTENT_FILE)))
+									 .tags(document.getList(KEY_CONTENT_TAGS, String.class).toArray(new String[0]))
+									 .restricted(document.getBoolean(KEY_CONTENT_RESTRICTED))
+									 .setPrivate(document.getBoolean(KEY_CONTENT_PRIVATE))
+									 .setFavorite(document.getBoolean(KEY_CONTENT_FAVORITE))
+									 .title(document.getString(KEY_CONTENT_TITLE))
+									 .description(document.getString(KEY_CONTENT_DESCRIPTION))
+									 .views(document.getInteger(KEY_CONTENT_VIEWS))
+									 .signature(loadImageSignatureFromContentDocument(document))
+									 .videoLength(document.getLong(KEY_CONTENT_VIDEO_LENGTH))
+									 .timeSpent(document.getLong(KEY_CONTENT_TIME_SPENT))
+									 .pools(Arrays.stream(document.getList(KEY_CONTENT_POOLS, String.class).toArray(new String[]{})).mapToInt(Integer::valueOf).toArray())
+									 .build();
+			content.markClean();
+			return content;
 			
 		}
 		catch (Content.ContentValidationException e) {
@@ -208,16 +367,53 @@ public class MongoDBHandler implements DBHandler {
 		
 	}
 	
+	/**
+	 * Load a ContentSummary from a document that was projected with contentSummaryProjection, anything missing gets the same default ensureContentDocumentValid would give it
+	 */
+	private static ContentSummary loadContentSummaryFromDocument(Document document) {
+		
+		return new ContentSummary(
+				document.getString(KEY_CONTENT_HASH),
+				ContentType.valueOf(document.getString(KEY_CONTENT_TYPE)),
+				new File(document.getString(KEY_CONTENT_FILE)),
+				document.getList(KEY_CONTENT_TAGS, String.class, new ArrayList<>()).toArray(new String[0]),
+				document.getBoolean(KEY_CONTENT_RESTRICTED, false),
+				document.getBoolean(KEY_CONTENT_FAVORITE, false),
+				document.getInteger(KEY_CONTENT_VIEWS, 0),
+				document.get(KEY_CONTENT_VIDEO_LENGTH, 0L),
+				document.get(KEY_CONTENT_TIME_SPENT, 0L),
+				document.get(KEY_CONTENT_TITLE, "None")
+		);
+		
+	}
+	
+	private static Bson contentSummaryProjection(Options.SearchOptions searchOptions) {
+		
+		List<String> fields = new ArrayList<>(Arrays.asList(KEY_CONTENT_HASH, KEY_CONTENT_TYPE, KEY_CONTENT_FILE, KEY_CONTENT_TAGS, KEY_CONTENT_RESTRICTED,
+				KEY_CONTENT_FAVORITE, KEY_CONTENT_VIEWS, KEY_CONTENT_VIDEO_LENGTH, KEY_CONTENT_TIME_SPENT));
+		//The title is the only string that can be long and we only need it to sort by
+		if (searchOptions.getSearchType() == Options.SearchOptions.SortType.TITLE) fields.add(KEY_CONTENT_TITLE);
+		
+		return Projections.fields(Projections.include(fields.toArray(new String[0])), Projections.excludeId());
+		
+	}
+	
+	private static List<Content> loadContentFromDocuments(List<Document> documents) {
+		
+		return documents.stream().parallel().map(MongoDBHandler::loadContentFromDocument).filter(Objects::nonNull).collect(Collectors.toList());
+	}
+	
+	private static List<Pool> loadPoolsFromDocuments(List<Document> documents) {
+		
+		return documents.stream().parallel().filter(Objects::nonNull).map(MongoDBHandler::loadPoolFromDocument).collect(Collectors.toList());
+	}
+	
 	private static Document createImageSignatureDocument(ImageSignature signature) {
 		
 		Document document = new Document();
 		
-		List<List<String>> data = signature.convertDataStructure();
-		document.put("0", data.get(0));
-		document.put("1", data.get(1));
-		document.put("2", data.get(2));
-		document.put("3", data.get(3));
-		document.put("4", data.get(4));
+		document.put(KEY_SIGNATURE_DATA, new Binary(signature.getData()));
+		if (signature.hasPerceptualHash()) document.put(KEY_SIGNATURE_PERCEPTUAL_HASH, signature.getPerceptualHash());
 		
 		if (signature.getHash() != null && !signature.getHash().isEmpty()) {
 			document.put(KEY_SIGNATURE_CONTENT_HASH, signature.getHash());
@@ -230,16 +426,29 @@ public class MongoDBHandler implements DBHandler {
 	private static ImageSignature loadImageSignatureFromDocument(Document document) {
 		
 		if (document == null) return null;
+		return loadImageSignature(document.getString(KEY_SIGNATURE_CONTENT_HASH), document);
 		
-		List<List<String>> data = new ArrayList<>();
+	}
+	
+	/**
+	 * Reads either format, the packed bytes, or the old lists of hex strings if it hasn't been migrated yet
+	 */
+	private static ImageSignature loadImageSignature(String hash, Document document) {
 		
-		data.add(document.getList("0", String.class));
-		data.add(document.getList("1", String.class));
-		data.add(document.getList("2", String.class));
-		data.add(document.getList("3", String.class));
-		data.add(document.getList("4", String.class));
+		ImageSignature signature;
+		Binary binary = document.get(KEY_SIGNATURE_DATA, Binary.class);
+		if (binary != null) signature = new ImageSignature(hash, binary.getData());
+		else {
+			List<List<String>> data = new ArrayList<>();
+			for (String key : KEY_SIGNATURE_LEGACY_COLUMNS) {
+				data.add(document.getList(key, String.class));
+			}
+			signature = new ImageSignature(hash, data);
+		}
 		
-		return new ImageSignature(document.getString(KEY_SIGNATURE_CONTENT_HASH), data);
+		Long perceptualHash = document.getLong(KEY_SIGNATURE_PERCEPTUAL_HASH);
+		if (perceptualHash != null) signature.setPerceptualHash(perceptualHash);
+		return signature;
 		
 	}
 	
@@ -248,17 +457,8 @@ public class MongoDBHandler implements DBHandler {
 		
 		if (!document.containsKey(KEY_CONTENT_SIGNATURE)) return null;
 		
-		List<List<String>> data = new ArrayList<>();
-		
 		Document signatureDoc = (Document) document.get(KEY_CONTENT_SIGNATURE);
-		
-		data.add(signatureDoc.getList("0", String.class));
-		data.add(signatureDoc.getList("1", String.class));
-		data.add(signatureDoc.getList("2", String.class));
-		data.add(signatureDoc.getList("3", String.class));
-		data.add(signatureDoc.getList("4", String.class));
-		
-		return new ImageSignature(document.getString(KEY_CONTENT_HASH), data);
+		return loadImageSignature(document.getString(KEY_CONTENT_HASH), signatureDoc);
 		
 	}
 	
@@ -304,8 +504,14 @@ public class MongoDBHandler implements DBHandler {
 		createCollections();
 		createIndexes();
 		
+		//Migrating can write content back, which works out restrictions from the tag graph, so it has to be loaded first
+		mTagGraph.load(getAllTags());
+		
 		migrate();
 		
+		loadHashFilter();
+		openSignatureStore();
+		
 		log.info("MongoDBHandler init finished");
 		
 	}
@@ -317,6 +523,14 @@ public class MongoDBHandler implements DBHandler {
 		long start = System.currentTimeMillis();
 		
 		migrateSignatures();
+		
+		int version = getSchemaVersion();
+		if (version < SCHEMA_VERSION) {
+			log.info("Migrating database from version {} to {}", version, SCHEMA_VERSION);
+			if (version < 1) migrateSignaturesToBinary();
+			if (version < 2) recalculateOldSignatures();
+			setSchemaVersion(SCHEMA_VERSION);
+		}
 
         log.info("Migrating took {}ms", System.currentTimeMillis() - start);
 		
@@ -346,6 +560,102 @@ public class MongoDBHandler implements DBHandler {
 		
 	}
 	
+	private int getSchemaVersion() {
+		
+		Document document = mDatabase.getCollection(COLLECTION_META).find(Filters.eq(KEY_META_NAME, META_SCHEMA)).first();
+		return document == null ? 0 : document.getInteger(KEY_META_SCHEMA_VERSION, 0);
+		
+	}
+	
+	private void setSchemaVersion(int version) {
+		
+		mDatabase.getCollection(COLLECTION_META).updateOne(Filters.eq(KEY_META_NAME, META_SCHEMA), Updates.set(KEY_META_SCHEMA_VERSION, version), new UpdateOptions().upsert(true));
+	}
+	
+	/**
+	 * Rewrite every signature that's still stored as hex strings as packed bytes, in bulk.
+	 * Only documents without the packed bytes are touched, so if this gets interrupted it just picks up where it left off next time.
+	 */
+	private void migrateSignaturesToBinary() {
+		
+		long start = System.currentTimeMillis();
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_SIGNATURES);
+		
+		List<Bson> unsetLegacy = new ArrayList<>();
+		for (String key : KEY_SIGNATURE_LEGACY_COLUMNS) {
+			unsetLegacy.add(Updates.unset(key));
+		}
+		
+		int count = 0;
+		List<WriteModel<Document>> requests = new ArrayList<>();
+		for (Document document : collection.find(Filters.exists(KEY_SIGNATURE_DATA, false))) {
+			
+			ImageSignature signature = loadImageSignature(null, document);
+			List<Bson> updates = new ArrayList<>(unsetLegacy);
+			updates.add(Updates.set(KEY_SIGNATURE_DATA, new Binary(signature.getData())));
+			requests.add(new UpdateOneModel<>(Filters.eq("_id", document.get("_id")), Updates.combine(updates)));
+			
+			//Write as we go, so we never hold the whole collection in memory
+			if (requests.size() >= mBulkWriteBatchSize) {
+				bulkWrite(collection, requests);
+				count += requests.size();
+				requests = new ArrayList<>();
+			}
+			
+		}
+		bulkWrite(collection, requests);
+		count += requests.size();
+		
+		log.info("Converted {} ImageSignatures to the packed format in {}ms", count, System.currentTimeMillis() - start);
+		
+	}
+	
+	/**
+	 * Signatures from before the single pass sampling are only right for 8 bit RGB thumbnails big enough for every sampling window,
+	 * anything else, like thumbnails with alpha, a palette or in grey, came out different and would never match a new signature of the same image.
+	 * Every thumbnail is loaded to check, but only the ones that need it are worked out and written again, so if this gets interrupted it can just run again.
+	 */
+	private void recalculateOldSignatures() {
+		
+		long start = System.currentTimeMillis();
+		
+		List<String> hashes = new ArrayList<>();
+		for (Document document : mDatabase.getCollection(COLLECTION_SIGNATURES).find().projection(Projections.fields(Projections.include(KEY_SIGNATURE_CONTENT_HASH), Projections.excludeId()))) {
+			hashes.add(document.getString(KEY_SIGNATURE_CONTENT_HASH));
+		}
+		
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_CONTENT);
+		AtomicLong count = new AtomicLong();
+		for (int i = 0; i < hashes.size(); i += mBulkWriteBatchSize) {
+			
+			List<Document> documents = new ArrayList<>();
+			collection.find(Filters.in(KEY_CONTENT_HASH, hashes.subList(i, Math.min(i + mBulkWriteBatchSize, hashes.size())))).into(documents);
+			loadContentFromDocuments(documents).stream().parallel().forEach(content -> {
+				
+				File thumbnail = new File(content.getThumbnailFile());
+				if (!thumbnail.isFile()) return;
+				try {
+					BufferedImage image = ImageUtils.loadImage(thumbnail).getBufferedImage();
+					if (SimilarityFinder.matchesOldSignature(image)) return;
+					
+					ImageSignature signature = SimilarityFinder.calcSignature(image);
+					signature.setPerceptualHash(SimilarityFinder.calcPerceptualHash(image));
+					signature.setHash(content.getHash());
+					exportSignature(signature);
+					count.incrementAndGet();
+				}
+				catch (IOException e) {
+					log.warn("Couldn't work out the signature for {} again: {}", content.getHash(), e.getMessage());
+				}
+				
+			});
+			
+		}
+		
+		log.info("Worked out {} of {} ImageSignatures again in {}ms", count.get(), hashes.size(), System.currentTimeMillis() - start);
+		
+	}
+	
 	private void migrateSignatures() {
 		
 		List<Document> documents = new ArrayList<>();
@@ -402,6 +712,21 @@ public class MongoDBHandler implements DBHandler {
 			mDatabase.createCollection(COLLECTION_SIGNATURES);
 			created = true;
 		}
+		if (!collections.contains(COLLECTION_META)) {
+			log.info("Creating meta collection");
+			mDatabase.createCollection(COLLECTION_META);
+			created = true;
+		}
+		if (!collections.contains(COLLECTION_DUPLICATES)) {
+			log.info("Creating duplicates collection");
+			mDatabase.createCollection(COLLECTION_DUPLICATES);
+			created = true;
+		}
+		if (!collections.contains(COLLECTION_DUPLICATE_SCAN)) {
+			log.info("Creating duplicate scan collection");
+			mDatabase.createCollection(COLLECTION_DUPLICATE_SCAN);
+			created = true;
+		}
 		
 		if (!created) log.info("Collections already exist");
 		
@@ -420,6 +745,10 @@ public class MongoDBHandler implements DBHandler {
 		content.createIndex(Indexes.text(KEY_CONTENT_TAGS));
 		//An index for restricted or not
 		content.createIndex(Indexes.ascending(KEY_CONTENT_RESTRICTED));
+		//Indexes for the fields we sort search results by
+		content.createIndex(Indexes.ascending(KEY_CONTENT_TITLE));
+		content.createIndex(Indexes.ascending(KEY_CONTENT_VIEWS));
+		content.createIndex(Indexes.ascending(KEY_CONTENT_TIME_SPENT));
 		
 		//Indexes for the tags collection
 		MongoCollection<Document> tags = mDatabase.getCollection(COLLECTION_TAGS);
@@ -438,6 +767,16 @@ public class MongoDBHandler implements DBHandler {
 		
 		MongoCollection<Document> signatures = mDatabase.getCollection(COLLECTION_SIGNATURES);
 		signatures.createIndex(Indexes.ascending(KEY_SIGNATURE_CONTENT_HASH), new IndexOptions().unique(true));
+		signatures.createIndex(Indexes.ascending(KEY_SIGNATURE_REVISION));
+		
+		//Indexes for the meta collection
+		mDatabase.getCollection(COLLECTION_META).createIndex(Indexes.ascending(KEY_META_NAME), new IndexOptions().unique(true));
+		
+		//Indexes for the duplicates collection, so the group a piece of content is in can be looked up
+		mDatabase.getCollection(COLLECTION_DUPLICATES).createIndex(Indexes.ascending(KEY_DUPLICATES_HASHES));
+		
+		//Indexes for the duplicate scan collection, the pairs are always looked up by run and checkpoint
+		mDatabase.getCollection(COLLECTION_DUPLICATE_SCAN).createIndex(Indexes.ascending(KEY_DUPLICATE_SCAN_RUN, KEY_DUPLICATE_SCAN_CHECKPOINT));
 		
 	}
 	
@@ -451,14 +790,228 @@ public class MongoDBHandler implements DBHandler {
 	public boolean checkHash(String hash) {
 		
 		if (hash == null) return false;
+		
+		CountingBloomFilter filter = mHashFilter;
+		if (filter != null && !filter.mightContain(hash)) {
+			mHashFilterNegatives.incrementAndGet();
+			return false;
+		}
+		
 		MongoCollection<Document> content = mDatabase.getCollection(COLLECTION_CONTENT);
-		return (content.countDocuments(Filters.eq(KEY_CONTENT_HASH, hash)) == 1);
+		boolean exists = content.find(Filters.eq(KEY_CONTENT_HASH, hash)).projection(Projections.include(KEY_CONTENT_HASH)).limit(1).first() != null;
+		
+		if (filter != null) {
+			if (exists) mHashFilterHits.incrementAndGet();
+			else mHashFilterFalsePositives.incrementAndGet();
+		}
+		return exists;
+		
+	}
+	
+	/**
+	 * Build the hash filter from every content hash in the database, only the hashes are loaded.
+	 * It's sized for twice the current library, or HASH_FILTER_MIN_CAPACITY, whichever is more, and gets rebuilt if it fills up.
+	 */
+	public void loadHashFilter() {
+		
+		long start = System.currentTimeMillis();
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_CONTENT);
+		
+		long count = collection.countDocuments();
+		CountingBloomFilter filter = new CountingBloomFilter((int) Math.min(Integer.MAX_VALUE / 16, Math.max(HASH_FILTER_MIN_CAPACITY, count * 2)), HASH_FILTER_FALSE_POSITIVE_RATE);
+		for (Document document : collection.find().projection(Projections.fields(Projections.include(KEY_CONTENT_HASH), Projections.excludeId()))) {
+			String hash = document.getString(KEY_CONTENT_HASH);
+			if (hash != null) filter.add(hash);
+		}
+		mHashFilter = filter;
+		
+		log.info("Loaded {} hashes into the hash filter in {}ms, using {}KB", filter.size(), System.currentTimeMillis() - start, filter.getMemoryUsage() / 1024);
+		
+	}
+	
+	private void addToHashFilter(Collection<String> hashes) {
+		
+		CountingBloomFilter filter = mHashFilter;
+		if (filter == null || hashes.isEmpty()) return;
+		
+		hashes.forEach(filter::add);
+		if (filter.size() > filter.getCapacity()) {
+			log.info("Hash filter is full, rebuilding it");
+			loadHashFilter();
+		}
+		
+	}
+	
+	private void openSignatureStore() {
+		
+		if (mSignatureStoreFile == null) return;
+		
+		SignatureStore store;
+		try {
+			store = SignatureStore.open(mSignatureStoreFile);
+		}
+		catch (IOException e) {
+			log.warn("Couldn't open the signature file, starting a new one", e);
+			try {
+				Files.deleteIfExists(mSignatureStoreFile.toPath());
+				store = SignatureStore.open(mSignatureStoreFile);
+			}
+			catch (IOException ex) {
+				log.error("Couldn't create a signature file, signatures will be loaded from the database", ex);
+				return;
+			}
+		}
+		
+		reconcileSignatureStore(store);
+		mSignatureStore = store;
+		
+	}
+	
+	/**
+	 * Bring the signature file in line with the signature collection. If the file is at the database's signature revision and the counts match it's trusted as is.
+	 * Otherwise anything written since the file's revision is pulled from the database, and if the counts still don't match the hashes are compared to find what's missing
+	 */
+	private void reconcileSignatureStore(SignatureStore store) {
+		
+		long start = System.currentTimeMillis();
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_SIGNATURES);
+		
+		//Read before anything else, so a signature written while this is running is picked up next time rather than missed
+		long revision = getSignatureRevision();
+		long count = collection.countDocuments();
+		mSignatureRevisionBase = revision;
+		mSignatureExports.set(0);
+		if (store.getRevision() == revision && count == store.size()) {
+			log.info("Signature file has all {} signatures at revision {}, checked in {}ms", count, revision, System.currentTimeMillis() - start);
+			return;
+		}
+		
+		int changed = 0;
+		if (store.getRevision() > revision) {
+			//It's from some other database, or this one was restored from a backup, none of it can be trusted
+			log.warn("Signature file is at revision {} but the database is only at {}, rebuilding it", store.getRevision(), revision);
+			store.clear();
+		}
+		else if (store.getRevision() < revision) {
+			for (Document document : collection.find(Filters.gt(KEY_SIGNATURE_REVISION, store.getRevision())).projection(Projections.excludeId())) {
+				store.put(loadImageSignatureFromDocument(document));
+				changed++;
+			}
+		}
+		
+		if (count != store.size()) reconcileSignatureHashes(store, collection);
+		
+		//Removed records just take up space, rewrite the file once they're most of it
+		if (store.getNumRemoved() > store.size()) {
+			List<ImageSignature> signatures = store.loadAll();
+			store.clear();
+			signatures.forEach(store::put);
+		}
+		store.setRevision(revision);
+		store.flush();
+		
+		log.info("Reconciled the signature file with the database at revision {}, checked {} changed signatures in {}ms", revision, changed, System.currentTimeMillis() - start);
+		
+	}
+	
+	/**
+	 * Compare the hashes in the file with the ones in the database, and only pull the missing signatures from the database
+	 */
+	private void reconcileSignatureHashes(SignatureStore store, MongoCollection<Document> collection) {
+		
+		Set<String> hashes = new HashSet<>();
+		for (Document document : collection.find().projection(Projections.fields(Projections.include(KEY_SIGNATURE_CONTENT_HASH), Projections.excludeId()))) {
+			hashes.add(document.getString(KEY_SIGNATURE_CONTENT_HASH));
+		}
+		
+		Set<String> stored = store.getHashes();
+		int removed = 0;
+		for (String hash : stored) {
+			if (!hashes.contains(hash)) {
+				store.remove(hash);
+				removed++;
+			}
+		}
+		
+		hashes.removeAll(stored);
+		List<String> missing = new ArrayList<>(hashes);
+		for (int i = 0; i < missing.size(); i += mBulkWriteBatchSize) {
+			List<String> batch = missing.subList(i, Math.min(i + mBulkWriteBatchSize, missing.size()));
+			for (Document document : collection.find(Filters.in(KEY_SIGNATURE_CONTENT_HASH, batch)).projection(Projections.excludeId())) {
+				store.put(loadImageSignatureFromDocument(document));
+			}
+		}
+		
+		log.info("Signature file was missing {} signatures and had {} that aren't in the database", missing.size(), removed);
+		
+	}
+	
+	private long getSignatureRevision() {
+		
+		Document document = mDatabase.getCollection(COLLECTION_META).find(Filters.eq(KEY_META_NAME, META_SIGNATURES)).first();
+		return document == null ? 0 : document.get(KEY_META_SIGNATURE_REVISION, Number.class).longValue();
+		
+	}
+	
+	private long nextSignatureRevision() {
+		
+		FindOneAndUpdateOptions options = new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER);
+		Document document = mDatabase.getCollection(COLLECTION_META).findOneAndUpdate(Filters.eq(KEY_META_NAME, META_SIGNATURES), Updates.inc(KEY_META_SIGNATURE_REVISION, 1L), options);
+		return document.get(KEY_META_SIGNATURE_REVISION, Number.class).longValue();
+		
+	}
+	
+	/**
+	 * Write out and close the signature file, call this on shutdown
+	 */
+	public void closeSignatureStore() {
+		
+		SignatureStore store = mSignatureStore;
+		if (store == null) return;
+		
+		mSignatureStore = null;
+		try {
+			//If every write since the file was opened was ours, and they all made it into the file, it's up to date with the database
+			long revision = getSignatureRevision();
+			if (revision == mSignatureRevisionBase + mSignatureExports.get()) store.setRevision(revision);
+			else log.info("Signatures were written elsewhere since the signature file was opened, it'll be reconciled next time");
+		}
+		catch (MongoException e) {
+			log.warn("Couldn't check the signature revision, the signature file will be reconciled next time", e);
+		}
+		try {
+			store.close();
+		}
+		catch (IOException e) {
+			log.error("Failed to close the signature file", e);
+		}
+		
+	}
+	
+	/**
+	 * Log how well the hash filter has been doing, the measured false positive rate is the share of hashes we didn't have that still needed a database lookup
+	 */
+	public void logHashFilterStats() {
+		
+		CountingBloomFilter filter = mHashFilter;
+		if (filter == null) return;
+		
+		long negatives = mHashFilterNegatives.get();
+		long falsePositives = mHashFilterFalsePositives.get();
+		double measured = negatives + falsePositives == 0 ? 0 : (double) falsePositives / (negatives + falsePositives);
+		log.info(String.format("Hash filter: %d hashes, %dKB, %d hashes per lookup, %d answered locally, %d hits, %d false positives, %.3f%% measured false positive rate, %.3f%% expected",
+				filter.size(), filter.getMemoryUsage() / 1024, filter.getNumHashes(), negatives, mHashFilterHits.get(), falsePositives, measured * 100, filter.getExpectedFalsePositiveRate() * 100));
 		
 	}
 	
 	@Override
 	public void exportContent(Content content) throws Content.ContentValidationException {
 		
+		if (content.isTracked()) {
+			exportContentChanges(content);
+			return;
+		}
+		
 		content.update(this);
 		content.validate();
 		
@@ -467,20 +1020,217 @@ public class MongoDBHandler implements DBHandler {
 		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_CONTENT);
 		Document document = collection.find(Filters.eq(KEY_CONTENT_HASH, content.getHash())).first();
 		
-		if (document == null) {
-			collection.insertOne(updateAndValidateDocFromContent(new Document(), content));
+		if (document == null) {
+			collection.insertOne(updateAndValidateDocFromContent(new Document(), content));
+			addToHashFilter(List.of(content.getHash()));
+		}
+		else {
+			collection.findOneAndReplace(Filters.eq(KEY_CONTENT_HASH, content.getHash()), updateAndValidateDocFromContent(document, content));
+		}
+		content.markClean();
+		
+	}
+	
+	/**
+	 * Write only the fields that changed since the content was loaded, with $set for values and $inc for the view and time counters.
+	 * The tag work is skipped unless the tags, or something that decides if the content is restricted, changed.
+	 */
+	private void exportContentChanges(Content content) throws Content.ContentValidationException {
+		
+		Set<Content.Field> dirty = content.getDirtyFields();
+		if (dirty.contains(Content.Field.TAGS) || dirty.contains(Content.Field.PRIVATE)) {
+			content.update(this);
+			dirty = content.getDirtyFields();
+		}
+		if (dirty.contains(Content.Field.TAGS) || dirty.contains(Content.Field.FILE)) content.validate();
+		if (dirty.contains(Content.Field.TAGS)) addTag(content.getTags());
+		
+		if (!content.isDirty()) return;
+		
+		Document values = updateAndValidateDocFromContent(new Document(), content);
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_CONTENT);
+		if (collection.updateOne(Filters.eq(KEY_CONTENT_HASH, content.getHash()), createContentUpdate(content, values)).getMatchedCount() == 0) {
+			//It's been deleted since it was loaded, so there's nothing to update, write the whole thing again
+			collection.insertOne(values);
+			addToHashFilter(List.of(content.getHash()));
+		}
+		content.markClean();
+		
+	}
+	
+	/**
+	 * @param values the content's document, for the values of the dirty fields
+	 * @return a $set or $unset for each dirty field and a $inc for each counter that's been incremented, or null if nothing changed
+	 */
+	private static Bson createContentUpdate(Content content, Document values) {
+		
+		List<Bson> updates = new ArrayList<>();
+		for (Content.Field field : content.getDirtyFields()) {
+			String key = getContentKey(field);
+			if (values.containsKey(key)) updates.add(Updates.set(key, values.get(key)));
+			else updates.add(Updates.unset(key));
+		}
+		if (content.getViewsDelta() != 0) updates.add(Updates.inc(KEY_CONTENT_VIEWS, content.getViewsDelta()));
+		if (content.getTimeSpentDelta() != 0) updates.add(Updates.inc(KEY_CONTENT_TIME_SPENT, content.getTimeSpentDelta()));
+		return updates.isEmpty() ? null : Updates.combine(updates);
+		
+	}
+	
+	private static String getContentKey(Content.Field field) {
+		
+		return switch (field) {
+			case FILE -> KEY_CONTENT_FILE;
+			case TAGS -> KEY_CONTENT_TAGS;
+			case SIGNATURE -> KEY_CONTENT_SIGNATURE;
+			case VIDEO_LENGTH -> KEY_CONTENT_VIDEO_LENGTH;
+			case PRIVATE -> KEY_CONTENT_PRIVATE;
+			case RESTRICTED -> KEY_CONTENT_RESTRICTED;
+			case TITLE -> KEY_CONTENT_TITLE;
+			case DESCRIPTION -> KEY_CONTENT_DESCRIPTION;
+			case VIEWS -> KEY_CONTENT_VIEWS;
+			case TIME_SPENT -> KEY_CONTENT_TIME_SPENT;
+			case FAVORITE -> KEY_CONTENT_FAVORITE;
+			case POOLS -> KEY_CONTENT_POOLS;
+		};
+		
+	}
+	
+	@Override
+	public void exportContent(Collection<Content> content) {
+		
+		if (content.isEmpty()) return;
+		
+		long start = System.currentTimeMillis();
+		
+		ConcurrentLinkedQueue<WriteModel<Document>> requests = new ConcurrentLinkedQueue<>();
+		ConcurrentLinkedQueue<Content> written = new ConcurrentLinkedQueue<>();
+		Set<String> tags = ConcurrentHashMap.newKeySet();
+		//Only the untracked content could be new
+		Set<String> hashes = ConcurrentHashMap.newKeySet();
+		
+		content.stream().parallel().filter(Objects::nonNull).forEach(c -> {
+			c.update(this);
+			try {
+				c.validate();
+			}
+			catch (Content.ContentValidationException e) {
+				log.warn("Skipping content {}: {}", c.getHash(), e.getMessage());
+				return;
+			}
+			written.add(c);
+			Document values = updateAndValidateDocFromContent(new Document(), c);
+			
+			//Same as exportContentChanges, tracked content only sends what changed, so counter increments and edits
+			// written since it was loaded aren't replaced. It isn't upserted, if it's been deleted since then it stays deleted
+			if (c.isTracked()) {
+				if (c.getDirtyFields().contains(Content.Field.TAGS)) tags.addAll(Arrays.asList(c.getTags()));
+				Bson update = createContentUpdate(c, values);
+				if (update != null) requests.add(new UpdateOneModel<>(Filters.eq(KEY_CONTENT_HASH, c.getHash()), update));
+				return;
+			}
+			
+			tags.addAll(Arrays.asList(c.getTags()));
+			hashes.add(c.getHash());
+			requests.add(new ReplaceOneModel<>(Filters.eq(KEY_CONTENT_HASH, c.getHash()), values, new ReplaceOptions().upsert(true)));
+		});
+		
+		addTag(tags.toArray(new String[0]));
+		Set<String> newHashes = findNewHashes(hashes);
+		bulkWrite(mDatabase.getCollection(COLLECTION_CONTENT), new ArrayList<>(requests));
+		addToHashFilter(newHashes);
+		written.forEach(Content::markClean);
+		
+		log.info("Exporting {} content took: {}ms", requests.size(), System.currentTimeMillis() - start);
+		
+	}
+	
+	/**
+	 * Work out which of the content is about to be added rather than replaced, so each hash is only counted once in the hash filter.
+	 * Anything the filter says we definitely don't have is new, the rest are checked with a single query.
+	 */
+	private Set<String> findNewHashes(Collection<String> hashes) {
+		
+		CountingBloomFilter filter = mHashFilter;
+		if (filter == null) return Collections.emptySet();
+		
+		Set<String> newHashes = new HashSet<>();
+		List<String> maybe = new ArrayList<>();
+		for (String hash : hashes) {
+			if (filter.mightContain(hash)) maybe.add(hash);
+			else newHashes.add(hash);
 		}
-		else {
-			collection.findOneAndReplace(Filters.eq(KEY_CONTENT_HASH, content.getHash()), updateAndValidateDocFromContent(document, content));
+		
+		if (!maybe.isEmpty()) {
+			List<Document> existing = new ArrayList<>();
+			mDatabase.getCollection(COLLECTION_CONTENT).find(Filters.in(KEY_CONTENT_HASH, maybe))
+					 .projection(Projections.fields(Projections.include(KEY_CONTENT_HASH), Projections.excludeId()))
+					 .into(existing);
+			newHashes.addAll(maybe);
+			existing.forEach(document -> newHashes.remove(document.getString(KEY_CONTENT_HASH)));
 		}
 		
+		return newHashes;
+		
 	}
 	
 	@Override
 	public void deleteContent(String hash) {
 		
 		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_CONTENT);
-		collection.deleteOne(Filters.eq(KEY_CONTENT_HASH, hash));
+		DeleteResult result = collection.deleteOne(Filters.eq(KEY_CONTENT_HASH, hash));
+		
+		//Only take it out of the filter if it was really there, removing a hash that was never added can cause false negatives
+		CountingBloomFilter filter = mHashFilter;
+		if (filter != null && result.getDeletedCount() > 0) filter.remove(hash);
+		
+	}
+	
+	@Override
+	public Set<String> incrementContentCounters(Map<String, Integer> views, Map<String, Long> timeSpent) {
+		
+		Set<String> keys = new LinkedHashSet<>(views.keySet());
+		keys.addAll(timeSpent.keySet());
+		List<String> hashes = new ArrayList<>(keys);
+		
+		List<WriteModel<Document>> requests = new ArrayList<>(hashes.size());
+		for (String hash : hashes) {
+			List<Bson> updates = new ArrayList<>(2);
+			if (views.containsKey(hash)) updates.add(Updates.inc(KEY_CONTENT_VIEWS, views.get(hash)));
+			if (timeSpent.containsKey(hash)) updates.add(Updates.inc(KEY_CONTENT_TIME_SPENT, timeSpent.get(hash)));
+			requests.add(new UpdateOneModel<>(Filters.eq(KEY_CONTENT_HASH, hash), Updates.combine(updates)));
+		}
+		
+		//Not through bulkWrite, the caller needs to know exactly which increments failed, sending one again that was already applied would count it twice
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_CONTENT);
+		BulkWriteOptions options = new BulkWriteOptions().ordered(false);
+		Set<String> failed = new HashSet<>();
+		for (int i = 0; i < requests.size(); i += mBulkWriteBatchSize) {
+			
+			int end = Math.min(i + mBulkWriteBatchSize, requests.size());
+			try {
+				collection.bulkWrite(requests.subList(i, end), options);
+			}
+			catch (MongoBulkWriteException e) {
+				//Only the writes with errors weren't applied, the rest of the batch was
+				for (BulkWriteError error : e.getWriteErrors()) {
+					failed.add(hashes.get(i + error.getIndex()));
+				}
+				log.error("{} of {} counter updates failed", e.getWriteErrors().size(), end - i, e);
+			}
+			catch (MongoTimeoutException | MongoSocketOpenException e) {
+				//We never got a connection, so none of this batch or the ones after it were sent
+				failed.addAll(hashes.subList(i, hashes.size()));
+				log.error("Couldn't reach the database to write {} counter updates", hashes.size() - i, e);
+				break;
+			}
+			catch (MongoException e) {
+				//The batch may or may not have been applied, so it's dropped instead of risking counting it twice
+				log.error("Lost {} counter updates that may not have been written", end - i, e);
+			}
+			
+		}
+		
+		return failed;
 		
 	}
 	
@@ -493,15 +1243,18 @@ public class MongoDBHandler implements DBHandler {
 	}
 	
 	@Override
-    public Pool[] getPoolFromUID(int[] UIDs) {
+	public Pool[] getPoolFromUID(int[] UIDs) {
 		
-		ArrayList<Pool> out = new ArrayList<>();
-        for (int uid : UIDs) {
-			Pool pool = getPoolFromUID(uid);
-			if (pool != null) out.add(pool);
-		}
+		if (UIDs.length == 0) return new Pool[]{};
+		
+		//One query for all of them, then put them back in the order they were asked for
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_POOLS);
+		List<Document> documents = new ArrayList<>(UIDs.length);
+		collection.find(Filters.in(KEY_POOLS_UID, Arrays.stream(UIDs).distinct().boxed().collect(Collectors.toList()))).into(documents);
+		
+		Map<Integer, Pool> pools = loadPoolsFromDocuments(documents).stream().collect(Collectors.toMap(Pool::getUID, pool -> pool, (a, b) -> a));
 		
-		return out.toArray(new Pool[]{});
+		return Arrays.stream(UIDs).mapToObj(pools::get).filter(Objects::nonNull).toArray(Pool[]::new);
 		
 	}
 	
@@ -534,6 +1287,28 @@ public class MongoDBHandler implements DBHandler {
 		
 	}
 	
+	@Override
+	public void exportPool(Collection<Pool> pools) {
+		
+		if (pools.isEmpty()) return;
+		
+		long start = System.currentTimeMillis();
+		
+		ConcurrentLinkedQueue<WriteModel<Document>> requests = new ConcurrentLinkedQueue<>();
+		pools.stream().parallel().filter(Objects::nonNull).forEach(pool -> {
+			pool.update(this);
+			requests.add(new ReplaceOneModel<>(
+					Filters.eq(KEY_POOLS_UID, pool.getUID()),
+					updateAndValidateDocFromPool(new Document(), pool),
+					new ReplaceOptions().upsert(true)));
+		});
+		
+		bulkWrite(mDatabase.getCollection(COLLECTION_POOLS), new ArrayList<>(requests));
+		
+		log.info("Exporting {} pools took: {}ms", requests.size(), System.currentTimeMillis() - start);
+		
+	}
+	
 	@Override
 	public List<String> getAllPoolNames() {
 		
@@ -593,17 +1368,16 @@ public class MongoDBHandler implements DBHandler {
 	@Override
 	public Content[] getContentFromHash(String[] hashes) {
 		
-		ArrayList<Content> out = new ArrayList<>(hashes.length);
+		if (hashes.length == 0) return new Content[]{};
 		
-		for (String hash : hashes) {
-			
-			Content tmp = getContentFromHash(hash);
-			if (tmp != null) out.add(tmp);
-			
-		}
+		//One query for all of them, then put them back in the order they were asked for
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_CONTENT);
+		List<Document> documents = new ArrayList<>(hashes.length);
+		collection.find(Filters.in(KEY_CONTENT_HASH, Arrays.stream(hashes).filter(Objects::nonNull).distinct().collect(Collectors.toList()))).into(documents);
+		
+		Map<String, Content> content = loadContentFromDocuments(documents).stream().collect(Collectors.toMap(Content::getHash, c -> c, (a, b) -> a));
 		
-		out.trimToSize();
-		return out.toArray(new Content[]{});
+		return Arrays.stream(hashes).filter(Objects::nonNull).map(content::get).filter(Objects::nonNull).toArray(Content[]::new);
 		
 	}
 	
@@ -620,16 +1394,15 @@ public class MongoDBHandler implements DBHandler {
 	}
 	
 	@Override
-	public Pool[] searchForPoolsByTags(boolean restricted, String[] tags) {
+	public Pool[] searchForPoolsByTags(boolean restricted, String[] tags, String[] blacklist) {
 		
 		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_POOLS);
-		List<Document> documents = new ArrayList<>((int) collection.countDocuments());
-		if (tags.length == 0) collection.find().into(documents);
-		else collection.find(Filters.all(KEY_POOLS_ALL_TAGS, new ArrayList<>(Arrays.asList(tags)))).into(documents);
+		List<Document> documents = new ArrayList<>();
+		collection.find(poolSearchFilter(tags, blacklist, restricted)).into(documents);
 		
 		long start = System.currentTimeMillis();
 		ConcurrentLinkedQueue<Pool> pools = new ConcurrentLinkedQueue<>();
-		documents.stream().parallel().filter(Objects::nonNull).filter(filterPoolRestricted(restricted)).forEach(document -> pools.add(loadPoolFromDocument(document)));
+		documents.stream().parallel().filter(Objects::nonNull).forEach(document -> pools.add(loadPoolFromDocument(document)));
         log.info("Loading pools from documents took: {}ms", System.currentTimeMillis() - start);
 		
 		return pools.toArray(new Pool[]{});
@@ -637,22 +1410,58 @@ public class MongoDBHandler implements DBHandler {
 	}
 	
 	@Override
-	public Content[] searchForContentByTags(Options.SearchOptions searchOptions, String[] tags) {
+	public Content[] searchForContentByTags(Options.SearchOptions searchOptions, String[] tags, String[] blacklist) {
 		
 		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_CONTENT);
 		List<Document> documents = new ArrayList<>();
-		if (tags.length == 0 && searchOptions.allContentAllowed()) collection.find().into(documents);
-		else collection.find(searchFilter(tags, searchOptions)).into(documents);
+		collection.find(searchFilter(tags, blacklist, searchOptions)).into(documents);
 		
 		long start = System.currentTimeMillis();
 		ConcurrentLinkedQueue<Content> content = new ConcurrentLinkedQueue<>();
-		documents.stream().parallel().filter(filterContentRestricted(searchOptions.isRestricted())).forEach(document -> content.add(loadContentFromDocument(document)));
+		documents.stream().parallel().forEach(document -> content.add(loadContentFromDocument(document)));
         log.info("Loading content from documents took:  {}ms", System.currentTimeMillis() - start);
 		
 		return content.toArray(new Content[]{});
 		
 	}
 	
+	@Override
+	public ContentSummary[] searchForContentSummariesByTags(Options.SearchOptions searchOptions, String[] tags, String[] blacklist) {
+		
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_CONTENT);
+		List<Document> documents = new ArrayList<>();
+		collection.find(searchFilter(tags, blacklist, searchOptions)).projection(contentSummaryProjection(searchOptions)).into(documents);
+		
+		long start = System.currentTimeMillis();
+		ContentSummary[] content = documents.stream().parallel().map(MongoDBHandler::loadContentSummaryFromDocument).toArray(ContentSummary[]::new);
+		log.info("Loading content summaries from documents took:  {}ms", System.currentTimeMillis() - start);
+		
+		return content;
+		
+	}
+	
+	@Override
+	public ContentPage searchForContentPage(Options.SearchOptions searchOptions, String[] tags, String[] blacklist, int page, int pageSize) {
+		
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_CONTENT);
+		Bson filter = searchFilter(tags, blacklist, searchOptions);
+		
+		long start = System.currentTimeMillis();
+		long total = collection.countDocuments(filter);
+		
+		FindIterable<Document> find = collection.find(filter).projection(contentSummaryProjection(searchOptions)).sort(contentSort(searchOptions));
+		if (pageSize > 0) find = find.skip(page * pageSize).limit(pageSize);
+		
+		List<Document> documents = new ArrayList<>();
+		find.into(documents);
+		
+		ContentSummary[] content = documents.stream().parallel().map(MongoDBHandler::loadContentSummaryFromDocument).toArray(ContentSummary[]::new);
+		log.info("Loading page {} of {} results took: {}ms", page, total, System.currentTimeMillis() - start);
+		
+		return new ContentPage(content, total, page, pageSize);
+		
+	}
+	
 	/**
 	 * Previously this was deprecated, now it's private. That'll do
 	 * WOW! This code performs bad.
@@ -687,33 +1496,46 @@ public class MongoDBHandler implements DBHandler {
 	@Override
 	public List<ImageSignature> getAllSignatures() {
 		
-		ConcurrentLinkedQueue<ImageSignature> signatures;
-		
-		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_SIGNATURES);
-		List<Document> documents = new ArrayList<>();
-		collection.find().into(documents);
+		long start = System.currentTimeMillis();
 		
-		signatures = new ConcurrentLinkedQueue<>();
+		SignatureStore store = mSignatureStore;
+		if (store != null) {
+			List<ImageSignature> signatures = store.loadAll();
+			log.info("Loaded {} ImageSignatures from the signature file in {}ms", signatures.size(), System.currentTimeMillis() - start);
+			return signatures;
+		}
 		
-		documents.stream().parallel().forEach(document -> signatures.add(loadImageSignatureFromDocument(document)));
+		//Only the hash and the packed bytes, which go straight into the signature without any parsing
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_SIGNATURES);
+		List<ImageSignature> signatures = new ArrayList<>();
+		collection.find().projection(Projections.excludeId()).map(MongoDBHandler::loadImageSignatureFromDocument).into(signatures);
 		
-		return new ArrayList<>(signatures);
+		log.info("Loaded {} ImageSignatures in {}ms", signatures.size(), System.currentTimeMillis() - start);
+		return signatures;
 		
 	}
 	
 	@Override
 	public void exportSignature(ImageSignature signature) {
 		
+		//The revision goes up before the write, so if we go down before the signature file has it too, the file is behind and gets reconciled
+		Document signatureDocument = createImageSignatureDocument(signature);
+		signatureDocument.put(KEY_SIGNATURE_REVISION, nextSignatureRevision());
+		
 		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_SIGNATURES);
 		Document document = collection.find(Filters.eq(KEY_SIGNATURE_CONTENT_HASH, signature.getHash())).first();
 		
 		if (document != null) {
-			collection.replaceOne(Filters.eq(KEY_SIGNATURE_CONTENT_HASH, signature.getHash()), createImageSignatureDocument(signature));
+			collection.replaceOne(Filters.eq(KEY_SIGNATURE_CONTENT_HASH, signature.getHash()), signatureDocument);
 		}
 		else {
-			collection.insertOne(createImageSignatureDocument(signature));
+			collection.insertOne(signatureDocument);
 		}
 		
+		SignatureStore store = mSignatureStore;
+		if (store != null) store.put(signature);
+		mSignatureExports.incrementAndGet();
+		
 	}
 	
 	@Override
@@ -734,6 +1556,97 @@ public class MongoDBHandler implements DBHandler {
 		
 	}
 	
+	@Override
+	public void exportDuplicateClusters(Collection<List<String>> clusters) {
+		
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_DUPLICATES);
+		collection.deleteMany(new Document());
+		
+		List<Document> documents = new ArrayList<>();
+		for (List<String> cluster : clusters) {
+			documents.add(new Document(KEY_DUPLICATES_HASHES, cluster));
+			if (documents.size() >= mBulkWriteBatchSize) {
+				collection.insertMany(documents);
+				documents = new ArrayList<>();
+			}
+		}
+		if (!documents.isEmpty()) collection.insertMany(documents);
+		
+	}
+	
+	@Override
+	public List<List<String>> getDuplicateClusters() {
+		
+		List<List<String>> clusters = new ArrayList<>();
+		for (Document document : mDatabase.getCollection(COLLECTION_DUPLICATES).find()) {
+			clusters.add(document.getList(KEY_DUPLICATES_HASHES, String.class));
+		}
+		return clusters;
+		
+	}
+	
+	@Override
+	public DuplicateScanProgress getDuplicateScanProgress() {
+		
+		Document document = mDatabase.getCollection(COLLECTION_META).find(Filters.eq(KEY_META_NAME, META_DUPLICATE_SCAN)).first();
+		//Progress saved before scans had run ids can't be picked back up
+		if (document == null || document.getString(KEY_META_DUPLICATE_SCAN_RUN) == null) return null;
+		return new DuplicateScanProgress(
+				document.getString(KEY_META_DUPLICATE_SCAN_RUN),
+				document.getString(KEY_META_DUPLICATE_SCAN_SETTINGS),
+				document.getString(KEY_META_DUPLICATE_SCAN_FINGERPRINT),
+				document.getInteger(KEY_META_DUPLICATE_SCAN_CHECKPOINT, 0),
+				document.getString(KEY_META_DUPLICATE_SCAN_LAST_HASH)
+		);
+		
+	}
+	
+	@Override
+	public void exportDuplicateScanCheckpoint(DuplicateScanProgress progress, List<String> pairs) {
+		
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_DUPLICATE_SCAN);
+		//Anything already there for this checkpoint or after it is from an attempt that went down before its progress was saved
+		collection.deleteMany(Filters.and(Filters.eq(KEY_DUPLICATE_SCAN_RUN, progress.getRunId()), Filters.gte(KEY_DUPLICATE_SCAN_CHECKPOINT, progress.getCheckpoint())));
+		
+		List<Document> documents = new ArrayList<>();
+		for (int i = 0; i < pairs.size(); i += DUPLICATE_SCAN_PAIRS_PER_DOCUMENT * 2) {
+			List<String> chunk = new ArrayList<>(pairs.subList(i, Math.min(pairs.size(), i + DUPLICATE_SCAN_PAIRS_PER_DOCUMENT * 2)));
+			documents.add(new Document(KEY_DUPLICATE_SCAN_RUN, progress.getRunId()).append(KEY_DUPLICATE_SCAN_CHECKPOINT, progress.getCheckpoint()).append(KEY_DUPLICATE_SCAN_PAIRS, chunk));
+		}
+		if (!documents.isEmpty()) collection.insertMany(documents);
+		
+		//The progress goes last, a single document write, so the checkpoint counts all at once or not at all
+		mDatabase.getCollection(COLLECTION_META).updateOne(Filters.eq(KEY_META_NAME, META_DUPLICATE_SCAN), Updates.combine(
+				Updates.set(KEY_META_DUPLICATE_SCAN_RUN, progress.getRunId()),
+				Updates.set(KEY_META_DUPLICATE_SCAN_SETTINGS, progress.getSettings()),
+				Updates.set(KEY_META_DUPLICATE_SCAN_FINGERPRINT, progress.getFingerprint()),
+				Updates.set(KEY_META_DUPLICATE_SCAN_CHECKPOINT, progress.getCheckpoint()),
+				Updates.set(KEY_META_DUPLICATE_SCAN_LAST_HASH, progress.getLastHash())
+		), new UpdateOptions().upsert(true));
+		
+	}
+	
+	@Override
+	public List<String> getDuplicateScanPairs(DuplicateScanProgress progress) {
+		
+		List<String> pairs = new ArrayList<>();
+		Bson filter = Filters.and(Filters.eq(KEY_DUPLICATE_SCAN_RUN, progress.getRunId()), Filters.lte(KEY_DUPLICATE_SCAN_CHECKPOINT, progress.getCheckpoint()));
+		for (Document document : mDatabase.getCollection(COLLECTION_DUPLICATE_SCAN).find(filter)) {
+			pairs.addAll(document.getList(KEY_DUPLICATE_SCAN_PAIRS, String.class));
+		}
+		return pairs;
+		
+	}
+	
+	@Override
+	public void clearDuplicateScan() {
+		
+		//Progress first, so if we go down in between there's no progress pointing at pairs that are gone
+		mDatabase.getCollection(COLLECTION_META).deleteOne(Filters.eq(KEY_META_NAME, META_DUPLICATE_SCAN));
+		mDatabase.getCollection(COLLECTION_DUPLICATE_SCAN).deleteMany(new Document());
+		
+	}
+	
 	@Override
 	public void updateAllContentWithTags(String[] tags) {
 		
@@ -743,17 +1656,7 @@ public class MongoDBHandler implements DBHandler {
 		List<Document> documents = new ArrayList<>();
 		contentColl.find(Filters.in(KEY_CONTENT_TAGS, tags)).into(documents);
 		
-		documents.stream().parallel().forEach(document -> {
-			Content content = loadContentFromDocument(document);
-			if (content == null) return;
-			content.update(this);
-			try {
-				exportContent(content);
-			}
-			catch (Content.ContentValidationException e) {
-				e.printStackTrace();
-			}
-		});
+		exportContent(loadContentFromDocuments(documents));
 		
 	}
 	
@@ -783,12 +1686,7 @@ public class MongoDBHandler implements DBHandler {
 		List<Document> documents = new ArrayList<>();
 		collection.find(Filters.in(KEY_POOLS_ALL_TAGS, tags)).into(documents);
 		
-		documents.stream().parallel().forEach(document -> {
-			Pool pool = loadPoolFromDocument(document);
-			if (pool == null) return;
-			pool.update(this);
-			exportPool(pool);
-		});
+		exportPool(loadPoolsFromDocuments(documents));
 		
 	}
 	
@@ -799,18 +1697,7 @@ public class MongoDBHandler implements DBHandler {
 		List<Document> documents = new ArrayList<>();
 		contentColl.find().into(documents);
 		
-		documents.stream().parallel().forEach(document -> {
-			Content content = loadContentFromDocument(document);
-            if (content == null)
-                return;
-			content.update(this);
-			try {
-				exportContent(content);
-			}
-			catch (Content.ContentValidationException e) {
-				e.printStackTrace();
-			}
-		});
+		exportContent(loadContentFromDocuments(documents));
 		
 	}
 	
@@ -821,12 +1708,7 @@ public class MongoDBHandler implements DBHandler {
 		List<Document> documents = new ArrayList<>();
 		collection.find().into(documents);
 		
-		documents.stream().parallel().forEach(document -> {
-			Pool pool = loadPoolFromDocument(document);
-			if (pool == null) return;
-			pool.update(this);
-			exportPool(pool);
-		});
+		exportPool(loadPoolsFromDocuments(documents));
 		
 	}
 	
@@ -875,27 +1757,17 @@ public class MongoDBHandler implements DBHandler {
 		List<Document> documents = new ArrayList<>();
 		contentColl.find(Filters.in(KEY_CONTENT_TAGS, tags)).into(documents);
 		
-		documents.stream().parallel().forEach(document -> {
-			Content content = loadContentFromDocument(document);
-			if (content == null) return;
-			content.removeTag(tags, this);
-			content.update(this);
-			try {
-				exportContent(content);
-			}
-			catch (Content.ContentValidationException e) {
-				e.printStackTrace();
-			}
-		});
+		List<Content> content = loadContentFromDocuments(documents);
+		content.stream().parallel().forEach(c -> c.removeTag(tags, this));
+		exportContent(content);
 		
 	}
 	
 	@Override
 	public boolean isTagRestricted(String[] tags) {
 		
-		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_TAGS);
-		//Return true if the value is not == to 0, so if any document with a name in the tags array is set to restricted
-		return collection.countDocuments(Filters.and(Filters.eq(KEY_TAGS_RESTRICTED, true), Filters.in(KEY_TAGS_NAME, tags))) != 0;
+		//Answered from the tag graph, which is kept up to date by every tag write, so there's no need to query the tags collection
+		return mTagGraph.isRestricted(tags);
 		
 	}
 	
@@ -904,6 +1776,7 @@ public class MongoDBHandler implements DBHandler {
 		
 		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_TAGS);
 		DeleteResult result = collection.deleteOne(Filters.eq(KEY_TAGS_NAME, tag));
+		mTagGraph.removeTag(tag);
 		return result.wasAcknowledged();
 		
 	}
@@ -939,51 +1812,125 @@ public class MongoDBHandler implements DBHandler {
 	}
 	
 	@Override
-	public void exportTag(Tag tag, boolean manualCount) {
+	public boolean exportTag(Tag tag, boolean manualCount) {
+		
+		if (!updateTagGraph(tag)) return false;
 		
 		if (manualCount) tag.setUses((int) countContentWithTag(tag.getName()));
 		
+		//The uses count is only ever changed with $inc, unless it was just recounted, so a Tag that was loaded a while ago can't undo the changes made since
+		Bson uses = manualCount ? Updates.set(KEY_TAGS_USES, tag.getNumUses()) : Updates.setOnInsert(KEY_TAGS_USES, tag.getNumUses());
+		Bson update = Updates.combine(
+				Updates.set(KEY_TAGS_NAME, tag.getName()),
+				Updates.set(KEY_TAGS_TYPE, tag.getTagType().name()),
+				Updates.set(KEY_TAGS_PARENTS, new ArrayList<>(Arrays.asList(tag.getParentTags()))),
+				Updates.set(KEY_TAGS_RESTRICTED, tag.isRestricted()),
+				uses
+		);
+		
 		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_TAGS);
-		Document document = collection.find(Filters.eq(KEY_TAGS_NAME, tag.getName())).first();
+		FindOneAndUpdateOptions options = new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER);
+		Document document = collection.findOneAndUpdate(Filters.eq(KEY_TAGS_NAME, tag.getName()), update, options);
 		
-		if (document == null) {
-			collection.insertOne(updateAndValidateDocFromTag(new Document(), tag));
+		//Hand the stored count back so the caller's copy isn't stale either
+		if (document != null) tag.setUses(document.getInteger(KEY_TAGS_USES, 0));
+		return true;
+		
+	}
+	
+	@Override
+	public boolean exportTagParents(String tag, String[] parents) {
+		
+		try {
+			mTagGraph.setTagParents(tag, parents);
 		}
-		else {
-			updateAndValidateDocFromTag(document, tag);
-			collection.findOneAndReplace(Filters.eq(KEY_TAGS_NAME, tag.getName()), document);
+		catch (TagGraph.TagCycleException e) {
+			log.error("Not saving parents for tag " + tag, e);
+			return false;
 		}
 		
+		Bson update = Updates.combine(
+				Updates.set(KEY_TAGS_PARENTS, new ArrayList<>(Arrays.asList(parents))),
+				Updates.setOnInsert(KEY_TAGS_TYPE, Tag.TagType.TAG.name()),
+				Updates.setOnInsert(KEY_TAGS_RESTRICTED, false),
+				Updates.setOnInsert(KEY_TAGS_USES, 0)
+		);
+		mDatabase.getCollection(COLLECTION_TAGS).updateOne(Filters.eq(KEY_TAGS_NAME, tag), update, new UpdateOptions().upsert(true));
+		return true;
+		
 	}
 	
-	@Override
-	public void decrementTagUses(String[] tags) {
+	/**
+	 * Put the tag into the tag graph before it's written, so a tag that would end up being its own parent is never saved
+	 *
+	 * @return false if the tag's parents would create a cycle and it shouldn't be written
+	 */
+	private boolean updateTagGraph(Tag tag) {
 		
-		for (String tagName : tags) {
-			
-			Tag tag = getTagFromName(tagName);
-			tag.decrementUses();
-			exportTag(tag, false);
-			
+		try {
+			mTagGraph.putTag(tag);
+			return true;
+		}
+		catch (TagGraph.TagCycleException e) {
+			log.error("Not saving tag " + tag.getName(), e);
+			return false;
 		}
 		
 	}
 	
+	@Override
+	public void decrementTagUses(String[] tags) {
+		
+		changeTagUses(tags, -1, false);
+	}
+	
 	@Override
 	public void incrementTagUses(String[] tags) {
 		
-		for (String tagName : tags) {
-			
-			Tag tag = getTagFromName(tagName);
-            if (tag == null) {
-                addTag(tagName);
-                tag = getTagFromName(tagName);
-            }
-			tag.incrementUses();
-			exportTag(tag, false);
-			
+		changeTagUses(tags, 1, true);
+	}
+	
+	/**
+	 * The same defaults a new Tag gets, for upserts that might create the tag
+	 */
+	private static Bson tagDefaultsOnInsert() {
+		
+		return Updates.combine(
+				Updates.setOnInsert(KEY_TAGS_TYPE, Tag.TagType.TAG.name()),
+				Updates.setOnInsert(KEY_TAGS_PARENTS, new ArrayList<String>()),
+				Updates.setOnInsert(KEY_TAGS_RESTRICTED, false)
+		);
+		
+	}
+	
+	/**
+	 * Change the uses count for each of the tags with $inc, so concurrent updates can't overwrite each other.
+	 * It's all sent as one bulk write, a tag that shows up more than once gets changed once per time it shows up.
+	 *
+	 * @param tags   the names of the tags to update
+	 * @param amount how much to change the count by for each time a tag shows up
+	 * @param create true to create any tag that doesn't exist yet, with the same defaults addTag would use
+	 */
+	private void changeTagUses(String[] tags, int amount, boolean create) {
+		
+		if (tags.length == 0) return;
+		
+		Map<String, Integer> counts = new LinkedHashMap<>();
+		for (String tag : tags) {
+			if (tag == null || tag.isEmpty()) continue;
+			counts.merge(tag, amount, Integer::sum);
 		}
 		
+		UpdateOptions options = new UpdateOptions().upsert(create);
+		List<WriteModel<Document>> requests = new ArrayList<>(counts.size());
+		counts.forEach((tag, count) -> {
+			Bson update = Updates.inc(KEY_TAGS_USES, count);
+			if (create) update = Updates.combine(update, tagDefaultsOnInsert());
+			requests.add(new UpdateOneModel<>(Filters.eq(KEY_TAGS_NAME, tag), update, options));
+		});
+		
+		bulkWrite(mDatabase.getCollection(COLLECTION_TAGS), requests);
+		
 	}
 	
 	@Override
@@ -992,17 +1939,33 @@ public class MongoDBHandler implements DBHandler {
 		addTag(new String[]{tag});
 	}
 	
+	/**
+	 * Look up every tag with one query and create the missing ones with one bulk upsert, tags that already exist are left alone
+	 */
 	@Override
 	public void addTag(String[] tags) {
 		
-		for (String tag : tags) {
-			
-			if (getTagFromName(tag.toLowerCase(Locale.ROOT)) != null) continue;
-			
-			exportTag(new Tag(tag), false);
-			
+		Map<String, String> missing = new HashMap<>(tags.length);
+		for (String tag : tags) missing.putIfAbsent(tag.toLowerCase(Locale.ROOT), tag);
+		if (missing.isEmpty()) return;
+		
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_TAGS);
+		Bson filter = Filters.in(KEY_TAGS_NAME, new ArrayList<>(missing.keySet()));
+		for (Document document : collection.find(filter).projection(Projections.include(KEY_TAGS_NAME))) {
+			missing.remove(document.getString(KEY_TAGS_NAME));
+		}
+		
+		//setOnInsert all the way, so if someone else creates one of them first theirs is kept
+		UpdateOptions options = new UpdateOptions().upsert(true);
+		Bson update = Updates.combine(tagDefaultsOnInsert(), Updates.setOnInsert(KEY_TAGS_USES, 0));
+		List<WriteModel<Document>> requests = new ArrayList<>(missing.size());
+		for (String tag : missing.values()) {
+			if (!updateTagGraph(new Tag(tag))) continue;
+			requests.add(new UpdateOneModel<>(Filters.eq(KEY_TAGS_NAME, tag), update, options));
 		}
 		
+		bulkWrite(collection, requests);
+		
 	}
 	
 	@Override
@@ -1021,15 +1984,78 @@ public class MongoDBHandler implements DBHandler {
 		
 	}
 	
+	/**
+	 * Count how many content documents use each tag with one aggregation, so it's a single pass over the content collection no matter how many tags there are
+	 *
+	 * @param tags the tags to count, or null to count every tag that's in use
+	 * @return the number of uses for each tag that has any, tags with no uses are left out
+	 */
+	private Map<String, Integer> countTagUses(String[] tags) {
+		
+		List<Bson> pipeline = new ArrayList<>();
+		if (tags != null) pipeline.add(Aggregates.match(Filters.in(KEY_CONTENT_TAGS, new ArrayList<>(Arrays.asList(tags)))));
+		//$setUnion with nothing drops the repeats, so content with the same tag twice only counts once
+		Bson uniqueTags = new Document("$setUnion", Arrays.asList('$' + KEY_CONTENT_TAGS, new ArrayList<String>()));
+		pipeline.add(Aggregates.project(Projections.fields(Projections.computed(KEY_CONTENT_TAGS, uniqueTags), Projections.excludeId())));
+		pipeline.add(Aggregates.unwind('$' + KEY_CONTENT_TAGS));
+		if (tags != null) pipeline.add(Aggregates.match(Filters.in(KEY_CONTENT_TAGS, new ArrayList<>(Arrays.asList(tags)))));
+		pipeline.add(Aggregates.group('$' + KEY_CONTENT_TAGS, Accumulators.sum(KEY_TAGS_USES, 1)));
+		
+		List<Document> documents = new ArrayList<>();
+		mDatabase.getCollection(COLLECTION_CONTENT).aggregate(pipeline).into(documents);
+		
+		Map<String, Integer> counts = new HashMap<>(documents.size());
+		documents.forEach(document -> counts.put(document.getString("_id"), document.getInteger(KEY_TAGS_USES, 0)));
+		return counts;
+		
+	}
+	
 	@Override
 	public void updateAllTags() {
-		getAllTags().stream().parallel().forEach(tag -> exportTag(tag, true));
+		
+		long start = System.currentTimeMillis();
+		Map<String, Integer> counts = countTagUses(null);
+		
+		//Compare against what's stored here rather than sending every counted name back to the database in a $nin
+		MongoCollection<Document> collection = mDatabase.getCollection(COLLECTION_TAGS);
+		Map<String, Integer> stored = new HashMap<>();
+		for (Document document : collection.find().projection(Projections.fields(Projections.include(KEY_TAGS_NAME, KEY_TAGS_USES), Projections.excludeId()))) {
+			stored.put(document.getString(KEY_TAGS_NAME), document.getInteger(KEY_TAGS_USES, 0));
+		}
+		
+		List<WriteModel<Document>> requests = new ArrayList<>();
+		UpdateOptions options = new UpdateOptions().upsert(true);
+		counts.forEach((tag, count) -> {
+			if (!count.equals(stored.get(tag)))
+				requests.add(new UpdateOneModel<>(Filters.eq(KEY_TAGS_NAME, tag), Updates.combine(Updates.set(KEY_TAGS_USES, count), tagDefaultsOnInsert()), options));
+		});
+		//Anything that didn't show up in the aggregation isn't used at all
+		stored.forEach((tag, uses) -> {
+			if (tag != null && uses != 0 && !counts.containsKey(tag))
+				requests.add(new UpdateOneModel<>(Filters.eq(KEY_TAGS_NAME, tag), Updates.set(KEY_TAGS_USES, 0)));
+		});
+		
+		bulkWrite(collection, requests);
+		log.info("Recounted {} tags in {}ms", counts.size(), System.currentTimeMillis() - start);
+		
 	}
 	
 	@Override
 	public void updateAllTags(Tag[] tags) {
 		
-		Arrays.stream(tags).parallel().forEach(tag -> exportTag(tag, true));
+		if (tags.length == 0) return;
+		
+		Map<String, Integer> counts = countTagUses(Arrays.stream(tags).map(Tag::getName).toArray(String[]::new));
+		
+		ReplaceOptions options = new ReplaceOptions().upsert(true);
+		List<WriteModel<Document>> requests = new ArrayList<>(tags.length);
+		for (Tag tag : tags) {
+			if (!updateTagGraph(tag)) continue;
+			tag.setUses(counts.getOrDefault(tag.getName(), 0));
+			requests.add(new ReplaceOneModel<>(Filters.eq(KEY_TAGS_NAME, tag.getName()), updateAndValidateDocFromTag(new Document(), tag), options));
+		}
+		
+		bulkWrite(mDatabase.getCollection(COLLECTION_TAGS), requests);
 		
 	}
 	
@@ -1047,26 +2073,77 @@ public class MongoDBHandler implements DBHandler {
 		
 	}
 	
-	private static Bson searchFilter(String[] tags, Options.SearchOptions searchOptions) {
+	/**
+	 * Build the filter for a content search, restricted content and blacklisted tags are filtered out by the database so they never get sent or decoded
+	 *
+	 * @param tags          the tags that all the results must have
+	 * @param blacklist     the tags that none of the results can have
+	 * @param searchOptions for the allowed content types and if restricted content is allowed
+	 * @return the filter, or an empty document if everything matches
+	 */
+	private static Bson searchFilter(String[] tags, String[] blacklist, Options.SearchOptions searchOptions) {
+		
+		List<Bson> filters = new ArrayList<>();
+		
+		if (tags.length > 0) filters.add(Filters.all(KEY_CONTENT_TAGS, new ArrayList<>(Arrays.asList(tags))));
+		if (!searchOptions.allContentAllowed()) filters.add(Filters.or(searchOptions.getContentTypeFilters()));
+		if (!searchOptions.isRestricted()) filters.add(Filters.eq(KEY_CONTENT_RESTRICTED, false));
+		if (blacklist.length > 0) filters.add(Filters.nin(KEY_CONTENT_TAGS, new ArrayList<>(Arrays.asList(blacklist))));
+		
+		return filters.isEmpty() ? new Document() : Filters.and(filters);
+		
+	}
+	
+	private static Bson poolSearchFilter(String[] tags, String[] blacklist, boolean restricted) {
 		
-		if (searchOptions.allContentAllowed())
-			return Filters.all(KEY_CONTENT_TAGS, new ArrayList<>(Arrays.asList(tags)));
-		else if (tags.length > 0) return Filters.and(
-				Filters.all(KEY_CONTENT_TAGS, new ArrayList<>(Arrays.asList(tags))),
-				Filters.or(searchOptions.getContentTypeFilters())
-		);
-		else return Filters.or(searchOptions.getContentTypeFilters());
+		List<Bson> filters = new ArrayList<>();
+		
+		if (tags.length > 0) filters.add(Filters.all(KEY_POOLS_ALL_TAGS, new ArrayList<>(Arrays.asList(tags))));
+		if (!restricted) filters.add(Filters.eq(KEY_POOLS_RESTRICTED, false));
+		if (blacklist.length > 0) filters.add(Filters.nin(KEY_POOLS_ALL_TAGS, new ArrayList<>(Arrays.asList(blacklist))));
+		
+		return filters.isEmpty() ? new Document() : Filters.and(filters);
+		
+	}
+	
+	/**
+	 * Sort the same way ContentComparator does, favorites first if they want it, then the sort type, then the hash to break ties.
+	 * Reverse order flips everything but the favorites.
+	 */
+	private static Bson contentSort(Options.SearchOptions searchOptions) {
+		
+		boolean reverse = searchOptions.isReverseOrder();
+		List<Bson> sorts = new ArrayList<>();
+		
+		if (searchOptions.isFavoritesFirst()) sorts.add(Sorts.descending(KEY_CONTENT_FAVORITE));
+		
+		switch (searchOptions.getSearchType()) {
+			case TITLE -> sorts.add(reverse ? Sorts.descending(KEY_CONTENT_TITLE) : Sorts.ascending(KEY_CONTENT_TITLE));
+			case VIEWS -> sorts.add(reverse ? Sorts.ascending(KEY_CONTENT_VIEWS) : Sorts.descending(KEY_CONTENT_VIEWS));
+			case VIEW_TIME -> sorts.add(reverse ? Sorts.ascending(KEY_CONTENT_TIME_SPENT) : Sorts.descending(KEY_CONTENT_TIME_SPENT));
+			//VIDEO, IMAGE, GIF, CONTENT happens to be reverse alphabetical order
+			case CONTENT_TYPE -> sorts.add(reverse ? Sorts.ascending(KEY_CONTENT_TYPE) : Sorts.descending(KEY_CONTENT_TYPE));
+			case HASH -> {
+				//The hash is always the last sort
+			}
+		}
+		
+		sorts.add(reverse ? Sorts.descending(KEY_CONTENT_HASH) : Sorts.ascending(KEY_CONTENT_HASH));
+		
+		return Sorts.orderBy(sorts);
 		
 	}
 	
-	private static Predicate<Document> filterPoolRestricted(boolean restricted) {
+	@Override
+	public TagGraph getTagGraph() {
 		
-		return p -> !p.getBoolean(KEY_POOLS_RESTRICTED) || restricted;
+		return mTagGraph;
 	}
 	
-	private static Predicate<Document> filterContentRestricted(boolean restricted) {
+	@Override
+	public SignatureStore getSignatureStore() {
 		
-		return p -> !p.getBoolean(KEY_CONTENT_RESTRICTED) || restricted;
+		return mSignatureStore;
 	}
 	
 }
@@ -24,13 +24,15 @@ import ca.bigcattech.MediaDB.core.Ingest;
 import ca.bigcattech.MediaDB.core.Options;
 import ca.bigcattech.MediaDB.db.DBHandler;
 import ca.bigcattech.MediaDB.db.pool.Pool;
-import ca.bigcattech.MediaDB.db.tag.Tag;
+import ca.bigcattech.MediaDB.db.tag.TagGraph;
 import ca.bigcattech.MediaDB.image.ImageSignature;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class Content {
@@ -57,6 +59,12 @@ public class Content {
 	
 	private int[] mPools;
 	
+	//Change tracking, so content that came from the database only has to write back what changed
+	private final Set<Field> mDirtyFields = EnumSet.noneOf(Field.class);
+	private int mViewsDelta = 0;
+	private long mTimeSpentDelta = 0;
+	private boolean mTracked = false;
+	
 	Content(ContentType type) {
 		
 		mType = type;
@@ -70,6 +78,7 @@ public class Content {
 	public void setPools(int[] pools) {
 		
 		mPools = pools;
+		markDirty(Field.POOLS);
 	}
 	
 	public int[] getPools() {
@@ -80,8 +89,10 @@ public class Content {
 	public void addPool(int pool) {
 		
 		ArrayList<Integer> pools = Arrays.stream(mPools).boxed().collect(Collectors.toCollection(ArrayList::new));
-		if (!pools.contains(pool)) pools.add(pool);
+		if (pools.contains(pool)) return;
+		pools.add(pool);
 		mPools = pools.stream().mapToInt(Integer::intValue).toArray();
+		markDirty(Field.POOLS);
 		
 	}
 	
@@ -100,6 +111,7 @@ public class Content {
 	public void setFile(File file) {
 		
 		mFile = file;
+		markDirty(Field.FILE);
 	}
 	
 	public String getHash() {
@@ -125,6 +137,7 @@ public class Content {
 	public void setSignature(ImageSignature signature) {
 		
 		mSignature = signature;
+		markDirty(Field.SIGNATURE);
 	}
 	
 	public boolean isRestricted() {
@@ -134,6 +147,7 @@ public class Content {
 	
 	void setRestricted(boolean restricted) {
 		
+		if (mIsRestricted != restricted) markDirty(Field.RESTRICTED);
 		mIsRestricted = restricted;
 	}
 	
@@ -145,7 +159,8 @@ public class Content {
 	public void setPrivate(boolean isPrivate) {
 		
 		mIsPrivate = isPrivate;
-		if (mIsPrivate) mIsRestricted = true;
+		markDirty(Field.PRIVATE);
+		if (mIsPrivate) setRestricted(true);
 	}
 	
 	public boolean isFavorite() {
@@ -156,6 +171,7 @@ public class Content {
 	public void setFavorite(boolean favorite) {
 		
 		mFavorite = favorite;
+		markDirty(Field.FAVORITE);
 	}
 	
 	public String getTitle() {
@@ -166,6 +182,7 @@ public class Content {
 	public void setTitle(String title) {
 		
 		mTitle = title;
+		markDirty(Field.TITLE);
 	}
 	
 	public String[] getTags() {
@@ -175,17 +192,23 @@ public class Content {
 	
 	public void setTags(String[] tags) {
 		mTags = tags;
+		markDirty(Field.TAGS);
 	}
 	
 	public void addTags(String[] tags, DBHandler dbHandler) {
 		
 		List<String> list = new ArrayList<>(Arrays.asList(mTags));
+		List<String> added = new ArrayList<>();
 		for (String tag : tags) {
 			if (tag.equals("") || list.contains(tag)) continue;
 			list.add(tag);
-			dbHandler.incrementTagUses(new String[]{tag});
+			added.add(tag);
 		}
+		if (added.isEmpty()) return;
+		
 		mTags = list.toArray(new String[0]);
+		markDirty(Field.TAGS);
+		dbHandler.incrementTagUses(added.toArray(new String[0]));
 		
 	}
 	
@@ -197,12 +220,17 @@ public class Content {
 	public void removeTag(String[] tags, DBHandler dbHandler) {
 		
 		List<String> list = new ArrayList<>(Arrays.asList(mTags));
+		List<String> removed = new ArrayList<>();
 		for (String tag : tags) {
-			if (tag.equals("")) continue;
-			list.remove(tag);
-			dbHandler.decrementTagUses(new String[]{tag});
+			//Only count tags that were actually on this content, otherwise the uses count drifts
+			if (tag.equals("") || !list.remove(tag)) continue;
+			removed.add(tag);
 		}
+		if (removed.isEmpty()) return;
+		
 		mTags = list.toArray(new String[0]);
+		markDirty(Field.TAGS);
+		dbHandler.decrementTagUses(removed.toArray(new String[0]));
 		
 	}
 	
@@ -214,6 +242,7 @@ public class Content {
 	public void setDescription(String description) {
 		
 		mDescription = description;
+		markDirty(Field.DESCRIPTION);
 	}
 	
 	public int getViews() {
@@ -224,11 +253,21 @@ public class Content {
 	void setViews(int views) {
 		
 		mViews = views;
+		mViewsDelta = 0;
+		markDirty(Field.VIEWS);
 	}
 	
 	public int incrementViews() {
 		
-		return ++mViews;
+		return incrementViews(1);
+	}
+	
+	public synchronized int incrementViews(int views) {
+		
+		//Sent as an increment unless the whole value is already being written
+		if (!mDirtyFields.contains(Field.VIEWS)) mViewsDelta += views;
+		mViews += views;
+		return mViews;
 	}
 	
 	public long getVideoLength() {
@@ -239,6 +278,7 @@ public class Content {
 	public void setVideoLength(long videoLength) {
 		
 		mVideoLength = videoLength;
+		markDirty(Field.VIDEO_LENGTH);
 	}
 	
 	public long getTimeSpent() {
@@ -249,13 +289,111 @@ public class Content {
 	public void setTimeSpent(long timeSpent) {
 		
 		mTimeSpent = timeSpent;
+		mTimeSpentDelta = 0;
+		markDirty(Field.TIME_SPENT);
 	}
 	
-	public void incrementTimeSpent(long timeSpent) {
+	public synchronized void incrementTimeSpent(long timeSpent) {
 		
+		if (!mDirtyFields.contains(Field.TIME_SPENT)) mTimeSpentDelta += timeSpent;
 		mTimeSpent += timeSpent;
 	}
 	
+	private synchronized void markDirty(Field field) {
+		
+		mDirtyFields.add(field);
+	}
+	
+	/**
+	 * Forget all the changes made so far, call this once the content matches what's in the database, after loading it or writing it.
+	 * From then on the content is tracked, and the DBHandler can write just the fields that changed.
+	 */
+	public synchronized void markClean() {
+		
+		mDirtyFields.clear();
+		mViewsDelta = 0;
+		mTimeSpentDelta = 0;
+		mTracked = true;
+		
+	}
+	
+	/**
+	 * @return true if the content matches a database record apart from the dirty fields, false if it's never been loaded or written and has to be written in full
+	 */
+	public boolean isTracked() {
+		
+		return mTracked;
+	}
+	
+	/**
+	 * @return the fields set since the last markClean, views and time spent only show up here if they were set outright rather than incremented
+	 */
+	public synchronized Set<Field> getDirtyFields() {
+		
+		return EnumSet.copyOf(mDirtyFields);
+	}
+	
+	public synchronized boolean isDirty() {
+		
+		return !mDirtyFields.isEmpty() || mViewsDelta != 0 || mTimeSpentDelta != 0;
+	}
+	
+	/**
+	 * Forget the view and time spent increments without writing them, for when they've been handed off to be written some other way
+	 */
+	public synchronized void clearCounterDeltas() {
+		
+		mViewsDelta = 0;
+		mTimeSpentDelta = 0;
+		
+	}
+	
+	/**
+	 * Copy just the given fields over from another copy of the same content, and add its view and time spent increments on top of this one's.
+	 * This is what a tracked write does to the stored copy, the same as a $set of the dirty fields and a $inc of the counters
+	 *
+	 * @param changed the copy that was edited
+	 * @param fields  the fields to copy over, usually changed's dirty fields
+	 */
+	public synchronized void applyChanges(Content changed, Set<Field> fields) {
+		
+		for (Field field : fields) {
+			switch (field) {
+				case FILE -> setFile(changed.getFile());
+				case TAGS -> setTags(changed.getTags().clone());
+				case SIGNATURE -> setSignature(changed.getSignature());
+				case VIDEO_LENGTH -> setVideoLength(changed.getVideoLength());
+				case PRIVATE -> setPrivate(changed.isPrivate());
+				case RESTRICTED -> setRestricted(changed.isRestricted());
+				case TITLE -> setTitle(changed.getTitle());
+				case DESCRIPTION -> setDescription(changed.getDescription());
+				case VIEWS -> setViews(changed.getViews());
+				case TIME_SPENT -> setTimeSpent(changed.getTimeSpent());
+				case FAVORITE -> setFavorite(changed.isFavorite());
+				case POOLS -> setPools(changed.getPools() == null ? null : changed.getPools().clone());
+			}
+		}
+		incrementViews(changed.getViewsDelta());
+		incrementTimeSpent(changed.getTimeSpentDelta());
+		
+	}
+	
+	/**
+	 * @return how many views have been added since the last markClean, to be applied with an increment
+	 */
+	public int getViewsDelta() {
+		
+		return mViewsDelta;
+	}
+	
+	/**
+	 * @return how much time spent has been added since the last markClean, to be applied with an increment
+	 */
+	public long getTimeSpentDelta() {
+		
+		return mTimeSpentDelta;
+	}
+	
 	public void validate() throws ContentValidationException {
 		
 		removeInvalidTags();
@@ -272,11 +410,16 @@ public class Content {
 	
 	public String getThumbnailFile() {
 		
-		if (mType == ContentType.GIF) return mFile.getPath();
-		if (mType == ContentType.VIDEO)
-			return FileSystemHandler.CONTENT_THUMBNAIL_DIR.toString() + '/' + mHash + Ingest.SUFFIX_THUMBNAIL + ".gif";
-		if (mType == ContentType.IMAGE)
-			return FileSystemHandler.CONTENT_THUMBNAIL_DIR.toString() + '/' + mHash + Ingest.SUFFIX_THUMBNAIL + '.' + FileSystemHandler.getExtension(mFile);
+		return getThumbnailFile(mType, mFile, mHash);
+	}
+	
+	static String getThumbnailFile(ContentType type, File file, String hash) {
+		
+		if (type == ContentType.GIF) return file.getPath();
+		if (type == ContentType.VIDEO)
+			return FileSystemHandler.CONTENT_THUMBNAIL_DIR.toString() + '/' + hash + Ingest.SUFFIX_THUMBNAIL + ".gif";
+		if (type == ContentType.IMAGE)
+			return FileSystemHandler.CONTENT_THUMBNAIL_DIR.toString() + '/' + hash + Ingest.SUFFIX_THUMBNAIL + '.' + FileSystemHandler.getExtension(file);
 		
 		return "";
 		
@@ -284,61 +427,46 @@ public class Content {
 	
 	public void update(DBHandler dbHandler) {
 		
-		//Update tags
-		addParentTag(dbHandler, mTags);
+		//Update tags, the parents all come from the tag graph so this doesn't need to look anything up in the database
 		removeInvalidTags();
+		TagGraph graph = dbHandler.getTagGraph();
+		addTags(graph.expand(mTags), dbHandler);
 		
 		//If manually set to private, it's restricted, otherwise, if any of the tags are restricted, it's restricted
-		mIsRestricted = mIsPrivate || dbHandler.isTagRestricted(mTags);
+		setRestricted(mIsPrivate || graph.isRestricted(mTags));
 		
 	}
 	
 	public synchronized void removeInvalidTags() {
 		
 		List<String> list = new ArrayList<>(Arrays.asList(mTags));
-		list.removeIf(e -> e.equals("") || e.equals(" "));
+		if (!list.removeIf(e -> e.equals("") || e.equals(" "))) return;
 		mTags = list.toArray(new String[0]);
-		
-	}
-	
-	private void addParentTag(DBHandler dbHandler, String[] tags) {
-		
-		for (String name : tags) {
-			
-			Tag tag = dbHandler.getTagFromName(name);
-			if (tag == null) continue;
-			
-			addTags(tag.getParentTags(), dbHandler);
-			addParentTag(dbHandler, tag.getParentTags());
-			
-		}
+		markDirty(Field.TAGS);
 		
 	}
 	
 	public int compareTo(Options.SearchOptions searchOptions, Content o) {
 		
-		int out = 0;
-		
-		if (searchOptions.getSearchType() == Options.SearchOptions.SortType.TITLE) {
-			out = this.getTitle().compareTo(o.getTitle());
-		}
-		else if (searchOptions.getSearchType() == Options.SearchOptions.SortType.VIEWS) {
-			out = Integer.compare(o.getViews(), this.getViews());
-		}
-		else if (searchOptions.getSearchType() == Options.SearchOptions.SortType.CONTENT_TYPE) {
-			if (this.mType == ContentType.VIDEO && o.mType != ContentType.VIDEO) out = -1;
-			else if (this.mType != ContentType.VIDEO && o.mType == ContentType.VIDEO) out = 1;
-			else if (this.mType == ContentType.IMAGE && o.mType != ContentType.IMAGE) out = -1;
-			else if (this.mType != ContentType.IMAGE && o.mType == ContentType.IMAGE) out = 1;
-			else if (this.mType != ContentType.GIF && o.mType == ContentType.GIF) out = 1;
-			else if (this.mType == ContentType.GIF && o.mType != ContentType.GIF) out = -1;
-		}
-		else if (searchOptions.getSearchType() == Options.SearchOptions.SortType.VIEW_TIME) {
-			out = Long.compare(o.mTimeSpent, this.mTimeSpent);
-		}
-		
-		return out == 0 ? this.getHash().compareTo(o.getHash()) : out;
-		
+		return new ContentSummary(this).compareTo(searchOptions, new ContentSummary(o));
+	}
+	
+	/**
+	 * The parts of a Content object that get written to the database, for tracking which ones have changed
+	 */
+	public enum Field {
+		FILE,
+		TAGS,
+		SIGNATURE,
+		VIDEO_LENGTH,
+		PRIVATE,
+		RESTRICTED,
+		TITLE,
+		DESCRIPTION,
+		VIEWS,
+		TIME_SPENT,
+		FAVORITE,
+		POOLS
 	}
 	
 	public enum FormattingError {
@@ -23,7 +23,7 @@ import ca.bigcattech.MediaDB.core.Options;
 
 import java.util.Comparator;
 
-public class ContentComparator implements Comparator<Content> {
+public class ContentComparator implements Comparator<ContentSummary> {
 	
 	private final Options.SearchOptions mSearchOptions;
 	
@@ -33,7 +33,7 @@ public class ContentComparator implements Comparator<Content> {
 	}
 	
 	@Override
-	public int compare(Content o1, Content o2) {
+	public int compare(ContentSummary o1, ContentSummary o2) {
 		
 		if (mSearchOptions.isFavoritesFirst()) {
 			if (!o1.isFavorite() && o2.isFavorite()) return 1;
@@ -0,0 +1,71 @@
+/*
+ *     ContentPage
+ *     Last Modified: 2026-10-18, 3:55 p.m.
+ *     Copyright (C) 2026-10-18, 3:55 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.MediaDB.db.content;
+
+/**
+ * One page of sorted search results, along with the total number of results across all pages
+ */
+public class ContentPage {
+	
+	private final ContentSummary[] mResults;
+	private final long mTotalResults;
+	private final int mPage;
+	private final int mPageSize;
+	
+	/**
+	 * @param pageSize the max number of results per page, 0 for everything on one page
+	 */
+	public ContentPage(ContentSummary[] results, long totalResults, int page, int pageSize) {
+		
+		mResults = results;
+		mTotalResults = totalResults;
+		mPage = page;
+		mPageSize = pageSize;
+		
+	}
+	
+	public ContentSummary[] getResults() {
+		
+		return mResults;
+	}
+	
+	public long getTotalResults() {
+		
+		return mTotalResults;
+	}
+	
+	public int getPage() {
+		
+		return mPage;
+	}
+	
+	public int getPageSize() {
+		
+		return mPageSize;
+	}
+	
+	public int getNumPages() {
+		
+		if (mPageSize == 0) return mTotalResults > 0 ? 1 : 0;
+		return (int) ((mTotalResults + mPageSize - 1) / mPageSize);
+		
+	}
+	
+}
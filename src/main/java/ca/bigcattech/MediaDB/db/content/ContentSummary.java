@@ -0,0 +1,148 @@
+/*
+ *     ContentSummary
+ *     Last Modified: 2026-10-18, 3:10 p.m.
+ *     Copyright (C) 2026-10-18, 3:10 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.MediaDB.db.content;
+
+import ca.bigcattech.MediaDB.core.Options;
+
+import java.io.File;
+
+/**
+ * The parts of a Content object needed to show it in the search results, sort it, and filter it.
+ * Search results are made of these instead of full Content objects, use the hash to load the full Content when it's opened.
+ */
+public class ContentSummary {
+	
+	private final String mHash;
+	private final ContentType mType;
+	private final File mFile;
+	private final String[] mTags;
+	private final boolean mIsRestricted;
+	private final boolean mIsFavorite;
+	private final int mViews;
+	private final long mVideoLength;
+	private final long mTimeSpent;
+	private final String mTitle;
+	
+	/**
+	 * @param title only needed when sorting by title, can be null otherwise
+	 */
+	public ContentSummary(String hash, ContentType type, File file, String[] tags, boolean restricted, boolean favorite, int views, long videoLength, long timeSpent, String title) {
+		
+		mHash = hash;
+		mType = type;
+		mFile = file;
+		mTags = tags == null ? new String[]{} : tags;
+		mIsRestricted = restricted;
+		mIsFavorite = favorite;
+		mViews = views;
+		mVideoLength = videoLength;
+		mTimeSpent = timeSpent;
+		mTitle = title;
+		
+	}
+	
+	public ContentSummary(Content content) {
+		
+		this(content.getHash(), content.getType(), content.getFile(), content.getTags().clone(), content.isRestricted(), content.isFavorite(),
+				content.getViews(), content.getVideoLength(), content.getTimeSpent(), content.getTitle());
+	}
+	
+	public String getHash() {
+		
+		return mHash;
+	}
+	
+	public ContentType getType() {
+		
+		return mType;
+	}
+	
+	public File getFile() {
+		
+		return mFile;
+	}
+	
+	public String[] getTags() {
+		
+		return mTags;
+	}
+	
+	public boolean isRestricted() {
+		
+		return mIsRestricted;
+	}
+	
+	public boolean isFavorite() {
+		
+		return mIsFavorite;
+	}
+	
+	public int getViews() {
+		
+		return mViews;
+	}
+	
+	public long getVideoLength() {
+		
+		return mVideoLength;
+	}
+	
+	public long getTimeSpent() {
+		
+		return mTimeSpent;
+	}
+	
+	public String getTitle() {
+		
+		return mTitle;
+	}
+	
+	public String getThumbnailFile() {
+		
+		return Content.getThumbnailFile(mType, mFile, mHash);
+	}
+	
+	public int compareTo(Options.SearchOptions searchOptions, ContentSummary o) {
+		
+		int out = 0;
+		
+		if (searchOptions.getSearchType() == Options.SearchOptions.SortType.TITLE) {
+			if (this.mTitle != null && o.mTitle != null) out = this.mTitle.compareTo(o.mTitle);
+		}
+		else if (searchOptions.getSearchType() == Options.SearchOptions.SortType.VIEWS) {
+			out = Integer.compare(o.mViews, this.mViews);
+		}
+		else if (searchOptions.getSearchType() == Options.SearchOptions.SortType.CONTENT_TYPE) {
+			if (this.mType == ContentType.VIDEO && o.mType != ContentType.VIDEO) out = -1;
+			else if (this.mType != ContentType.VIDEO && o.mType == ContentType.VIDEO) out = 1;
+			else if (this.mType == ContentType.IMAGE && o.mType != ContentType.IMAGE) out = -1;
+			else if (this.mType != ContentType.IMAGE && o.mType == ContentType.IMAGE) out = 1;
+			else if (this.mType != ContentType.GIF && o.mType == ContentType.GIF) out = 1;
+			else if (this.mType == ContentType.GIF && o.mType != ContentType.GIF) out = -1;
+		}
+		else if (searchOptions.getSearchType() == Options.SearchOptions.SortType.VIEW_TIME) {
+			out = Long.compare(o.mTimeSpent, this.mTimeSpent);
+		}
+		
+		return out == 0 ? this.mHash.compareTo(o.mHash) : out;
+		
+	}
+	
+}
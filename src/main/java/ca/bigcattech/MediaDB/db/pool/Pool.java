@@ -69,9 +69,8 @@ public class Pool {
 		
 		//Handling content restriction
 		//If manually set to private, it's restricted, otherwise, if any of the tags are restricted, it's restricted
-		//I check if any content objects are restricted instead of checking if any of mAllTags are restricted because the content objects should already be updated
-		//I can change this later to use dbHandler.isTagRestricted(mAllTags) if I'd prefer to do it that way
-		mIsRestricted = mIsPrivate || Arrays.stream(contentArr).anyMatch(Content::isRestricted);
+		//The tags are checked against the tag graph in memory, content can still be restricted without a restricted tag if it's been set to private
+		mIsRestricted = mIsPrivate || dbHandler.isTagRestricted(mAllTags) || Arrays.stream(contentArr).anyMatch(Content::isRestricted);
 		
 		//Handling thumbnail
 		if (mContentHashes.length > 0) mThumbnailFile = contentArr[0].getThumbnailFile();
@@ -78,6 +78,21 @@ public class Tag {
 
     }
 	
+	/**
+	 * Copy constructor, the parent tag array is copied too so changes to one tag don't show up in the other
+	 *
+	 * @param tag the tag to copy
+	 */
+	public Tag(Tag tag) {
+		
+		mName = tag.mName;
+		mTagType = tag.mTagType;
+		mParentTags = tag.mParentTags == null ? new String[]{} : tag.mParentTags.clone();
+		mRestricted = tag.mRestricted;
+		mUses = tag.mUses;
+		
+	}
+	
 	public void setUses(int numUses) {
 		mUses = numUses;
 	}
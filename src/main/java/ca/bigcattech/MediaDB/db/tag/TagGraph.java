@@ -0,0 +1,313 @@
+/*
+ *     TagGraph
+ *     Last Modified: 2026-10-18, 5:20 p.m.
+ *     Copyright (C) 2026-10-18, 5:20 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.MediaDB.db.tag;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the parent/child relationships between all the tags in memory, along with every tag's full set of ancestors.
+ * A tag counts as restricted if it, or any of its ancestors, is restricted, since content gets all the parent tags added to it.
+ * Every tag name gets a small int id, and which tags are restricted is kept as a BitSet over those ids, so checking a whole item's tags is a few map lookups.
+ * The DBHandler keeps this up to date as tags are exported and deleted, edits that would create a cycle are rejected.
+ */
+public class TagGraph {
+	
+	private static final Logger log = LoggerFactory.getLogger(TagGraph.class);
+	
+	//Only changed while holding the lock on this
+	private final Map<String, Set<String>> mParents = new HashMap<>();
+	private final Map<String, Set<String>> mChildren = new HashMap<>();
+	private final Set<String> mRestricted = new HashSet<>();
+	
+	//Read without locking, ids are never reused or removed so they stay valid for the life of the graph
+	private final ConcurrentHashMap<String, Set<String>> mAncestors = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Integer> mTagIds = new ConcurrentHashMap<>();
+	//Copy on write, never change the BitSet after it's been published
+	private volatile BitSet mRestrictedIds = new BitSet();
+	
+	/**
+	 * Throw everything out and build the graph from these tags. Cycles that are already in the database are logged and broken, rather than refusing to load
+	 */
+	public synchronized void load(Collection<Tag> tags) {
+		
+		long start = System.currentTimeMillis();
+		
+		mParents.clear();
+		mChildren.clear();
+		mRestricted.clear();
+		mAncestors.clear();
+		BitSet restrictedIds = new BitSet();
+		
+		for (Tag tag : tags) {
+			setParents(tag.getName(), tag.getParentTags());
+			if (tag.isRestricted()) mRestricted.add(tag.getName());
+		}
+		
+		for (String name : new ArrayList<>(mParents.keySet())) {
+			computeAncestors(name, restrictedIds);
+		}
+		mRestrictedIds = restrictedIds;
+		
+		log.info("Built tag graph with " + mParents.size() + " tags, " + restrictedIds.cardinality() + " restricted, in " + (System.currentTimeMillis() - start) + "ms");
+		
+	}
+	
+	/**
+	 * Add a tag or update its parents and restricted flag, along with everything that inherits from it
+	 *
+	 * @throws TagCycleException if the tag would end up being its own ancestor, nothing is changed if this happens
+	 */
+	public synchronized void putTag(Tag tag) throws TagCycleException {
+		
+		String name = tag.getName();
+		String[] parents = tag.getParentTags() == null ? new String[]{} : tag.getParentTags();
+		
+		String cycle = findCycle(name, parents);
+		if (cycle != null) throw new TagCycleException(name, cycle);
+		
+		setParents(name, parents);
+		if (tag.isRestricted()) mRestricted.add(name);
+		else mRestricted.remove(name);
+		
+		recompute(name);
+		
+	}
+	
+	/**
+	 * Change only a tag's parents, its restricted flag is left as it is
+	 *
+	 * @throws TagCycleException if the tag would end up being its own ancestor, nothing is changed if this happens
+	 */
+	public synchronized void setTagParents(String name, String[] parents) throws TagCycleException {
+		
+		String cycle = findCycle(name, parents);
+		if (cycle != null) throw new TagCycleException(name, cycle);
+		
+		setParents(name, parents);
+		recompute(name);
+		
+	}
+	
+	/**
+	 * Forget a tag's parents and restricted flag, tags that list it as a parent keep it as one
+	 */
+	public synchronized void removeTag(String name) {
+		
+		setParents(name, new String[]{});
+		mParents.remove(name);
+		mRestricted.remove(name);
+		
+		recompute(name);
+		mAncestors.remove(name);
+		
+	}
+	
+	/**
+	 * @return true if giving the tag these parents would make it its own ancestor
+	 */
+	public boolean wouldCreateCycle(String name, String[] parents) {
+		
+		return findCycle(name, parents) != null;
+	}
+	
+	private String findCycle(String name, String[] parents) {
+		
+		for (String parent : parents) {
+			if (parent.equals(name) || getAncestors(parent).contains(name)) return parent;
+		}
+		return null;
+		
+	}
+	
+	/**
+	 * @return every tag above this one, parents, their parents, and so on. Empty if the tag has none or we don't know about it
+	 */
+	public Set<String> getAncestors(String name) {
+		
+		return mAncestors.getOrDefault(name, Collections.emptySet());
+	}
+	
+	/**
+	 * @return the tags, followed by all of their ancestors that aren't already in the array, without duplicates
+	 */
+	public String[] expand(String[] tags) {
+		
+		Set<String> out = new LinkedHashSet<>(Arrays.asList(tags));
+		for (String tag : tags) {
+			out.addAll(getAncestors(tag));
+		}
+		return out.toArray(new String[0]);
+		
+	}
+	
+	/**
+	 * @return true if any of the tags is restricted or has a restricted ancestor
+	 */
+	public boolean isRestricted(String[] tags) {
+		
+		BitSet restrictedIds = mRestrictedIds;
+		for (String tag : tags) {
+			Integer id = mTagIds.get(tag);
+			if (id != null && restrictedIds.get(id)) return true;
+		}
+		return false;
+		
+	}
+	
+	public boolean isRestricted(String tag) {
+		
+		return isRestricted(new String[]{tag});
+	}
+	
+	/**
+	 * @return the number of tags that are restricted or have a restricted ancestor
+	 */
+	public int getNumRestricted() {
+		
+		return mRestrictedIds.cardinality();
+	}
+	
+	private int getOrCreateId(String name) {
+		
+		//Only called while holding the lock, so the size can't change under us
+		return mTagIds.computeIfAbsent(name, key -> mTagIds.size());
+	}
+	
+	private void setParents(String name, String[] parents) {
+		
+		Set<String> old = mParents.get(name);
+		if (old != null) {
+			for (String parent : old) {
+				Set<String> children = mChildren.get(parent);
+				if (children != null) children.remove(name);
+			}
+		}
+		
+		Set<String> set = new LinkedHashSet<>();
+		for (String parent : parents == null ? new String[]{} : parents) {
+			if (parent == null || parent.isBlank()) continue;
+			set.add(parent);
+			mChildren.computeIfAbsent(parent, k -> new HashSet<>()).add(name);
+		}
+		mParents.put(name, set);
+		
+	}
+	
+	/**
+	 * Recompute the ancestors of a tag and everything below it, the rest of the graph can't have changed
+	 */
+	private void recompute(String name) {
+		
+		List<String> affected = new ArrayList<>();
+		Deque<String> queue = new ArrayDeque<>();
+		Set<String> seen = new HashSet<>();
+		queue.add(name);
+		while (!queue.isEmpty()) {
+			String next = queue.poll();
+			if (!seen.add(next)) continue;
+			affected.add(next);
+			queue.addAll(mChildren.getOrDefault(next, Collections.emptySet()));
+		}
+		
+		Map<String, Set<String>> computed = new HashMap<>();
+		for (String tag : affected) {
+			computed.put(tag, calcAncestors(tag, computed, new HashSet<>(), seen, null));
+		}
+		
+		//Swap the new values in all at once, so readers never see a half cleared graph
+		BitSet restrictedIds = (BitSet) mRestrictedIds.clone();
+		computed.forEach((tag, ancestors) -> storeAncestors(tag, ancestors, restrictedIds));
+		mRestrictedIds = restrictedIds;
+		
+	}
+	
+	private void computeAncestors(String name, BitSet restrictedIds) {
+		
+		if (mAncestors.containsKey(name)) return;
+		storeAncestors(name, calcAncestors(name, new HashMap<>(), new HashSet<>(), null, restrictedIds), restrictedIds);
+		
+	}
+	
+	/**
+	 * Walk up the parents, reusing anything already worked out.
+	 *
+	 * @param computed results from this pass
+	 * @param visiting the tags on the current path, used to break cycles
+	 * @param stale    tags whose stored ancestors are out of date and can't be reused, null if everything stored is good
+	 * @param store    where to store the restricted ids of each tag as it's worked out, null to only return the results
+	 */
+	private Set<String> calcAncestors(String name, Map<String, Set<String>> computed, Set<String> visiting, Set<String> stale, BitSet store) {
+		
+		Set<String> known = computed.get(name);
+		if (known != null) return known;
+		if (stale == null || !stale.contains(name)) {
+			known = mAncestors.get(name);
+			if (known != null) return known;
+		}
+		
+		if (!visiting.add(name)) {
+			log.warn("Tag " + name + " is its own ancestor, ignoring the cycle");
+			return Collections.emptySet();
+		}
+		
+		Set<String> out = new LinkedHashSet<>();
+		for (String parent : mParents.getOrDefault(name, Collections.emptySet())) {
+			out.add(parent);
+			out.addAll(calcAncestors(parent, computed, visiting, stale, store));
+		}
+		out.remove(name);
+		
+		visiting.remove(name);
+		
+		Set<String> result = Collections.unmodifiableSet(out);
+		computed.put(name, result);
+		if (store != null) storeAncestors(name, result, store);
+		return result;
+		
+	}
+	
+	private void storeAncestors(String name, Set<String> ancestors, BitSet restrictedIds) {
+		
+		mAncestors.put(name, ancestors);
+		
+		boolean restricted = mRestricted.contains(name);
+		for (String ancestor : ancestors) {
+			if (restricted) break;
+			restricted = mRestricted.contains(ancestor);
+		}
+		
+		restrictedIds.set(getOrCreateId(name), restricted);
+		
+	}
+	
+	public static class TagCycleException extends Exception {
+		
+		public TagCycleException(String tag, String parent) {
+			
+			super("Can't make " + parent + " a parent of " + tag + ", " + tag + " is already above " + parent);
+		}
+		
+	}
+	
+}
@@ -21,6 +21,7 @@ package ca.bigcattech.MediaDB.gui.components;
 
 import ca.bigcattech.MediaDB.IO.FileSystemHandler;
 import ca.bigcattech.MediaDB.db.content.Content;
+import ca.bigcattech.MediaDB.db.content.ContentSummary;
 import ca.bigcattech.MediaDB.db.content.ContentType;
 import ca.bigcattech.MediaDB.db.pool.Pool;
 import ca.bigcattech.MediaDB.image.ThumbnailHandler;
@@ -33,11 +34,16 @@ import java.io.File;
 
 public class ContentButton extends JButton {
 	
-	private final Content mContent;
+	private final ContentSummary mContent;
 	private final Pool mPool;
 	
 	public ContentButton(Content content) {
 		
+		this(new ContentSummary(content));
+	}
+	
+	public ContentButton(ContentSummary content) {
+		
 		mContent = content;
 		mPool = null;
 		
@@ -56,7 +62,7 @@ public class ContentButton extends JButton {
 			text.append(" \uf023 ");
 		}
 		
-		text.append(mContent.mType.name());
+		text.append(mContent.getType().name());
 		text.append(" views ").append(mContent.getViews());
 		
 		if (mContent.isFavorite()) {
@@ -126,7 +132,7 @@ public class ContentButton extends JButton {
 
 		if (mContent != null) {
 			String thumbnailPath = mContent.getThumbnailFile();
-			if (mContent.mType == ContentType.VIDEO && !new File(thumbnailPath).exists()) {
+			if (mContent.getType() == ContentType.VIDEO && !new File(thumbnailPath).exists()) {
 				ThumbnailHandler.generateVideoThumbnail(mContent.getFile().getAbsolutePath(), mContent.getThumbnailFile());
 			}
 			this.setIcon(new ImageIcon(thumbnailPath));
@@ -141,7 +147,7 @@ public class ContentButton extends JButton {
 		return mPool;
 	}
 	
-	public Content getContent() {
+	public ContentSummary getContent() {
 		
 		if (mContent == null) throw new UnsupportedOperationException("This is a ContentButton with a Pool object.");
 		return mContent;
@@ -21,7 +21,7 @@ package ca.bigcattech.MediaDB.gui.forms;
 
 import ca.bigcattech.MediaDB.core.Session;
 import ca.bigcattech.MediaDB.db.content.Content;
-import ca.bigcattech.MediaDB.db.content.ContentComparator;
+import ca.bigcattech.MediaDB.db.content.ContentSummary;
 import ca.bigcattech.MediaDB.db.pool.Pool;
 import ca.bigcattech.MediaDB.gui.components.AutoCompleteTextField;
 import ca.bigcattech.MediaDB.gui.components.ContentButton;
@@ -42,7 +42,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
 
 public class ContentResultsForm implements IKeyListener {
 
@@ -200,41 +200,21 @@ public class ContentResultsForm implements IKeyListener {
 
     private void loadContent() {
 
-        ConcurrentLinkedQueue<ContentButton> buttons = new ConcurrentLinkedQueue<>();
-
-        Content[] contentArr = new Content[]{};
-        Pool[] poolArr = new Pool[]{};
-
-        if (mSession.getOptions().getResultsPerPage() != 0) {
-            int startIndex = mSession.getResultPage() * mSession.getOptions().getResultsPerPage();
-            if (mSession.getContentResults().length > 0) {
-                contentArr = mSession.getContentResults();
-                if (mSession.getResultPage() != mSession.getNumResultPages() - 1) {
-                    contentArr = Arrays.asList(contentArr).subList(startIndex, startIndex + mSession.getOptions().getResultsPerPage()).toArray(new Content[]{});
-                }
-            } else {
-
-                poolArr = mSession.getPoolResults();
-
-            }
-        }
+        //The session only holds the current page of content results, already sorted by the database
+        ContentSummary[] contentArr = mSession.getContentResults();
+        Pool[] poolArr = contentArr.length == 0 && mSession.getPoolResults() != null ? mSession.getPoolResults() : new Pool[]{};
 
         long start = System.currentTimeMillis();
-        Arrays.stream(contentArr).parallel().forEach(content -> buttons.add(createButton(content)));
-        Arrays.stream(poolArr).parallel().forEach(pool -> buttons.add(createButton(pool)));
-        ContentButton[] lastStep = buttons.toArray(new ContentButton[0]);
+        ContentButton[] buttons = new ContentButton[contentArr.length + poolArr.length];
+        IntStream.range(0, contentArr.length).parallel().forEach(i -> buttons[i] = createButton(contentArr[i]));
+        IntStream.range(0, poolArr.length).parallel().forEach(i -> buttons[contentArr.length + i] = createButton(poolArr[i]));
         log.info("Creating button objects took: " + (System.currentTimeMillis() - start) + "ms");
 
         start = System.currentTimeMillis();
-        ContentComparator comparator = new ContentComparator(mSession.getOptions().getSearchOptions());
-        Arrays.sort(lastStep, (a, b) -> comparator.compare(a.getContent(), b.getContent()));
-        log.info((System.currentTimeMillis() - start) + "ms to sort content buttons");
-
-        start = System.currentTimeMillis();
-        Arrays.stream(lastStep).forEach(contentButton -> mContentResultPannel.add(contentButton));
+        Arrays.stream(buttons).forEach(contentButton -> mContentResultPannel.add(contentButton));
         log.info((System.currentTimeMillis() - start) + "ms to add content buttons to the results panel");
 
-        new Thread(() -> buttons.stream().parallel().forEach(ContentButton::displayThumbnail)).start();
+        new Thread(() -> Arrays.stream(buttons).parallel().forEach(ContentButton::displayThumbnail)).start();
 
     }
 
@@ -259,7 +239,7 @@ public class ContentResultsForm implements IKeyListener {
 
     }
 
-    private ContentButton createButton(Content content) {
+    private ContentButton createButton(ContentSummary content) {
 
         ContentButton contentButton = new ContentButton(content);
         contentButton.addActionListener(e -> {
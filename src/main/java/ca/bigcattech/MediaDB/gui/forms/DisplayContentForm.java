@@ -26,7 +26,6 @@ import ca.bigcattech.MediaDB.core.Session;
 import ca.bigcattech.MediaDB.db.content.Content;
 import ca.bigcattech.MediaDB.db.content.ContentType;
 import ca.bigcattech.MediaDB.db.pool.Pool;
-import ca.bigcattech.MediaDB.db.tag.Tag;
 import ca.bigcattech.MediaDB.gui.components.AutoCompleteTextField;
 import ca.bigcattech.MediaDB.gui.interfaces.IKeyListener;
 import ca.bigcattech.MediaDB.utils.Utils;
@@ -302,21 +301,18 @@ public class DisplayContentForm implements IKeyListener {
         mPrivate.addActionListener(e -> mContent.setPrivate(mPrivate.isSelected()));
         mFavoriteCheckBox.addActionListener(e -> mContent.setFavorite(mFavoriteCheckBox.isSelected()));
 
-        int temp = Arrays.asList(mSession.getContentResults()).indexOf(mContent);
-        if (temp == 0) mButtonPrevious.setEnabled(false);
+        if (!mSession.hasPreviousContentResult(mContent)) mButtonPrevious.setEnabled(false);
         mButtonPrevious.addActionListener(e -> {
-            int index = Arrays.asList(mSession.getContentResults()).indexOf(mContent);
-            if (index == 0) return;
+            if (!mSession.hasPreviousContentResult(mContent)) return;
             exit();
-            mSession.content(mSession.getContentResults()[index - 1]);
+            mSession.previousContentResult(mContent);
         });
 
-        if (temp == mSession.getContentResults().length - 1) mButtonNext.setEnabled(false);
+        if (!mSession.hasNextContentResult(mContent)) mButtonNext.setEnabled(false);
         mButtonNext.addActionListener(e -> {
-            int index = Arrays.asList(mSession.getContentResults()).indexOf(mContent);
-            if (index == mSession.getContentResults().length) return;
+            if (!mSession.hasNextContentResult(mContent)) return;
             exit();
-            mSession.content(mSession.getContentResults()[index + 1]);
+            mSession.nextContentResult(mContent);
         });
 
         mTags.addMouseListener(new MouseAdapter() {
@@ -483,20 +479,10 @@ public class DisplayContentForm implements IKeyListener {
 
         if (mDictionary == null) mDictionary = mSession.getDictionary();
 
-        ArrayList<String> tagsToAdd = new ArrayList<>(Arrays.asList(tags));
+        //Add all the parent tags too, straight from the tag graph
+        ArrayList<String> tagsToAdd = new ArrayList<>(Arrays.asList(mSession.getDBHandler().getTagGraph().expand(tags)));
         mDictionary.removeAll(tagsToAdd);
 
-        for (String name : tags) {
-
-            Tag tag = mSession.getDBHandler().getTagFromName(name);
-            if (tag == null) continue;
-
-            tagsToAdd.addAll(Arrays.asList(tag.getParentTags()));
-
-            addTag(tag.getParentTags());
-
-        }
-
         for (String tag : tagsToAdd) {
 
             if (!((DefaultListModel<String>) mTags.getModel()).contains(tag))
@@ -516,10 +502,14 @@ public class DisplayContentForm implements IKeyListener {
         mContent.incrementTimeSpent(System.currentTimeMillis() - mStartTime);
         mSession.stopSlideShow();
 
-        try {
-            mSession.getDBHandler().exportContent(mContent);
-        } catch (Content.ContentValidationException e) {
-            e.printStackTrace();
+        //Views and time spent are written in the background, only go to the database now if something else changed
+        if (mContent.isTracked()) mSession.getCounterBuffer().takeCounters(mContent);
+        if (!mContent.isTracked() || mContent.isDirty()) {
+            try {
+                mSession.getDBHandler().exportContent(mContent);
+            } catch (Content.ContentValidationException e) {
+                e.printStackTrace();
+            }
         }
         release();
 
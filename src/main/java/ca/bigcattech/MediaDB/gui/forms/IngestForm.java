@@ -23,7 +23,6 @@ import ca.bigcattech.MediaDB.IO.FileSystemHandler;
 import ca.bigcattech.MediaDB.core.Ingest;
 import ca.bigcattech.MediaDB.core.Session;
 import ca.bigcattech.MediaDB.db.content.ContentType;
-import ca.bigcattech.MediaDB.db.tag.Tag;
 import ca.bigcattech.MediaDB.gui.components.AutoCompleteTextField;
 import ca.bigcattech.MediaDB.gui.interfaces.IKeyListener;
 import ca.bigcattech.MediaDB.utils.Utils;
@@ -322,20 +321,10 @@ public class IngestForm implements IKeyListener {
 
     private void addTag(String[] tags) {
 
-        ArrayList<String> tagsToAdd = new ArrayList<>(Arrays.asList(tags));
+        //Add all the parent tags too, straight from the tag graph
+        ArrayList<String> tagsToAdd = new ArrayList<>(Arrays.asList(mSession.getDBHandler().getTagGraph().expand(tags)));
         mDictionary.removeAll(tagsToAdd);
 
-        for (String name : tags) {
-
-            Tag tag = mSession.getDBHandler().getTagFromName(name);
-            if (tag == null) continue;
-
-            tagsToAdd.addAll(Arrays.asList(tag.getParentTags()));
-
-            addTag(tag.getParentTags());
-
-        }
-
         for (String tag : tagsToAdd) {
 
             if (!((DefaultListModel<String>) mTagsList.getModel()).contains(tag))
@@ -130,7 +130,9 @@ public class TagsManagementForm {
 
         mAddParentTag.addActionListener(e -> {
             if (mCurrentTag != null) {
-                String[] tags = mAddParentTag.getText().toLowerCase().split(" ");
+                String[] tags = Arrays.stream(mAddParentTag.getText().toLowerCase().split(" "))
+                                      .filter(tag -> !createsCycle(mCurrentTag.getName(), tag))
+                                      .toArray(String[]::new);
                 mCurrentTag.addParentTags(tags);
                 for (String tag : tags) {
 
@@ -140,6 +142,8 @@ public class TagsManagementForm {
                 }
                 mAddParentTag.setText("");
                 addUpdatedTag(mCurrentTag);
+                //Save the parents now so the tag graph knows about them before the next edit is checked, the rest waits until the tag is saved
+                mSession.getDBHandler().exportTagParents(mCurrentTag.getName(), mCurrentTag.getParentTags());
 
                 sortParentTagList();
 
@@ -313,6 +317,7 @@ public class TagsManagementForm {
         Tag child = mSession.getDBHandler().getTagFromName(tag);
         if (mCurrentTag == null) return null;
         if (child == null) child = new Tag(tag);
+        if (createsCycle(child.getName(), mCurrentTag.getName())) return null;
 
         child.addParentTag(mCurrentTag.getName());
         mSession.getDBHandler().exportTag(child, false);
@@ -323,6 +328,19 @@ public class TagsManagementForm {
 
     }
 
+    /**
+     * Check the tag graph and tell the user if making parent a parent of tag would make tag its own parent
+     */
+    private boolean createsCycle(String tag, String parent) {
+
+        if (tag.isBlank() || parent.isBlank()) return false;
+        if (!mSession.getDBHandler().getTagGraph().wouldCreateCycle(tag, new String[]{parent})) return false;
+
+        JOptionPane.showMessageDialog(mContent, "Can't make " + parent + " a parent of " + tag + ", " + tag + " is already one of its parents", "Tag Loop", JOptionPane.ERROR_MESSAGE);
+        return true;
+
+    }
+
     private void removeChildTag(Tag child) {
 
         child.removeParentTag(mCurrentTag.getName());
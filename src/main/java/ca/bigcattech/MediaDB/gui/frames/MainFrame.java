@@ -25,6 +25,7 @@ import ca.bigcattech.MediaDB.core.Options;
 import ca.bigcattech.MediaDB.core.Session;
 import ca.bigcattech.MediaDB.db.content.Content;
 import ca.bigcattech.MediaDB.gui.forms.*;
+import ca.bigcattech.MediaDB.image.DuplicateClusterJob;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,15 +36,20 @@ import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class MainFrame extends JFrame {
 	
 	private static final Logger log = LoggerFactory.getLogger(MainFrame.class);
+	private static final String FIND_DUPLICATES = "Find Duplicates In Library";
 	private Session mSession;
 	private IngestProgressForm mTempIngestProgressForm;
 	private final JSpinner mColumnSpinner;
 	
 	private JFrame mHelpFrame;
+	//The duplicate scan running in the background, only touched from the EDT
+	private DuplicateClusterJob mDuplicateScan = null;
 	
 	public MainFrame(Options options) {
 		
@@ -120,14 +126,39 @@ public class MainFrame extends JFrame {
 			}
 		});
 		
+		JLabel findDuplicates = new JLabel(FIND_DUPLICATES);
+		findDuplicates.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				
+				super.mouseClicked(e);
+				//Clicking it again while it's running stops it at the next checkpoint
+				if (mDuplicateScan != null) {
+					mDuplicateScan.cancel();
+					findDuplicates.setText("Stopping Duplicate Scan...");
+					return;
+				}
+				if (mSession.getSessionState() == Session.SessionState.INGEST) return;
+				JOptionPane.showMessageDialog(MainFrame.this, "Grouping near duplicates across the whole library in the background. This will take a while.\nClick it again to stop, it'll pick up where it left off next time.");
+				findDuplicateClusters(findDuplicates);
+				
+			}
+		});
+		
 		JCheckBoxMenuItem ingestTagFieldAuto = new JCheckBoxMenuItem("Auto Ingest Tag Field");
 		ingestTagFieldAuto.setSelected(options.isIngestAutoTagField());
 		ingestTagFieldAuto.addActionListener(e -> mSession.getOptions().setIngestAutoTagField(ingestTagFieldAuto.isSelected()));
 		
+		JCheckBoxMenuItem perceptualHash = new JCheckBoxMenuItem("Perceptual Hash Similarity");
+		perceptualHash.setSelected(options.getSimilarityMode() == Options.SimilarityMode.PERCEPTUAL_HASH);
+		perceptualHash.addActionListener(e -> mSession.getOptions().setSimilarityMode(perceptualHash.isSelected() ? Options.SimilarityMode.PERCEPTUAL_HASH : Options.SimilarityMode.COLOUR_GRID));
+		
 		ingestOptions.add(ingestTagFieldAuto);
+		ingestOptions.add(perceptualHash);
 		ingestOptions.add(purge);
 		ingestOptions.add(purgeDuplicateFolder);
 		ingestOptions.add(validateContentFolder);
+		ingestOptions.add(findDuplicates);
 		
 		JMenu contentView = new JMenu("Content View Options:");
 		contentView.add("Slideshow timer (sec):");
@@ -207,6 +238,48 @@ public class MainFrame extends JFrame {
 		
 	}
 	
+	/**
+	 * Run the duplicate scan on a background thread, showing how far it's got on the label that started it
+	 */
+	private void findDuplicateClusters(JLabel label) {
+		
+		DuplicateClusterJob job = mSession.getIngest().createDuplicateClusterJob();
+		mDuplicateScan = job;
+		label.setText("Cancel Duplicate Scan");
+		
+		new SwingWorker<List<List<String>>, String>() {
+			@Override
+			protected List<List<String>> doInBackground() {
+				
+				job.setProgressListener((done, total) -> publish("Cancel Duplicate Scan (" + done + "/" + total + ")"));
+				return mSession.getIngest().findDuplicateClusters(job);
+			}
+			
+			@Override
+			protected void process(List<String> chunks) {
+				
+				if (mDuplicateScan == job) label.setText(chunks.get(chunks.size() - 1));
+			}
+			
+			@Override
+			protected void done() {
+				
+				mDuplicateScan = null;
+				label.setText(FIND_DUPLICATES);
+				try {
+					int groups = get().size();
+					if (job.isFinished()) JOptionPane.showMessageDialog(MainFrame.this, "Found " + groups + " groups of near duplicates");
+					else JOptionPane.showMessageDialog(MainFrame.this, "Stopped the duplicate scan with " + groups + " groups so far, it'll pick up from there next time");
+				} catch (InterruptedException | ExecutionException e) {
+					log.error("The duplicate scan failed", e);
+					JOptionPane.showMessageDialog(MainFrame.this, "The duplicate scan failed: " + e.getMessage());
+				}
+				
+			}
+		}.execute();
+		
+	}
+	
 	public void setBackgroundColor(Color color) {
 		
 		for (Component component : this.getRootPane().getComponents()) {
@@ -0,0 +1,120 @@
+/*
+ *     BoundedHeap
+ *     Last Modified: 2026-10-18, 10:15 p.m.
+ *     Copyright (C) 2026-10-18, 10:15 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.MediaDB.image;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Keeps the k closest signatures seen so far, as a max heap of int ids and distances so offering a candidate never allocates anything.
+ * What the ids mean is up to whoever's filling it, an index into a list, a record in a file, and so on.
+ * Not thread safe, give each thread its own and merge them at the end. Ties are broken by whichever got there first.
+ */
+final class BoundedHeap {
+	
+	private final int[] mIds;
+	private final double[] mDistances;
+	private int mSize = 0;
+	
+	BoundedHeap(int capacity) {
+		
+		mIds = new int[capacity];
+		mDistances = new double[capacity];
+		
+	}
+	
+	/**
+	 * @return the distance a candidate has to beat to get in, infinity until the heap is full
+	 */
+	double getLimit() {
+		
+		return mSize < mIds.length ? Double.POSITIVE_INFINITY : mDistances[0];
+	}
+	
+	void offer(int id, double distance) {
+		
+		if (mSize < mIds.length) {
+			
+			//Sift up from the bottom
+			int i = mSize++;
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (mDistances[parent] >= distance) break;
+				mIds[i] = mIds[parent];
+				mDistances[i] = mDistances[parent];
+				i = parent;
+			}
+			mIds[i] = id;
+			mDistances[i] = distance;
+			
+		}
+		else if (mIds.length > 0 && distance < mDistances[0]) {
+			
+			//Replace the furthest and sift down from the top
+			int i = 0;
+			while (true) {
+				int child = i * 2 + 1;
+				if (child >= mSize) break;
+				if (child + 1 < mSize && mDistances[child + 1] > mDistances[child]) child++;
+				if (mDistances[child] <= distance) break;
+				mIds[i] = mIds[child];
+				mDistances[i] = mDistances[child];
+				i = child;
+			}
+			mIds[i] = id;
+			mDistances[i] = distance;
+			
+		}
+		
+	}
+	
+	/**
+	 * Offer everything from the other heap to this one
+	 *
+	 * @return this heap
+	 */
+	BoundedHeap merge(BoundedHeap other) {
+		
+		for (int i = 0; i < other.mSize; i++) {
+			offer(other.mIds[i], other.mDistances[i]);
+		}
+		return this;
+		
+	}
+	
+	/**
+	 * @param hashes gives the hash for an id
+	 * @return the hash and distance of everything in the heap, closest first
+	 */
+	List<Map.Entry<String, Double>> toSortedList(IntFunction<String> hashes) {
+		
+		List<Map.Entry<String, Double>> out = new ArrayList<>(mSize);
+		for (int i = 0; i < mSize; i++) {
+			out.add(new AbstractMap.SimpleImmutableEntry<>(hashes.apply(mIds[i]), mDistances[i]));
+		}
+		out.sort(Map.Entry.comparingByValue());
+		return out;
+		
+	}
+	
+}
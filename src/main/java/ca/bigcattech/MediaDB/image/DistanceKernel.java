@@ -0,0 +1,48 @@
+/*
+ *     DistanceKernel
+ *     Last Modified: 2026-10-18, 9:40 p.m.
+ *     Copyright (C) 2026-10-18, 9:40 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.bigcattech.MediaDB.image;
+
+/**
+ * Works out signature distances for many candidates at once.
+ * The Vector API version lives in its own source set so nothing else has to be compiled against the incubator module, SimilarityFinder loads it by name when it can.
+ */
+interface DistanceKernel {
+	
+	/**
+	 * @return how many candidates are compared at once, 1 means there's no point using this
+	 */
+	int getLanes();
+	
+	/**
+	 * Put the distance between the signature and each of the first count others into out, in the same order
+	 */
+	void calcDistances(byte[] signature, byte[][] others, int count, double[] out);
+	
+	/**
+	 * Same as above, but with the others packed back to back in one array
+	 */
+	void calcDistances(byte[] signature, byte[] others, int count, double[] out);
+	
+	/**
+	 * Same as above, but each group of candidates stops once they've all gone past the limit.
+	 * Anything within the limit comes out exactly the same, anything past it is just some value bigger than the limit
+	 */
+	void calcDistances(byte[] signature, byte[] others, int count, double limit, double[] out);
+	
+}
@@ -0,0 +1,373 @@
+/*
+ *     DuplicateClusterJob
+ *     Last Modified: 2026-10-18, 11:05 p.m.
+ *     Copyright (C) 2026-10-18, 11:05 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.bigcattech.MediaDB.image;
+
+import ca.bigcattech.MediaDB.db.DBHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds every group of near duplicates already in the library, not just the ones caught at ingest.
+ * Every signature is looked up in an index of all the others, which is a range join that only compares against the part of the library that could be close enough,
+ * and anything within range is joined into the same group, so a chain of near duplicates ends up as one group.
+ * Every CHECKPOINT_SIZE signatures the pairs that checkpoint joined are added to what's saved, then how far it's got, so each checkpoint is saved on its own without rewriting the ones before it.
+ * If it's stopped it rebuilds the groups from the saved pairs and picks up from there the next time it's run, as long as the settings and the signatures are exactly the same.
+ * The groups themselves are only replaced once the whole scan is done.
+ */
+public class DuplicateClusterJob {
+	
+	private static final Logger log = LoggerFactory.getLogger(DuplicateClusterJob.class);
+	
+	private static final int CHECKPOINT_SIZE = 10000;
+	//Number of signatures each fork join task looks up before it stops splitting
+	private static final int TASK_SIZE = 64;
+	
+	private final DBHandler mDBHandler;
+	private final double mRadius;
+	private final int mPerceptualDistance;
+	private int mCheckpointSize = CHECKPOINT_SIZE;
+	private volatile boolean mCancel = false;
+	private volatile boolean mFinished = false;
+	private ProgressListener mProgressListener = null;
+	
+	/**
+	 * @param radius             how close two colour signatures have to be to count as duplicates
+	 * @param perceptualDistance how many bits two perceptual hashes can differ by to count as duplicates, signatures that both have one are only compared this way. Less than 0 to only compare colour
+	 */
+	public DuplicateClusterJob(DBHandler dbHandler, double radius, int perceptualDistance) {
+		
+		mDBHandler = dbHandler;
+		mRadius = radius;
+		mPerceptualDistance = perceptualDistance;
+		
+	}
+	
+	public void setCheckpointSize(int checkpointSize) {
+		
+		mCheckpointSize = Math.max(1, checkpointSize);
+	}
+	
+	/**
+	 * @param listener told how far the scan has got once the indexes are built and after every checkpoint, from the thread running the scan
+	 */
+	public void setProgressListener(ProgressListener listener) {
+		
+		mProgressListener = listener;
+	}
+	
+	/**
+	 * Stop at the next checkpoint, safe to call from any thread, even before the scan has started
+	 */
+	public void cancel() {
+		
+		mCancel = true;
+	}
+	
+	/**
+	 * @return true if the last run got through every signature, false if it was cancelled first
+	 */
+	public boolean isFinished() {
+		
+		return mFinished;
+	}
+	
+	/**
+	 * @return what the job was set up with, progress is only picked up by a job with the same settings
+	 */
+	public String getSettings() {
+		
+		return "radius=" + mRadius + " perceptual=" + mPerceptualDistance;
+	}
+	
+	/**
+	 * @return the number of signatures and a digest of all their hashes in order, so a scan is only picked back up over exactly the same signatures
+	 */
+	private static String fingerprint(String[] hashes) {
+		
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String hash : hashes) {
+				digest.update(hash.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) '\n');
+			}
+			return hashes.length + ":" + HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			//Every JVM has to have SHA-256
+			throw new IllegalStateException(e);
+		}
+		
+	}
+	
+	/**
+	 * Run the scan, or pick up an unfinished one, and save the groups it finds
+	 *
+	 * @return every group of two or more content hashes, or what it had so far if it was cancelled
+	 */
+	public List<List<String>> run() {
+		
+		long start = System.currentTimeMillis();
+		
+		//Sorted by hash, so a scan that's picked up again goes through them in the same order
+		List<ImageSignature> signatures = new ArrayList<>(mDBHandler.getAllSignatures());
+		signatures.removeIf(signature -> signature == null || signature.getHash() == null);
+		signatures.sort(Comparator.comparing(ImageSignature::getHash));
+		
+		int count = signatures.size();
+		String[] hashes = new String[count];
+		Map<String, Integer> ids = new HashMap<>(count * 2);
+		for (int id = 0; id < count; id++) {
+			hashes[id] = signatures.get(id).getHash();
+			ids.put(hashes[id], id);
+		}
+		
+		SignatureIndex colour = new SignatureIndex(signatures);
+		PerceptualHashIndex perceptual = new PerceptualHashIndex(mPerceptualDistance < 0 ? List.of() : signatures);
+		log.info("Built the duplicate scan indexes for {} signatures in {}ms", count, System.currentTimeMillis() - start);
+		
+		String settings = getSettings();
+		String fingerprint = fingerprint(hashes);
+		UnionFind clusters = new UnionFind(count);
+		int from = 0;
+		String runId;
+		int checkpoint;
+		DuplicateScanProgress progress = mDBHandler.getDuplicateScanProgress();
+		if (progress != null && progress.matches(settings, fingerprint)) {
+			runId = progress.getRunId();
+			checkpoint = progress.getCheckpoint() + 1;
+			List<String> pairs = mDBHandler.getDuplicateScanPairs(progress);
+			for (int i = 0; i + 1 < pairs.size(); i += 2) {
+				Integer a = ids.get(pairs.get(i));
+				Integer b = ids.get(pairs.get(i + 1));
+				if (a != null && b != null) clusters.union(a, b);
+			}
+			int found = Arrays.binarySearch(hashes, progress.getLastHash());
+			from = found >= 0 ? found + 1 : -found - 1;
+			log.info("Picking the duplicate scan back up after {} of {} signatures", from, count);
+		} else {
+			//Signatures added since then could sort in before where it got to and never be compared, so any change means starting over
+			if (progress != null) log.info("The settings or signatures have changed since the last duplicate scan was stopped, starting it over");
+			mDBHandler.clearDuplicateScan();
+			runId = UUID.randomUUID().toString();
+			checkpoint = 0;
+		}
+		
+		LongAdder pairCount = new LongAdder();
+		reportProgress(from, count);
+		while (from < count && !mCancel) {
+			
+			long checkpointStart = System.nanoTime();
+			int to = Math.min(count, from + mCheckpointSize);
+			List<String> joined = new ArrayList<>();
+			ForkJoinPool.commonPool().invoke(new JoinTask(signatures, ids, colour, perceptual, clusters, joined, pairCount, from, to));
+			mDBHandler.exportDuplicateScanCheckpoint(new DuplicateScanProgress(runId, settings, fingerprint, checkpoint++, hashes[to - 1]), joined);
+			
+			double seconds = (System.nanoTime() - checkpointStart) / 1e9;
+			log.info("Duplicate scan {}/{}, {} signatures/s, {} new pairs joined", to, count, Math.round((to - from) / seconds), joined.size() / 2);
+			from = to;
+			reportProgress(from, count);
+			
+		}
+		
+		List<List<String>> found = clusters.getClusters(hashes);
+		if (from >= count) {
+			//If we go down in between the progress is still there, and picking it back up goes straight to saving the groups again
+			mDBHandler.exportDuplicateClusters(found);
+			mDBHandler.clearDuplicateScan();
+		}
+		
+		double seconds = (System.currentTimeMillis() - start) / 1000.0;
+		log.info("Duplicate scan {} after {}s, {} matching pairs and {} groups, {} signatures/s overall", from >= count ? "finished" : "stopped", seconds, pairCount.sum(), found.size(), Math.round(count / Math.max(seconds, 0.001)));
+		//Cleared at the end rather than the start, so a cancel that comes in before the scan gets going still counts
+		mCancel = false;
+		mFinished = from >= count;
+		return found;
+		
+	}
+	
+	private void reportProgress(int done, int total) {
+		
+		ProgressListener listener = mProgressListener;
+		if (listener != null) listener.onProgress(done, total);
+		
+	}
+	
+	public interface ProgressListener {
+		
+		/**
+		 * @param done  the number of signatures that have been looked up and saved
+		 * @param total the number of signatures in the scan
+		 */
+		void onProgress(int done, int total);
+		
+	}
+	
+	/**
+	 * Looks up each signature between from and to, splitting the range in half until it's small enough
+	 */
+	private class JoinTask extends RecursiveAction {
+		
+		private final List<ImageSignature> mSignatures;
+		private final Map<String, Integer> mIds;
+		private final SignatureIndex mColour;
+		private final PerceptualHashIndex mPerceptual;
+		private final UnionFind mClusters;
+		private final List<String> mJoined;
+		private final LongAdder mPairs;
+		private final int mFrom;
+		private final int mTo;
+		
+		private JoinTask(List<ImageSignature> signatures, Map<String, Integer> ids, SignatureIndex colour, PerceptualHashIndex perceptual, UnionFind clusters, List<String> joined, LongAdder pairs, int from, int to) {
+			
+			mSignatures = signatures;
+			mIds = ids;
+			mColour = colour;
+			mPerceptual = perceptual;
+			mClusters = clusters;
+			mJoined = joined;
+			mPairs = pairs;
+			mFrom = from;
+			mTo = to;
+			
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (mTo - mFrom > TASK_SIZE) {
+				int mid = (mFrom + mTo) >>> 1;
+				invokeAll(new JoinTask(mSignatures, mIds, mColour, mPerceptual, mClusters, mJoined, mPairs, mFrom, mid), new JoinTask(mSignatures, mIds, mColour, mPerceptual, mClusters, mJoined, mPairs, mid, mTo));
+				return;
+			}
+			
+			//Collect the matches first so the union find is only locked once per task
+			int[] matches = new int[64];
+			int numMatches = 0;
+			for (int id = mFrom; id < mTo; id++) {
+				
+				ImageSignature signature = mSignatures.get(id);
+				boolean hashed = mPerceptualDistance >= 0 && signature.hasPerceptualHash();
+				
+				for (Map.Entry<String, Double> entry : mColour.findWithin(signature, mRadius)) {
+					int other = mIds.get(entry.getKey());
+					//When both have a perceptual hash that's what decides it
+					if (other == id || (hashed && mSignatures.get(other).hasPerceptualHash())) continue;
+					if (numMatches + 2 > matches.length) matches = Arrays.copyOf(matches, matches.length * 2);
+					matches[numMatches++] = other;
+					matches[numMatches++] = id;
+				}
+				
+				if (!hashed) continue;
+				for (Map.Entry<String, Double> entry : mPerceptual.findWithin(signature.getPerceptualHash(), mPerceptualDistance)) {
+					int other = mIds.get(entry.getKey());
+					if (other == id) continue;
+					if (numMatches + 2 > matches.length) matches = Arrays.copyOf(matches, matches.length * 2);
+					matches[numMatches++] = other;
+					matches[numMatches++] = id;
+				}
+				
+			}
+			
+			mPairs.add(numMatches / 2);
+			synchronized (mClusters) {
+				for (int i = 0; i < numMatches; i += 2) {
+					//Only the pairs that joined two groups are needed to get the same groups back
+					if (mClusters.union(matches[i], matches[i + 1])) {
+						mJoined.add(mSignatures.get(matches[i]).getHash());
+						mJoined.add(mSignatures.get(matches[i + 1]).getHash());
+					}
+				}
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Disjoint sets over signature ids, with path halving and union by size. Not thread safe
+	 */
+	private static final class UnionFind {
+		
+		private final int[] mParents;
+		private final int[] mSizes;
+		
+		private UnionFind(int count) {
+			
+			mParents = new int[count];
+			mSizes = new int[count];
+			for (int i = 0; i < count; i++) {
+				mParents[i] = i;
+				mSizes[i] = 1;
+			}
+			
+		}
+		
+		private int find(int id) {
+			
+			while (mParents[id] != id) {
+				mParents[id] = mParents[mParents[id]];
+				id = mParents[id];
+			}
+			return id;
+			
+		}
+		
+		/**
+		 * @return true if a and b were in different sets
+		 */
+		private boolean union(int a, int b) {
+			
+			a = find(a);
+			b = find(b);
+			if (a == b) return false;
+			if (mSizes[a] < mSizes[b]) {
+				int swap = a;
+				a = b;
+				b = swap;
+			}
+			mParents[b] = a;
+			mSizes[a] += mSizes[b];
+			return true;
+			
+		}
+		
+		/**
+		 * @return the hashes in every set with more than one in it, each set in id order, and the sets in order of their lowest id
+		 */
+		private List<List<String>> getClusters(String[] hashes) {
+			
+			Map<Integer, List<String>> clusters = new LinkedHashMap<>();
+			for (int id = 0; id < mParents.length; id++) {
+				int root = find(id);
+				if (mSizes[root] > 1) clusters.computeIfAbsent(root, key -> new ArrayList<>()).add(hashes[id]);
+			}
+			return new ArrayList<>(clusters.values());
+			
+		}
+		
+	}
+	
+}
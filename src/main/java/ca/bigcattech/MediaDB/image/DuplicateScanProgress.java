@@ -0,0 +1,82 @@
+/*
+ *     DuplicateScanProgress
+ *     Last Modified: 2026-10-18, 11:40 p.m.
+ *     Copyright (C) 2026-10-18, 11:40 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.bigcattech.MediaDB.image;
+
+/**
+ * How far an unfinished DuplicateClusterJob got, saved after every checkpoint.
+ * It only counts for a job with the same settings over the exact same signatures, anything else starts a new run.
+ */
+public class DuplicateScanProgress {
+	
+	private final String mRunId;
+	private final String mSettings;
+	private final String mFingerprint;
+	private final int mCheckpoint;
+	private final String mLastHash;
+	
+	/**
+	 * @param runId       which run the saved pairs belong to
+	 * @param fingerprint the number of signatures the run was started on and a digest of their hashes
+	 * @param checkpoint  the last checkpoint that was saved, starting at 0
+	 * @param lastHash    the hash of the last signature that checkpoint got through
+	 */
+	public DuplicateScanProgress(String runId, String settings, String fingerprint, int checkpoint, String lastHash) {
+		
+		mRunId = runId;
+		mSettings = settings;
+		mFingerprint = fingerprint;
+		mCheckpoint = checkpoint;
+		mLastHash = lastHash;
+		
+	}
+	
+	public String getRunId() {
+		
+		return mRunId;
+	}
+	
+	public String getSettings() {
+		
+		return mSettings;
+	}
+	
+	public String getFingerprint() {
+		
+		return mFingerprint;
+	}
+	
+	public int getCheckpoint() {
+		
+		return mCheckpoint;
+	}
+	
+	public String getLastHash() {
+		
+		return mLastHash;
+	}
+	
+	/**
+	 * @return if a job with these settings over these signatures can pick this run back up
+	 */
+	public boolean matches(String settings, String fingerprint) {
+		
+		return mSettings.equals(settings) && mFingerprint.equals(fingerprint);
+	}
+	
+}
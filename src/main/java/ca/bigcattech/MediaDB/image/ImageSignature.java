@@ -26,55 +26,88 @@ import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A 5x5 grid of colours summarising an image, used to find similar images.
+ * It's stored packed as 75 bytes, red, green, then blue for each cell, going down each column in turn, the Color[][] form is only built if it's asked for.
+ * Newer signatures also carry a 64 bit perceptual hash of the image, older ones won't have one until they're recalculated.
+ */
 public class ImageSignature {
 	
+	public static final int SIZE = 5;
+	public static final int NUM_BYTES = SIZE * SIZE * 3;
+	
 	private String mHash;
-	private final Color[][] mSignature;
+	private final byte[] mData;
+	private volatile Color[][] mSignature = null;
+	private volatile int[] mChannelSums = null;
+	private long mPerceptualHash = 0;
+	private boolean mHasPerceptualHash = false;
 	
 	public ImageSignature(Color[][] signature) {
 		
-		mSignature = signature;
-		if (signature[0].length != 5 || signature[1].length != 5 || signature[2].length != 5 || signature[3].length != 5 || signature[4].length != 5)
-			throw new InvalidParameterException("Signature must contain 25 color elements");
-		
+		this(null, signature);
 	}
 	
 	public ImageSignature(List<List<String>> signature) {
 		
-		mSignature = new Color[5][5];
-		
-		for (int x = 0; x < 5; x++) {
-			List<String> data = signature.get(x);
-			for (int y = 0; y < 5; y++) {
-				mSignature[x][y] = ImageUtils.hex2Rgb(data.get(y));
-			}
-		}
-		
+		this(null, signature);
 	}
 	
 	public ImageSignature(String hash, Color[][] signature) {
 		
 		mHash = hash;
-		mSignature = signature;
-		if (signature[0].length != 5 || signature[1].length != 5 || signature[2].length != 5 || signature[3].length != 5 || signature[4].length != 5)
+		if (signature.length != SIZE || signature[0].length != 5 || signature[1].length != 5 || signature[2].length != 5 || signature[3].length != 5 || signature[4].length != 5)
 			throw new InvalidParameterException("Signature must contain 25 color elements");
 		
+		mSignature = signature;
+		mData = new byte[NUM_BYTES];
+		for (int x = 0; x < SIZE; x++) {
+			for (int y = 0; y < SIZE; y++) {
+				int i = index(x, y);
+				mData[i] = (byte) signature[x][y].getRed();
+				mData[i + 1] = (byte) signature[x][y].getGreen();
+				mData[i + 2] = (byte) signature[x][y].getBlue();
+			}
+		}
+		
 	}
 	
 	public ImageSignature(String hash, List<List<String>> signature) {
 		
 		mHash = hash;
-		mSignature = new Color[5][5];
+		mData = new byte[NUM_BYTES];
 		
-		for (int x = 0; x < 5; x++) {
+		//Straight from the hex strings to the bytes, no need to make a Color for each one
+		for (int x = 0; x < SIZE; x++) {
 			List<String> data = signature.get(x);
-			for (int y = 0; y < 5; y++) {
-				mSignature[x][y] = ImageUtils.hex2Rgb(data.get(y));
+			for (int y = 0; y < SIZE; y++) {
+				String hex = data.get(y);
+				int i = index(x, y);
+				mData[i] = (byte) Integer.parseInt(hex, 1, 3, 16);
+				mData[i + 1] = (byte) Integer.parseInt(hex, 3, 5, 16);
+				mData[i + 2] = (byte) Integer.parseInt(hex, 5, 7, 16);
 			}
 		}
 		
 	}
 	
+	/**
+	 * @param data the packed signature, as returned by getData, it's used as is and not copied
+	 */
+	public ImageSignature(String hash, byte[] data) {
+		
+		if (data == null || data.length != NUM_BYTES)
+			throw new InvalidParameterException("Signature must contain " + NUM_BYTES + " bytes");
+		mHash = hash;
+		mData = data;
+		
+	}
+	
+	private static int index(int x, int y) {
+		
+		return (x * SIZE + y) * 3;
+	}
+	
 	public void setHash(String hash) {
 		
 		mHash = hash;
@@ -85,9 +118,83 @@ public class ImageSignature {
 		return mHash;
 	}
 	
+	/**
+	 * @return the packed signature, this is the signature's own array so don't change it
+	 */
+	public byte[] getData() {
+		
+		return mData;
+	}
+	
+	/**
+	 * @return the red, green, and blue values each added up over all 25 cells, used for a quick lower bound on the distance
+	 */
+	public int[] getChannelSums() {
+		
+		int[] sums = mChannelSums;
+		if (sums == null) {
+			sums = new int[3];
+			sumChannels(mData, 0, sums, 0);
+			mChannelSums = sums;
+		}
+		return sums;
+		
+	}
+	
+	/**
+	 * Add up each channel of the packed signature starting at offset, and put the three sums into out starting at outOffset
+	 */
+	public static void sumChannels(byte[] data, int offset, int[] out, int outOffset) {
+		
+		int r = 0;
+		int g = 0;
+		int b = 0;
+		for (int i = offset; i < offset + NUM_BYTES; i += 3) {
+			r += data[i] & 0xFF;
+			g += data[i + 1] & 0xFF;
+			b += data[i + 2] & 0xFF;
+		}
+		out[outOffset] = r;
+		out[outOffset + 1] = g;
+		out[outOffset + 2] = b;
+		
+	}
+	
+	public boolean hasPerceptualHash() {
+		
+		return mHasPerceptualHash;
+	}
+	
+	/**
+	 * @return the perceptual hash, only meaningful if hasPerceptualHash is true
+	 */
+	public long getPerceptualHash() {
+		
+		return mPerceptualHash;
+	}
+	
+	public void setPerceptualHash(long perceptualHash) {
+		
+		mPerceptualHash = perceptualHash;
+		mHasPerceptualHash = true;
+		
+	}
+	
 	public Color[][] getSignature() {
 		
-		return mSignature;
+		Color[][] signature = mSignature;
+		if (signature == null) {
+			signature = new Color[SIZE][SIZE];
+			for (int x = 0; x < SIZE; x++) {
+				for (int y = 0; y < SIZE; y++) {
+					int i = index(x, y);
+					signature[x][y] = new Color(mData[i] & 0xFF, mData[i + 1] & 0xFF, mData[i + 2] & 0xFF);
+				}
+			}
+			mSignature = signature;
+		}
+		return signature;
+		
 	}
 	
 	/**
@@ -99,7 +206,7 @@ public class ImageSignature {
 		
 		List<List<String>> output = new ArrayList<>();
 		
-		for (Color[] subArr : mSignature) {
+		for (Color[] subArr : getSignature()) {
 			
 			List<String> subOut = new ArrayList<>();
 			output.add(subOut);
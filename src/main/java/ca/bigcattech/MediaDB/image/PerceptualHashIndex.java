@@ -0,0 +1,287 @@
+/*
+ *     PerceptualHashIndex
+ *     Last Modified: 2026-10-18, 10:20 p.m.
+ *     Copyright (C) 2026-10-18, 10:20 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.bigcattech.MediaDB.image;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Finds perceptual hashes within a small Hamming distance without comparing against every one, using multi-index hashing.
+ * Each 64 bit hash is split into four 16 bit bands, and each band gets a table of which hashes have which value in it.
+ * If two hashes are within r bits of each other at least one band has to be within r / 4 bits, so only the buckets that close to the query's bands need to be looked in.
+ * Signatures without a perceptual hash are ignored. Signatures can be added while it's in use, and it's safe to use from multiple threads.
+ */
+public class PerceptualHashIndex {
+	
+	private static final int NUM_BANDS = 4;
+	private static final int BAND_BITS = Long.SIZE / NUM_BANDS;
+	private static final int NUM_BUCKETS = 1 << BAND_BITS;
+	private static final int BAND_MASK = NUM_BUCKETS - 1;
+	
+	private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+	private Tables mTables = new Tables(16);
+	
+	public PerceptualHashIndex() {}
+	
+	public PerceptualHashIndex(Collection<ImageSignature> signatures) {
+		
+		load(signatures);
+	}
+	
+	/**
+	 * Throw out everything in the index and replace it with these signatures, which is a lot faster than adding them one at a time
+	 */
+	public void load(Collection<ImageSignature> signatures) {
+		
+		Tables tables = new Tables(signatures.size());
+		for (ImageSignature signature : signatures) {
+			if (signature != null && signature.hasPerceptualHash()) tables.append(signature.getHash(), signature.getPerceptualHash());
+		}
+		
+		//Size every bucket exactly, then fill them in id order
+		for (int band = 0; band < NUM_BANDS; band++) {
+			int[] sizes = tables.mBucketSizes[band];
+			for (int id = 0; id < tables.mSize; id++) {
+				sizes[bandValue(tables.mCodes[id], band)]++;
+			}
+			int[][] buckets = tables.mBuckets[band];
+			for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+				if (sizes[bucket] > 0) buckets[bucket] = new int[sizes[bucket]];
+				sizes[bucket] = 0;
+			}
+			for (int id = 0; id < tables.mSize; id++) {
+				int bucket = bandValue(tables.mCodes[id], band);
+				buckets[bucket][sizes[bucket]++] = id;
+			}
+		}
+		
+		mLock.writeLock().lock();
+		try {
+			mTables = tables;
+		}
+		finally {
+			mLock.writeLock().unlock();
+		}
+		
+	}
+	
+	public void add(ImageSignature signature) {
+		
+		if (signature == null || !signature.hasPerceptualHash()) return;
+		
+		mLock.writeLock().lock();
+		try {
+			Tables tables = mTables;
+			int id = tables.append(signature.getHash(), signature.getPerceptualHash());
+			for (int band = 0; band < NUM_BANDS; band++) {
+				tables.addToBucket(band, bandValue(signature.getPerceptualHash(), band), id);
+			}
+		}
+		finally {
+			mLock.writeLock().unlock();
+		}
+		
+	}
+	
+	public void addAll(Collection<ImageSignature> signatures) {
+		
+		for (ImageSignature signature : signatures) {
+			add(signature);
+		}
+		
+	}
+	
+	public int size() {
+		
+		mLock.readLock().lock();
+		try {
+			return mTables.mSize;
+		}
+		finally {
+			mLock.readLock().unlock();
+		}
+		
+	}
+	
+	public void clear() {
+		
+		mLock.writeLock().lock();
+		try {
+			mTables = new Tables(16);
+		}
+		finally {
+			mLock.writeLock().unlock();
+		}
+		
+	}
+	
+	/**
+	 * @return the hash and Hamming distance of every signature within maxDistance bits of the perceptual hash, closest first. Exactly the same results as comparing against every one
+	 */
+	public List<Map.Entry<String, Double>> findWithin(long perceptualHash, int maxDistance) {
+		
+		List<Map.Entry<String, Double>> results = new ArrayList<>();
+		
+		mLock.readLock().lock();
+		try {
+			Tables tables = mTables;
+			search(tables, perceptualHash, maxDistance, (id, dist) -> results.add(new AbstractMap.SimpleImmutableEntry<>(tables.mHashes[id], (double) dist)));
+		}
+		finally {
+			mLock.readLock().unlock();
+		}
+		
+		results.sort(Map.Entry.comparingByValue());
+		return results;
+		
+	}
+	
+	/**
+	 * @return the hash and Hamming distance of the k closest signatures within maxDistance bits of the perceptual hash, closest first
+	 */
+	public List<Map.Entry<String, Double>> findNearest(long perceptualHash, int k, int maxDistance) {
+		
+		if (k <= 0) return new ArrayList<>();
+		
+		BoundedHeap nearest = new BoundedHeap(k);
+		
+		mLock.readLock().lock();
+		try {
+			Tables tables = mTables;
+			search(tables, perceptualHash, maxDistance, nearest::offer);
+			return nearest.toSortedList(id -> tables.mHashes[id]);
+		}
+		finally {
+			mLock.readLock().unlock();
+		}
+		
+	}
+	
+	/**
+	 * The number of bits that differ between two perceptual hashes
+	 */
+	public static int hammingDistance(long a, long b) {
+		
+		return Long.bitCount(a ^ b);
+	}
+	
+	private static int bandValue(long code, int band) {
+		
+		return (int) (code >>> (band * BAND_BITS)) & BAND_MASK;
+	}
+	
+	private static void search(Tables tables, long code, int maxDistance, Match match) {
+		
+		if (maxDistance < 0) return;
+		//Past this many bits more than half of every band gets probed, a straight scan is cheaper
+		int bandDistance = maxDistance / NUM_BANDS;
+		if (bandDistance > 2) {
+			for (int id = 0; id < tables.mSize; id++) {
+				int dist = hammingDistance(code, tables.mCodes[id]);
+				if (dist <= maxDistance) match.found(id, dist);
+			}
+			return;
+		}
+		
+		for (int band = 0; band < NUM_BANDS; band++) {
+			probe(tables, code, maxDistance, bandDistance, band, bandValue(code, band), 0, bandDistance, match);
+		}
+		
+	}
+	
+	/**
+	 * Look in the bucket for value, then every bucket that's up to flips more bits away from it, only flipping bits from start onwards so no bucket is looked in twice
+	 */
+	private static void probe(Tables tables, long code, int maxDistance, int bandDistance, int band, int value, int start, int flips, Match match) {
+		
+		int[] bucket = tables.mBuckets[band][value];
+		int size = tables.mBucketSizes[band][value];
+		for (int i = 0; i < size; i++) {
+			
+			int id = bucket[i];
+			long other = tables.mCodes[id];
+			int dist = hammingDistance(code, other);
+			if (dist > maxDistance) continue;
+			
+			//Anything this close in an earlier band was already found there
+			boolean seen = false;
+			for (int earlier = 0; earlier < band && !seen; earlier++) {
+				seen = Integer.bitCount(bandValue(code, earlier) ^ bandValue(other, earlier)) <= bandDistance;
+			}
+			if (!seen) match.found(id, dist);
+			
+		}
+		
+		if (flips == 0) return;
+		for (int bit = start; bit < BAND_BITS; bit++) {
+			probe(tables, code, maxDistance, bandDistance, band, value ^ (1 << bit), bit + 1, flips - 1, match);
+		}
+		
+	}
+	
+	private interface Match {
+		
+		void found(int id, int distance);
+	}
+	
+	/**
+	 * Everything in the index, the buckets refer to the hashes by their position in mCodes and mHashes
+	 */
+	private static final class Tables {
+		
+		private long[] mCodes;
+		private String[] mHashes;
+		private int mSize = 0;
+		private final int[][][] mBuckets = new int[NUM_BANDS][NUM_BUCKETS][];
+		private final int[][] mBucketSizes = new int[NUM_BANDS][NUM_BUCKETS];
+		
+		private Tables(int capacity) {
+			
+			mCodes = new long[Math.max(16, capacity)];
+			mHashes = new String[mCodes.length];
+			
+		}
+		
+		private int append(String hash, long code) {
+			
+			if (mSize == mCodes.length) {
+				mCodes = Arrays.copyOf(mCodes, mSize * 2);
+				mHashes = Arrays.copyOf(mHashes, mSize * 2);
+			}
+			mCodes[mSize] = code;
+			mHashes[mSize] = hash;
+			return mSize++;
+			
+		}
+		
+		private void addToBucket(int band, int value, int id) {
+			
+			int[] bucket = mBuckets[band][value];
+			int size = mBucketSizes[band][value];
+			if (bucket == null) bucket = mBuckets[band][value] = new int[4];
+			else if (size == bucket.length) bucket = mBuckets[band][value] = Arrays.copyOf(bucket, size * 2);
+			bucket[size] = id;
+			mBucketSizes[band][value] = size + 1;
+			
+		}
+		
+	}
+	
+}
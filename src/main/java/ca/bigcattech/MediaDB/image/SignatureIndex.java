@@ -0,0 +1,389 @@
+/*
+ *     SignatureIndex
+ *     Last Modified: 2026-10-18, 9:20 p.m.
+ *     Copyright (C) 2026-10-18, 9:20 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.MediaDB.image;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A vantage point tree over image signatures, so similarity searches only compare against the part of the library that could be close enough.
+ * Each branch picks one signature and splits the rest by whether they're closer to it than the median distance, the distance is a true metric so whole branches can be skipped.
+ * Signatures can be added one at a time while it's in use, leaves just grow and split when they get too big. Safe to use from multiple threads.
+ */
+public class SignatureIndex {
+	
+	private static final int LEAF_SIZE = 64;
+	//Floating point rounding can break the triangle inequality by a hair, so prune a little less eagerly than the math says to never lose a result
+	private static final double SLACK = SimilarityFinder.SLACK;
+	
+	private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+	//Everything in the index, the tree refers to them by their position in here
+	private List<ImageSignature> mSignatures = new ArrayList<>();
+	private Node mRoot = Node.leaf(mSignatures, new int[0], 0);
+	
+	public SignatureIndex() {}
+	
+	public SignatureIndex(Collection<ImageSignature> signatures) {
+		
+		load(signatures);
+	}
+	
+	/**
+	 * Throw out everything in the index and build a balanced one from these signatures, which is a lot faster than adding them one at a time
+	 */
+	public void load(Collection<ImageSignature> signatures) {
+		
+		List<ImageSignature> list = new ArrayList<>(signatures.size());
+		for (ImageSignature signature : signatures) {
+			if (signature != null) list.add(signature);
+		}
+		int[] ids = new int[list.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = i;
+		}
+		Node root = build(list, ids, ids.length);
+		
+		mLock.writeLock().lock();
+		try {
+			mSignatures = list;
+			mRoot = root;
+		}
+		finally {
+			mLock.writeLock().unlock();
+		}
+		
+	}
+	
+	public void add(ImageSignature signature) {
+		
+		if (signature == null) return;
+		
+		mLock.writeLock().lock();
+		try {
+			
+			int id = mSignatures.size();
+			mSignatures.add(signature);
+			
+			Node node = mRoot;
+			while (!node.isLeaf()) {
+				double dist = SimilarityFinder.calcDistance(mSignatures.get(node.mVantage).getData(), signature.getData());
+				if (dist < node.mRadius) {
+					if (node.mInside == null) node.mInside = Node.leaf(mSignatures, new int[0], 0);
+					node.mInsideMin = Math.min(node.mInsideMin, dist);
+					node.mInsideMax = Math.max(node.mInsideMax, dist);
+					node = node.mInside;
+				}
+				else {
+					if (node.mOutside == null) node.mOutside = Node.leaf(mSignatures, new int[0], 0);
+					node.mOutsideMin = Math.min(node.mOutsideMin, dist);
+					node.mOutsideMax = Math.max(node.mOutsideMax, dist);
+					node = node.mOutside;
+				}
+			}
+			
+			node.add(id, signature);
+			if (node.mSize > node.mSplitAt) {
+				Node split = build(mSignatures, node.mIds, node.mSize);
+				//If nothing could be split off, everything in the leaf is identical, so wait until it doubles before trying again
+				if (split.isLeaf()) node.mSplitAt = node.mSize * 2;
+				else node.replaceWith(split);
+			}
+			
+		}
+		finally {
+			mLock.writeLock().unlock();
+		}
+		
+	}
+	
+	public void addAll(Collection<ImageSignature> signatures) {
+		
+		for (ImageSignature signature : signatures) {
+			add(signature);
+		}
+		
+	}
+	
+	public int size() {
+		
+		mLock.readLock().lock();
+		try {
+			return mSignatures.size();
+		}
+		finally {
+			mLock.readLock().unlock();
+		}
+		
+	}
+	
+	public void clear() {
+		
+		mLock.writeLock().lock();
+		try {
+			mSignatures = new ArrayList<>();
+			mRoot = Node.leaf(mSignatures, new int[0], 0);
+		}
+		finally {
+			mLock.writeLock().unlock();
+		}
+		
+	}
+	
+	/**
+	 * @return the hash and distance of every signature within the radius, closest first. Exactly the same results as comparing against every signature
+	 */
+	public List<Map.Entry<String, Double>> findWithin(ImageSignature signature, double radius) {
+		
+		List<Map.Entry<String, Double>> results = new ArrayList<>();
+		
+		mLock.readLock().lock();
+		try {
+			findWithin(mRoot, signature.getData(), signature.getChannelSums(), radius, results);
+		}
+		finally {
+			mLock.readLock().unlock();
+		}
+		
+		results.sort(Map.Entry.comparingByValue());
+		return results;
+		
+	}
+	
+	private void findWithin(Node node, byte[] data, int[] sums, double radius, List<Map.Entry<String, Double>> results) {
+		
+		if (node.isLeaf()) {
+			for (int i = 0; i < node.mSize; i++) {
+				if (!SimilarityFinder.mightBeWithin(sums, node.mSums, i * 3, radius)) continue;
+				double dist = SimilarityFinder.calcDistance(data, node.mPacked, i * ImageSignature.NUM_BYTES, radius);
+				if (dist <= radius) results.add(new AbstractMap.SimpleImmutableEntry<>(mSignatures.get(node.mIds[i]).getHash(), dist));
+			}
+			return;
+		}
+		
+		ImageSignature vantage = mSignatures.get(node.mVantage);
+		double dist = SimilarityFinder.calcDistance(data, vantage.getData());
+		if (dist <= radius) results.add(new AbstractMap.SimpleImmutableEntry<>(vantage.getHash(), dist));
+		
+		//By the triangle inequality, nothing in a child can be within the radius unless the radius overlaps the range of distances the child covers
+		if (node.mInside != null && dist + radius >= node.mInsideMin - SLACK && dist - radius <= node.mInsideMax + SLACK)
+			findWithin(node.mInside, data, sums, radius, results);
+		if (node.mOutside != null && dist + radius >= node.mOutsideMin - SLACK && dist - radius <= node.mOutsideMax + SLACK)
+			findWithin(node.mOutside, data, sums, radius, results);
+		
+	}
+	
+	/**
+	 * @return the hash and distance of the k closest signatures, closest first
+	 */
+	public List<Map.Entry<String, Double>> findNearest(ImageSignature signature, int k) {
+		
+		return findNearest(signature, k, Double.POSITIVE_INFINITY);
+	}
+	
+	/**
+	 * @return the hash and distance of the k closest signatures that are within the radius, closest first
+	 */
+	public List<Map.Entry<String, Double>> findNearest(ImageSignature signature, int k, double radius) {
+		
+		if (k <= 0) return new ArrayList<>();
+		
+		BoundedHeap nearest = new BoundedHeap(k);
+		
+		mLock.readLock().lock();
+		try {
+			findNearest(mRoot, signature.getData(), signature.getChannelSums(), radius, nearest);
+			List<ImageSignature> signatures = mSignatures;
+			return nearest.toSortedList(id -> signatures.get(id).getHash());
+		}
+		finally {
+			mLock.readLock().unlock();
+		}
+		
+	}
+	
+	private void findNearest(Node node, byte[] data, int[] sums, double radius, BoundedHeap nearest) {
+		
+		if (node.isLeaf()) {
+			for (int i = 0; i < node.mSize; i++) {
+				//Only worth working out if it could beat the furthest one we've got
+				double limit = Math.min(radius, nearest.getLimit());
+				if (!SimilarityFinder.mightBeWithin(sums, node.mSums, i * 3, limit)) continue;
+				double dist = SimilarityFinder.calcDistance(data, node.mPacked, i * ImageSignature.NUM_BYTES, limit);
+				if (dist <= radius) nearest.offer(node.mIds[i], dist);
+			}
+			return;
+		}
+		
+		double dist = SimilarityFinder.calcDistance(data, mSignatures.get(node.mVantage).getData());
+		if (dist <= radius) nearest.offer(node.mVantage, dist);
+		
+		//The closest anything in each child could possibly be
+		double insideBound = node.mInside == null ? Double.POSITIVE_INFINITY : Math.max(0, Math.max(node.mInsideMin - dist, dist - node.mInsideMax));
+		double outsideBound = node.mOutside == null ? Double.POSITIVE_INFINITY : Math.max(0, Math.max(node.mOutsideMin - dist, dist - node.mOutsideMax));
+		
+		//Look at the closer side first, so the furthest match shrinks quickly and the other side can usually be skipped
+		boolean insideFirst = insideBound <= outsideBound;
+		findNearestIn(insideFirst ? node.mInside : node.mOutside, insideFirst ? insideBound : outsideBound, data, sums, radius, nearest);
+		findNearestIn(insideFirst ? node.mOutside : node.mInside, insideFirst ? outsideBound : insideBound, data, sums, radius, nearest);
+		
+	}
+	
+	private void findNearestIn(Node node, double bound, byte[] data, int[] sums, double radius, BoundedHeap nearest) {
+		
+		if (node == null || bound > Math.min(radius, nearest.getLimit()) + SLACK) return;
+		findNearest(node, data, sums, radius, nearest);
+		
+	}
+	
+	/**
+	 * Build a subtree out of the first count ids, splitting around the median distance from a vantage point until the leaves are small enough
+	 */
+	private static Node build(List<ImageSignature> signatures, int[] ids, int count) {
+		
+		if (count <= LEAF_SIZE) return Node.leaf(signatures, ids, count);
+		
+		//The middle one is as good as a random pick, and stays the same from run to run
+		int vantage = ids[count / 2];
+		int[] rest = new int[count - 1];
+		byte[][] restData = new byte[count - 1][];
+		for (int i = 0, j = 0; i < count; i++) {
+			if (i == count / 2) continue;
+			rest[j] = ids[i];
+			restData[j++] = signatures.get(ids[i]).getData();
+		}
+		
+		double[] distances = new double[rest.length];
+		SimilarityFinder.calcDistances(signatures.get(vantage).getData(), restData, rest.length, distances);
+		
+		double[] sorted = distances.clone();
+		Arrays.sort(sorted);
+		double radius = sorted[sorted.length / 2];
+		if (radius == sorted[0]) {
+			//At least half are tied for closest, split just past them instead
+			int next = Arrays.binarySearch(sorted, Math.nextUp(radius));
+			if (next < 0) next = -next - 1;
+			//Everything's the same distance away, there's nothing to split on
+			if (next >= sorted.length) return Node.leaf(signatures, ids, count);
+			radius = sorted[next];
+		}
+		
+		Node node = new Node();
+		node.mVantage = vantage;
+		node.mRadius = radius;
+		
+		int[] inside = new int[rest.length];
+		int[] outside = new int[rest.length];
+		int numInside = 0;
+		int numOutside = 0;
+		for (int i = 0; i < rest.length; i++) {
+			if (distances[i] < radius) {
+				inside[numInside++] = rest[i];
+				node.mInsideMin = Math.min(node.mInsideMin, distances[i]);
+				node.mInsideMax = Math.max(node.mInsideMax, distances[i]);
+			}
+			else {
+				outside[numOutside++] = rest[i];
+				node.mOutsideMin = Math.min(node.mOutsideMin, distances[i]);
+				node.mOutsideMax = Math.max(node.mOutsideMax, distances[i]);
+			}
+		}
+		
+		node.mInside = build(signatures, inside, numInside);
+		node.mOutside = build(signatures, outside, numOutside);
+		return node;
+		
+	}
+	
+	private static final class Node {
+		
+		//Branches, along with the range of distances from the vantage point each side covers
+		private int mVantage;
+		private double mRadius;
+		private Node mInside;
+		private Node mOutside;
+		private double mInsideMin = Double.POSITIVE_INFINITY;
+		private double mInsideMax = Double.NEGATIVE_INFINITY;
+		private double mOutsideMin = Double.POSITIVE_INFINITY;
+		private double mOutsideMax = Double.NEGATIVE_INFINITY;
+		
+		//Leaves, the data and channel sums are copied back to back so they sit together in memory
+		private int[] mIds;
+		private byte[] mPacked;
+		private int[] mSums;
+		private int mSize;
+		private int mSplitAt;
+		
+		private static Node leaf(List<ImageSignature> signatures, int[] ids, int count) {
+			
+			Node node = new Node();
+			node.mIds = Arrays.copyOf(ids, Math.max(8, count));
+			node.mPacked = new byte[node.mIds.length * ImageSignature.NUM_BYTES];
+			node.mSums = new int[node.mIds.length * 3];
+			for (int i = 0; i < count; i++) {
+				ImageSignature signature = signatures.get(ids[i]);
+				System.arraycopy(signature.getData(), 0, node.mPacked, i * ImageSignature.NUM_BYTES, ImageSignature.NUM_BYTES);
+				System.arraycopy(signature.getChannelSums(), 0, node.mSums, i * 3, 3);
+			}
+			node.mSize = count;
+			node.mSplitAt = Math.max(LEAF_SIZE, count * 2);
+			return node;
+			
+		}
+		
+		private boolean isLeaf() {
+			
+			return mIds != null;
+		}
+		
+		private void add(int id, ImageSignature signature) {
+			
+			if (mSize == mIds.length) {
+				mIds = Arrays.copyOf(mIds, mSize * 2);
+				mPacked = Arrays.copyOf(mPacked, mSize * 2 * ImageSignature.NUM_BYTES);
+				mSums = Arrays.copyOf(mSums, mSize * 2 * 3);
+			}
+			mIds[mSize] = id;
+			System.arraycopy(signature.getData(), 0, mPacked, mSize * ImageSignature.NUM_BYTES, ImageSignature.NUM_BYTES);
+			System.arraycopy(signature.getChannelSums(), 0, mSums, mSize++ * 3, 3);
+			
+		}
+		
+		private void replaceWith(Node node) {
+			
+			mVantage = node.mVantage;
+			mRadius = node.mRadius;
+			mInside = node.mInside;
+			mOutside = node.mOutside;
+			mInsideMin = node.mInsideMin;
+			mInsideMax = node.mInsideMax;
+			mOutsideMin = node.mOutsideMin;
+			mOutsideMax = node.mOutsideMax;
+			mIds = node.mIds;
+			mPacked = node.mPacked;
+			mSums = node.mSums;
+			mSize = node.mSize;
+			mSplitAt = node.mSplitAt;
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,174 @@
+/*
+ *     SignatureRegistry
+ *     Last Modified: 2026-10-18, 11:48 p.m.
+ *     Copyright (C) 2026-10-18, 11:48 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.bigcattech.MediaDB.image;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An append only list of signatures kept in chunks of primitive arrays, the packed bytes, channel sums, and perceptual hashes of CHUNK_SIZE signatures in each.
+ * Adding is synchronized, reading never locks. Readers take a snapshot, which sees everything added before it was taken and nothing after, and stays the same however much is added or cleared later.
+ * Nothing is ever copied except the list of chunks when it needs to grow, written records are never touched again so snapshots can share them.
+ */
+public class SignatureRegistry {
+	
+	//A multiple of the search block size, so a block never straddles two chunks
+	static final int CHUNK_SIZE = 4096;
+	private static final int CHUNK_BITS = Integer.numberOfTrailingZeros(CHUNK_SIZE);
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	
+	//Replaced, never changed, on every add, which is what publishes the new record to readers
+	private volatile Snapshot mSnapshot = new Snapshot(new Chunk[4], 0);
+	
+	public synchronized void add(ImageSignature signature) {
+		
+		if (signature == null) return;
+		
+		Snapshot snapshot = mSnapshot;
+		int id = snapshot.mSize;
+		int chunkIndex = id >>> CHUNK_BITS;
+		
+		Chunk[] chunks = snapshot.mChunks;
+		if (chunkIndex == chunks.length) chunks = Arrays.copyOf(chunks, chunks.length * 2);
+		if (chunks[chunkIndex] == null) chunks[chunkIndex] = new Chunk();
+		chunks[chunkIndex].set(id & CHUNK_MASK, signature);
+		
+		mSnapshot = new Snapshot(chunks, id + 1);
+		
+	}
+	
+	public void addAll(Collection<ImageSignature> signatures) {
+		
+		for (ImageSignature signature : signatures) {
+			add(signature);
+		}
+		
+	}
+	
+	/**
+	 * Start over empty, snapshots that were already taken keep what they had
+	 */
+	public synchronized void clear() {
+		
+		mSnapshot = new Snapshot(new Chunk[4], 0);
+	}
+	
+	public int size() {
+		
+		return mSnapshot.mSize;
+	}
+	
+	public Snapshot snapshot() {
+		
+		return mSnapshot;
+	}
+	
+	/**
+	 * Everything that was in the registry at one point in time, ids run from 0 up to size. Safe to share between threads
+	 */
+	public static final class Snapshot {
+		
+		private final Chunk[] mChunks;
+		private final int mSize;
+		
+		private Snapshot(Chunk[] chunks, int size) {
+			
+			mChunks = chunks;
+			mSize = size;
+			
+		}
+		
+		public int size() {
+			
+			return mSize;
+		}
+		
+		public String getHash(int id) {
+			
+			return chunk(id).mHashes[id & CHUNK_MASK];
+		}
+		
+		public boolean hasPerceptualHash(int id) {
+			
+			return chunk(id).mHasPerceptualHash[id & CHUNK_MASK];
+		}
+		
+		public long getPerceptualHash(int id) {
+			
+			return chunk(id).mPerceptualHashes[id & CHUNK_MASK];
+		}
+		
+		/**
+		 * @return a new ImageSignature with a copy of the record
+		 */
+		public ImageSignature getSignature(int id) {
+			
+			Chunk chunk = chunk(id);
+			int index = id & CHUNK_MASK;
+			ImageSignature signature = new ImageSignature(chunk.mHashes[index], Arrays.copyOfRange(chunk.mPacked, index * ImageSignature.NUM_BYTES, (index + 1) * ImageSignature.NUM_BYTES));
+			if (chunk.mHasPerceptualHash[index]) signature.setPerceptualHash(chunk.mPerceptualHashes[index]);
+			return signature;
+			
+		}
+		
+		/**
+		 * @return the packed signatures of the chunk holding id, the record is at (id % CHUNK_SIZE) * NUM_BYTES. Don't change it
+		 */
+		byte[] getPacked(int id) {
+			
+			return chunk(id).mPacked;
+		}
+		
+		/**
+		 * @return the channel sums of the chunk holding id, the record's are at (id % CHUNK_SIZE) * 3. Don't change it
+		 */
+		int[] getSums(int id) {
+			
+			return chunk(id).mSums;
+		}
+		
+		private Chunk chunk(int id) {
+			
+			if (id < 0 || id >= mSize) throw new IndexOutOfBoundsException("Id " + id + " out of bounds for size " + mSize);
+			return mChunks[id >>> CHUNK_BITS];
+		}
+		
+	}
+	
+	private static final class Chunk {
+		
+		private final byte[] mPacked = new byte[CHUNK_SIZE * ImageSignature.NUM_BYTES];
+		private final int[] mSums = new int[CHUNK_SIZE * 3];
+		private final long[] mPerceptualHashes = new long[CHUNK_SIZE];
+		private final boolean[] mHasPerceptualHash = new boolean[CHUNK_SIZE];
+		private final String[] mHashes = new String[CHUNK_SIZE];
+		
+		private void set(int index, ImageSignature signature) {
+			
+			System.arraycopy(signature.getData(), 0, mPacked, index * ImageSignature.NUM_BYTES, ImageSignature.NUM_BYTES);
+			System.arraycopy(signature.getChannelSums(), 0, mSums, index * 3, 3);
+			mPerceptualHashes[index] = signature.getPerceptualHash();
+			mHasPerceptualHash[index] = signature.hasPerceptualHash();
+			mHashes[index] = signature.getHash();
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,400 @@
+/*
+ *     SignatureStore
+ *     Last Modified: 2026-10-18, 10:50 p.m.
+ *     Copyright (C) 2026-10-18, 10:50 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.MediaDB.image;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A local copy of every ImageSignature in a memory mapped file, so the whole library can be scanned straight away without loading or parsing anything.
+ * Records are fixed width, the hash, the packed signature, its channel sums, the perceptual hash, and a set of flags. New signatures are only ever appended, a replaced or removed one just gets flagged.
+ * Reading is lock free and safe while another thread is appending, writing is synchronized. The database is always the real copy, this gets reconciled against it on startup.
+ * The header also keeps the database's signature revision the records are known to be up to date with, so a change that never made it into the file can be noticed.
+ */
+public class SignatureStore implements Closeable {
+	
+	private static final Logger log = LoggerFactory.getLogger(SignatureStore.class);
+	
+	private static final int MAGIC = 0x4D444253;
+	private static final int VERSION = 3;
+	//Magic, version, number of records, 4 spare bytes, and the revision
+	private static final int HEADER_SIZE = 24;
+	private static final int COUNT_OFFSET = 8;
+	private static final int REVISION_OFFSET = 16;
+	
+	//SHA-256 in hex, shorter hashes are padded with zeros
+	public static final int HASH_SIZE = 64;
+	private static final int DATA_OFFSET = HASH_SIZE;
+	private static final int SUMS_OFFSET = DATA_OFFSET + ImageSignature.NUM_BYTES;
+	private static final int PERCEPTUAL_HASH_OFFSET = SUMS_OFFSET + 6;
+	private static final int FLAGS_OFFSET = PERCEPTUAL_HASH_OFFSET + 8;
+	public static final int RECORD_SIZE = FLAGS_OFFSET + 1;
+	private static final byte FLAG_REMOVED = 1;
+	private static final byte FLAG_PERCEPTUAL_HASH = 2;
+	
+	//A single mapping can't be bigger than 2GB, which is still nearly 14 million signatures
+	public static final int MAX_RECORDS = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+	private static final int MIN_CAPACITY = 1024;
+	
+	private final FileChannel mChannel;
+	//Swapped for a bigger one as the file grows, readers hang on to whichever one they started with, which stays valid
+	private volatile MappedByteBuffer mBuffer;
+	//Only ever goes up, and is only raised after the record is written, so anything under it is safe to read
+	private volatile int mCount;
+	
+	//Only touched while holding the lock on this, built the first time something needs it
+	private Map<String, Integer> mRecords = null;
+	private int mNumRemoved = 0;
+	
+	private SignatureStore(FileChannel channel, MappedByteBuffer buffer, int count) {
+		
+		mChannel = channel;
+		mBuffer = buffer;
+		mCount = count;
+		
+	}
+	
+	/**
+	 * Open the file, or create an empty one if it doesn't exist
+	 *
+	 * @throws IOException if the file can't be opened or isn't a signature file
+	 */
+	public static SignatureStore open(File file) throws IOException {
+		
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		try {
+			
+			if (channel.size() < HEADER_SIZE) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) MIN_CAPACITY * RECORD_SIZE);
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(COUNT_OFFSET, 0);
+				buffer.putLong(REVISION_OFFSET, 0);
+				return new SignatureStore(channel, buffer, 0);
+			}
+			
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Integer.MAX_VALUE, channel.size()));
+			if (buffer.getInt(0) != MAGIC) throw new IOException(file + " isn't a signature file");
+			if (buffer.getInt(4) != VERSION) throw new IOException(file + " is signature file version " + buffer.getInt(4) + ", expected " + VERSION);
+			
+			//If we went down partway through growing the file, only trust the records that actually fit
+			int count = buffer.getInt(COUNT_OFFSET);
+			int fits = (int) ((buffer.capacity() - HEADER_SIZE) / RECORD_SIZE);
+			if (count < 0 || count > fits) {
+				log.warn("Signature file says it has {} records but only {} fit, truncating", count, fits);
+				count = Math.max(0, Math.min(count, fits));
+				buffer.putInt(COUNT_OFFSET, count);
+			}
+			
+			return new SignatureStore(channel, buffer, count);
+			
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		
+	}
+	
+	/**
+	 * @return the number of records, including removed ones, ids run from 0 up to this
+	 */
+	public int getNumRecords() {
+		
+		return mCount;
+	}
+	
+	/**
+	 * @return the number of signatures that haven't been removed
+	 */
+	public synchronized int size() {
+		
+		return mCount - getNumRemoved();
+	}
+	
+	/**
+	 * @return the database revision the records were last known to match, 0 for a new file
+	 */
+	public long getRevision() {
+		
+		return mBuffer.getLong(REVISION_OFFSET);
+	}
+	
+	/**
+	 * Only set this once every change up to the revision is in the file
+	 */
+	public synchronized void setRevision(long revision) {
+		
+		mBuffer.putLong(REVISION_OFFSET, revision);
+	}
+	
+	public boolean isRemoved(int id) {
+		
+		return (mBuffer.get(offset(id) + FLAGS_OFFSET) & FLAG_REMOVED) != 0;
+	}
+	
+	public boolean hasPerceptualHash(int id) {
+		
+		return (mBuffer.get(offset(id) + FLAGS_OFFSET) & FLAG_PERCEPTUAL_HASH) != 0;
+	}
+	
+	/**
+	 * @return the record's perceptual hash, only meaningful if hasPerceptualHash is true
+	 */
+	public long getPerceptualHash(int id) {
+		
+		return mBuffer.getLong(offset(id) + PERCEPTUAL_HASH_OFFSET);
+	}
+	
+	public String getHash(int id) {
+		
+		ByteBuffer buffer = mBuffer;
+		int offset = offset(id);
+		byte[] hash = new byte[HASH_SIZE];
+		buffer.get(offset, hash);
+		int length = 0;
+		while (length < HASH_SIZE && hash[length] != 0) length++;
+		return new String(hash, 0, length, StandardCharsets.ISO_8859_1);
+		
+	}
+	
+	/**
+	 * Copy the packed signature of a record into out, starting at outOffset
+	 */
+	public void getData(int id, byte[] out, int outOffset) {
+		
+		mBuffer.get(offset(id) + DATA_OFFSET, out, outOffset, ImageSignature.NUM_BYTES);
+	}
+	
+	/**
+	 * Copy the red, green, and blue sums of a record into out, starting at outOffset
+	 */
+	public void getChannelSums(int id, int[] out, int outOffset) {
+		
+		ByteBuffer buffer = mBuffer;
+		int offset = offset(id) + SUMS_OFFSET;
+		out[outOffset] = buffer.getShort(offset) & 0xFFFF;
+		out[outOffset + 1] = buffer.getShort(offset + 2) & 0xFFFF;
+		out[outOffset + 2] = buffer.getShort(offset + 4) & 0xFFFF;
+		
+	}
+	
+	public ImageSignature getSignature(int id) {
+		
+		byte[] data = new byte[ImageSignature.NUM_BYTES];
+		getData(id, data, 0);
+		ImageSignature signature = new ImageSignature(getHash(id), data);
+		if (hasPerceptualHash(id)) signature.setPerceptualHash(getPerceptualHash(id));
+		return signature;
+		
+	}
+	
+	/**
+	 * @return every signature that hasn't been removed, in the order they were added
+	 */
+	public List<ImageSignature> loadAll() {
+		
+		return load(0, mCount);
+	}
+	
+	/**
+	 * @return the signatures that haven't been removed from the records between from and to
+	 */
+	public List<ImageSignature> load(int from, int to) {
+		
+		List<ImageSignature> signatures = new ArrayList<>(Math.max(0, to - from));
+		for (int id = from; id < to; id++) {
+			if (!isRemoved(id)) signatures.add(getSignature(id));
+		}
+		return signatures;
+		
+	}
+	
+	/**
+	 * Add a signature, flagging any older one with the same hash as removed. Does nothing if the same signature is already there
+	 */
+	public synchronized void put(ImageSignature signature) {
+		
+		byte[] hash = encodeHash(signature.getHash());
+		Map<String, Integer> records = getRecords();
+		
+		Integer existing = records.get(signature.getHash());
+		if (existing != null) {
+			byte[] data = new byte[ImageSignature.NUM_BYTES];
+			getData(existing, data, 0);
+			boolean samePerceptualHash = hasPerceptualHash(existing) == signature.hasPerceptualHash() && getPerceptualHash(existing) == signature.getPerceptualHash();
+			if (Arrays.equals(data, signature.getData()) && samePerceptualHash) return;
+			markRemoved(existing);
+		}
+		
+		int id = mCount;
+		if (id >= MAX_RECORDS) throw new IllegalStateException("Signature file is full");
+		ensureCapacity(id + 1);
+		
+		MappedByteBuffer buffer = mBuffer;
+		int offset = offset(id);
+		buffer.put(offset, hash);
+		buffer.put(offset + DATA_OFFSET, signature.getData());
+		int[] sums = signature.getChannelSums();
+		buffer.putShort(offset + SUMS_OFFSET, (short) sums[0]);
+		buffer.putShort(offset + SUMS_OFFSET + 2, (short) sums[1]);
+		buffer.putShort(offset + SUMS_OFFSET + 4, (short) sums[2]);
+		buffer.putLong(offset + PERCEPTUAL_HASH_OFFSET, signature.getPerceptualHash());
+		buffer.put(offset + FLAGS_OFFSET, signature.hasPerceptualHash() ? FLAG_PERCEPTUAL_HASH : 0);
+		
+		buffer.putInt(COUNT_OFFSET, id + 1);
+		records.put(signature.getHash(), id);
+		mCount = id + 1;
+		
+	}
+	
+	public synchronized void remove(String hash) {
+		
+		Integer existing = getRecords().remove(hash);
+		if (existing != null) markRemoved(existing);
+		
+	}
+	
+	/**
+	 * @return if there's a signature with this hash that hasn't been removed
+	 */
+	public synchronized boolean contains(String hash) {
+		
+		return getRecords().containsKey(hash);
+	}
+	
+	/**
+	 * @return the hash of every signature that hasn't been removed
+	 */
+	public synchronized Set<String> getHashes() {
+		
+		return new HashSet<>(getRecords().keySet());
+	}
+	
+	/**
+	 * Throw out every record, the file keeps its size and the revision is left as it is
+	 */
+	public synchronized void clear() {
+		
+		mBuffer.putInt(COUNT_OFFSET, 0);
+		mCount = 0;
+		mRecords = new HashMap<>();
+		mNumRemoved = 0;
+		
+	}
+	
+	/**
+	 * @return the number of removed records taking up space, the file can be rebuilt with clear and put when this gets large
+	 */
+	public synchronized int getNumRemoved() {
+		
+		getRecords();
+		return mNumRemoved;
+		
+	}
+	
+	/**
+	 * Make sure everything's been written out to the disk
+	 */
+	public synchronized void flush() {
+		
+		mBuffer.force();
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		
+		flush();
+		mChannel.close();
+		
+	}
+	
+	private void markRemoved(int id) {
+		
+		int offset = offset(id) + FLAGS_OFFSET;
+		mBuffer.put(offset, (byte) (mBuffer.get(offset) | FLAG_REMOVED));
+		mNumRemoved++;
+		
+	}
+	
+	private Map<String, Integer> getRecords() {
+		
+		if (mRecords == null) {
+			Map<String, Integer> records = new HashMap<>(mCount * 2);
+			int removed = 0;
+			for (int id = 0; id < mCount; id++) {
+				if (isRemoved(id)) {
+					removed++;
+					continue;
+				}
+				//A crash between appending a replacement and flagging the old one can leave two, the newer one wins
+				Integer old = records.put(getHash(id), id);
+				if (old != null) {
+					markRemoved(old);
+					removed++;
+				}
+			}
+			mRecords = records;
+			mNumRemoved = removed;
+		}
+		return mRecords;
+		
+	}
+	
+	private void ensureCapacity(int records) {
+		
+		long needed = HEADER_SIZE + (long) records * RECORD_SIZE;
+		if (needed <= mBuffer.capacity()) return;
+		
+		long capacity = Math.max(MIN_CAPACITY, Math.min(MAX_RECORDS, Math.max(records, (long) (mBuffer.capacity() - HEADER_SIZE) / RECORD_SIZE * 2)));
+		try {
+			mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity * RECORD_SIZE);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Failed to grow the signature file", e);
+		}
+		
+	}
+	
+	private static int offset(int id) {
+		
+		return HEADER_SIZE + id * RECORD_SIZE;
+	}
+	
+	private static byte[] encodeHash(String hash) {
+		
+		if (hash == null || hash.isEmpty()) throw new IllegalArgumentException("Signature has no hash");
+		byte[] bytes = hash.getBytes(StandardCharsets.ISO_8859_1);
+		if (bytes.length > HASH_SIZE) throw new IllegalArgumentException("Hash " + hash + " is longer than " + HASH_SIZE + " characters");
+		return Arrays.copyOf(bytes, HASH_SIZE);
+		
+	}
+	
+}
@@ -22,16 +22,25 @@ package ca.bigcattech.MediaDB.image;
 import ca.bigcattech.MediaDB.db.DBHandler;
 import ca.bigcattech.MediaDB.utils.ImageUtils;
 import ca.bigcattech.MediaDB.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.awt.*;
-import java.awt.image.DataBuffer;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.RandomAccess;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 /*
 Code largely based on https://web.archive.org/web/20160406063419/http://www.lac.inpe.br/JIPCookbook/6050-howto-compareimages.jsp
@@ -39,81 +48,340 @@ Code largely based on https://web.archive.org/web/20160406063419/http://www.lac.
 
 public class SimilarityFinder {
 	
+	private static final Logger log = LoggerFactory.getLogger(SimilarityFinder.class);
+	
+	//Anything further apart than this isn't considered similar at all
+	public static final double MAX_DISTANCE = 1000;
+	//Floating point rounding can make a computed distance come out a hair under a bound that's true on paper, so bounds are only trusted past this
+	static final double SLACK = 1e-6;
+	
+	//How many candidates each parallel task compares at once
+	private static final int BLOCK_SIZE = 256;
+	//Width and height of the window of pixels averaged for each cell of the signature
+	private static final int SAMPLE_SIZE = 30;
+	//Where the windows are centred, as floats because that's what the stored signatures were worked out with, and float rounding moves some windows over a pixel
+	private static final float[] SAMPLE_CENTRES = {1f / 10f, 3f / 10f, 5f / 10f, 7f / 10f, 9f / 10f};
+	//The difference hash compares each of these cells with the one to its right, 8 rows of 8 comparisons
+	private static final int HASH_COLUMNS = 9;
+	private static final int HASH_ROWS = 8;
+	//Null when the Vector API isn't there, then everything uses the scalar loop
+	private static final DistanceKernel VECTOR_KERNEL = loadVectorKernel();
+	
 	private final DBHandler mDBHandler;
+	private final SignatureRegistry mRecent;
 	
 	public SimilarityFinder(DBHandler dbHandler) {
+		this(dbHandler, new SignatureRegistry());
+	}
+	
+	/**
+	 * @param recent signatures that aren't in the database's list of them yet, like the ones ingested since we started, which get searched along with it
+	 */
+	public SimilarityFinder(DBHandler dbHandler, SignatureRegistry recent) {
 		mDBHandler = dbHandler;
+		mRecent = recent;
+	}
+	
+	public static double calcDistance(ImageSignature signature, ImageSignature signatureOther) {
+		
+		return calcDistance(signature.getData(), signatureOther.getData());
+	}
+	
+	/**
+	 * The sum of the straight line RGB distance between each of the 25 cells, works right on the packed bytes so there's nothing to allocate or call per cell.
+	 * Cells are added in the same order as always, so the results are exactly the same as the old Color based version.
+	 *
+	 * @param signature      packed signature, see ImageSignature.getData
+	 * @param signatureOther packed signature to compare against
+	 */
+	public static double calcDistance(byte[] signature, byte[] signatureOther) {
+		
+		return calcDistance(signature, signatureOther, 0);
 	}
 	
-	private static double calcDistance(ImageSignature signature, ImageSignature signatureOther) {
+	/**
+	 * @param others packed signatures back to back
+	 * @param offset where in others the signature to compare against starts
+	 */
+	public static double calcDistance(byte[] signature, byte[] others, int offset) {
 		
 		double dist = 0;
-		for (int x = 0; x < 5; x++) {
-			for (int y = 0; y < 5; y++) {
-				
-				int r1 = signature.getSignature()[x][y].getRed();
-				int g1 = signature.getSignature()[x][y].getGreen();
-				int b1 = signature.getSignature()[x][y].getBlue();
-				int r2 = signatureOther.getSignature()[x][y].getRed();
-				int g2 = signatureOther.getSignature()[x][y].getGreen();
-				int b2 = signatureOther.getSignature()[x][y].getBlue();
-				double tempDist = Math.sqrt(Math.pow(r1 - r2, 2) + Math.pow(g1 - g2, 2) + Math.pow(b1 - b2, 2));
-				dist += tempDist;
-				
-			}
+		for (int i = 0; i < ImageSignature.NUM_BYTES; i += 3) {
+			
+			int r = (signature[i] & 0xFF) - (others[offset + i] & 0xFF);
+			int g = (signature[i + 1] & 0xFF) - (others[offset + i + 1] & 0xFF);
+			int b = (signature[i + 2] & 0xFF) - (others[offset + i + 2] & 0xFF);
+			dist += Math.sqrt(r * r + g * g + b * b);
+			
 		}
 		return dist;
 		
 	}
 	
-	public static ImageSignature calcSignature(RenderedImage image) {
+	/**
+	 * calcDistance, but gives up as soon as the running total goes past the limit.
+	 * Anything within the limit comes out exactly the same as calcDistance, anything past it just comes out as some value bigger than the limit.
+	 */
+	public static double calcDistance(byte[] signature, byte[] others, int offset, double limit) {
 		
-		Color[][] signature = new Color[5][5];
+		double dist = 0;
+		for (int i = 0; i < ImageSignature.NUM_BYTES; i += 3) {
+			
+			int r = (signature[i] & 0xFF) - (others[offset + i] & 0xFF);
+			int g = (signature[i + 1] & 0xFF) - (others[offset + i + 1] & 0xFF);
+			int b = (signature[i + 2] & 0xFF) - (others[offset + i + 2] & 0xFF);
+			dist += Math.sqrt(r * r + g * g + b * b);
+			//Every cell only adds to the total, so once it's over it's never coming back
+			if (dist > limit) return dist;
+			
+		}
+		return dist;
 		
-		float[] prop = new float[]{1f / 10f, 3f / 10f, 5f / 10f, 7f / 10f, 9f / 10f};
-		for (int x = 0; x < 5; x++) {
-			for (int y = 0; y < 5; y++) {
-				signature[x][y] = averageAround(image, prop[x], prop[y]);
+	}
+	
+	/**
+	 * A quick check that rules out most signatures before working out the real distance, from the channel sums alone.
+	 * The cells' colour differences add up to the difference between the sums, and a sum of vectors is never longer than their lengths added up, so this never rules out a real match.
+	 *
+	 * @param sums       the channel sums of the signature, see ImageSignature.getChannelSums
+	 * @param otherSums  channel sums of the others, three per signature
+	 * @param offset     where in otherSums the one to check starts
+	 * @return false if the distance is definitely more than the radius
+	 */
+	public static boolean mightBeWithin(int[] sums, int[] otherSums, int offset, double radius) {
+		
+		int r = sums[0] - otherSums[offset];
+		int g = sums[1] - otherSums[offset + 1];
+		int b = sums[2] - otherSums[offset + 2];
+		return Math.sqrt((double) r * r + (double) g * g + (double) b * b) <= radius + SLACK;
+		
+	}
+	
+	/**
+	 * Put the distance between the signature and each of the first count others into out, in the same order.
+	 * Uses the Vector API when it's available, which gives exactly the same results as calcDistance, just faster.
+	 */
+	public static void calcDistances(byte[] signature, byte[][] others, int count, double[] out) {
+		
+		if (VECTOR_KERNEL != null) VECTOR_KERNEL.calcDistances(signature, others, count, out);
+		else calcDistancesScalar(signature, others, count, out);
+		
+	}
+	
+	/**
+	 * Same as above, but with the others packed back to back in one array, which keeps them together in memory
+	 */
+	public static void calcDistances(byte[] signature, byte[] others, int count, double[] out) {
+		
+		if (VECTOR_KERNEL != null) VECTOR_KERNEL.calcDistances(signature, others, count, out);
+		else {
+			for (int i = 0; i < count; i++) {
+				out[i] = calcDistance(signature, others, i * ImageSignature.NUM_BYTES);
 			}
 		}
-		return new ImageSignature(signature); //TODO check for a minimum value to make sure we're not saving empty signatures
 		
 	}
 	
-	private static Color averageAround(RenderedImage image, double px, double py) {
+	/**
+	 * Distances for candidates that already got past mightBeWithin, packed back to back.
+	 * With the Vector API they're done a vector's worth at a time, without it one at a time, and either way they give up once they're past the radius.
+	 * Anything within the radius comes out exactly the same either way, anything past it is just some value bigger than the radius.
+	 */
+	public static void calcDistancesWithin(byte[] signature, byte[] others, int count, double radius, double[] out) {
 		
-		DataBuffer imgData = image.getData(new Rectangle(image.getSampleModel().getWidth(), image.getSampleModel().getHeight())).getDataBuffer();
+		if (VECTOR_KERNEL != null) VECTOR_KERNEL.calcDistances(signature, others, count, radius, out);
+		else {
+			for (int i = 0; i < count; i++) {
+				out[i] = calcDistance(signature, others, i * ImageSignature.NUM_BYTES, radius);
+			}
+		}
 		
-		double[] pixel = new double[3];
-		double[] accum = new double[3];
+	}
+	
+	/**
+	 * calcDistances without the Vector API, it's what gets used when the module isn't there
+	 */
+	public static void calcDistancesScalar(byte[] signature, byte[][] others, int count, double[] out) {
 		
-		int sampleSize = 15;
-		int numPixels = 0;
+		for (int i = 0; i < count; i++) {
+			out[i] = calcDistance(signature, others[i]);
+		}
 		
+	}
+	
+	/**
+	 * @return true if calcDistances is using the Vector API, it's optional and needs to be started with --add-modules jdk.incubator.vector
+	 */
+	public static boolean isVectorized() {
+		
+		return VECTOR_KERNEL != null;
+	}
+	
+	private static DistanceKernel loadVectorKernel() {
+		
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			log.info("Vector API not available, using scalar signature distance");
+			return null;
+		}
+		
+		//Loaded by name so this class never links against the incubator module itself
 		try {
-			for (double x = px * image.getWidth() - sampleSize; x < px * image.getWidth() + sampleSize; x++) {
-				for (double y = py * image.getHeight() - sampleSize; y < py * image.getHeight() + sampleSize; y++) {
-					
-					image.getSampleModel().getPixel((int) Math.min(x, image.getWidth()), (int) Math.min(y, image.getHeight()), pixel, imgData);
-					accum[0] += pixel[0];
-					accum[1] += pixel[1];
-					accum[2] += pixel[2];
-					numPixels++;
-					
+			DistanceKernel kernel = (DistanceKernel) Class.forName("ca.bigcattech.MediaDB.image.VectorDistance").getDeclaredConstructor().newInstance();
+			int lanes = kernel.getLanes();
+			log.info("Using the Vector API for signature distance, " + lanes + " lanes");
+			return lanes > 1 ? kernel : null;
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			log.warn("Failed to load the Vector API, using scalar signature distance", e);
+			return null;
+		}
+		
+	}
+	
+	public static ImageSignature calcSignature(RenderedImage image) {
+		
+		BufferedImage buffered = toBufferedImage(image);
+		WritableRaster raster = buffered.getRaster();
+		ColorModel colorModel = buffered.getColorModel();
+		int type = buffered.getType();
+		int width = buffered.getWidth();
+		int height = buffered.getHeight();
+		
+		//Each cell is the average of the SAMPLE_SIZE x SAMPLE_SIZE window centred on a tenth, three tenths, and so on of the way across and down
+		int[][] columns = new int[ImageSignature.SIZE][];
+		int[][] rows = new int[ImageSignature.SIZE][];
+		for (int i = 0; i < ImageSignature.SIZE; i++) {
+			columns[i] = sampleWindow(SAMPLE_CENTRES[i] * (double) width, width);
+			rows[i] = sampleWindow(SAMPLE_CENTRES[i] * (double) height, height);
+		}
+		
+		//At most 900 pixels of 255 per cell, so an int can't overflow
+		byte[] data = new byte[ImageSignature.NUM_BYTES];
+		int[] sums = new int[ImageSignature.NUM_BYTES];
+		Object pixel = null;
+		for (int x = 0; x < ImageSignature.SIZE; x++) {
+			for (int y = 0; y < ImageSignature.SIZE; y++) {
+				
+				int cell = (x * ImageSignature.SIZE + y) * 3;
+				for (int py : rows[y]) {
+					for (int px : columns[x]) {
+						pixel = raster.getDataElements(px, py, pixel);
+						int rgb = switch (type) {
+							case BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB -> ((int[]) pixel)[0];
+							//The raw grey level, the colour model would convert it from linear grey first
+							case BufferedImage.TYPE_BYTE_GRAY -> (((byte[]) pixel)[0] & 0xFF) * 0x010101;
+							default -> colorModel.getRGB(pixel);
+						};
+						sums[cell] += (rgb >> 16) & 0xFF;
+						sums[cell + 1] += (rgb >> 8) & 0xFF;
+						sums[cell + 2] += rgb & 0xFF;
+					}
 				}
+				
+				int numPixels = rows[y].length * columns[x].length;
+				for (int i = cell; i < cell + 3; i++) {
+					data[i] = (byte) (sums[i] / numPixels);
+				}
+				
 			}
 		}
-		catch (Exception e) {
-			e.printStackTrace();
+		return new ImageSignature(null, data); //TODO check for a minimum value to make sure we're not saving empty signatures
+		
+	}
+	
+	/**
+	 * The sampling before calcSignature read each pixel's raw samples, which only gave the right colours for 8 bit, three band images without a palette,
+	 * and it gave up on a cell part way through when its window ran off the edge. Those are the only images its signatures still match for.
+	 *
+	 * @return true if a signature worked out the old way for this image is the same as one from calcSignature, false if it has to be worked out again
+	 */
+	public static boolean matchesOldSignature(RenderedImage image) {
+		
+		SampleModel sampleModel = image.getSampleModel();
+		if (sampleModel.getNumBands() != 3 || image.getColorModel() instanceof IndexColorModel) return false;
+		for (int band = 0; band < 3; band++) {
+			if (sampleModel.getSampleSize(band) != 8) return false;
+		}
+		
+		for (float centre : SAMPLE_CENTRES) {
+			if (!windowInside(centre * (double) image.getWidth(), image.getWidth())) return false;
+			if (!windowInside(centre * (double) image.getHeight(), image.getHeight())) return false;
+		}
+		return true;
+		
+	}
+	
+	private static boolean windowInside(double centre, int length) {
+		
+		int start = (int) Math.floor(centre - SAMPLE_SIZE / 2.0);
+		return start >= 0 && start + SAMPLE_SIZE <= length;
+		
+	}
+	
+	/**
+	 * @return the SAMPLE_SIZE pixel positions along one side starting half of SAMPLE_SIZE before centre, anything off the edge moved onto the nearest edge pixel
+	 */
+	private static int[] sampleWindow(double centre, int length) {
+		
+		int start = (int) Math.floor(centre - SAMPLE_SIZE / 2.0);
+		int[] window = new int[SAMPLE_SIZE];
+		for (int i = 0; i < SAMPLE_SIZE; i++) {
+			window[i] = Math.max(0, Math.min(length - 1, start + i));
+		}
+		return window;
+		
+	}
+	
+	/**
+	 * Anything that isn't already a BufferedImage gets its pixels copied into one, once
+	 */
+	private static BufferedImage toBufferedImage(RenderedImage image) {
+		
+		if (image instanceof BufferedImage) return (BufferedImage) image;
+		
+		Raster data = image.getData();
+		WritableRaster raster = Raster.createWritableRaster(data.getSampleModel(), data.getDataBuffer(), null);
+		return new BufferedImage(image.getColorModel(), raster, image.getColorModel().isAlphaPremultiplied(), null);
+		
+	}
+	
+	/**
+	 * A 64 bit difference hash, each bit is whether a cell of a 9x8 grid of the image is brighter than the one to its right.
+	 * It only depends on the shape of the brightness across the image, so it stays close through rescaling, recompression, and colour changes.
+	 */
+	public static long calcPerceptualHash(BufferedImage image) {
+		
+		int width = image.getWidth();
+		int height = image.getHeight();
+		
+		int[] columns = new int[width];
+		for (int x = 0; x < width; x++) {
+			columns[x] = x * HASH_COLUMNS / width;
 		}
 		
-		if (numPixels != 0) {
-			accum[0] /= numPixels;
-			accum[1] /= numPixels;
-			accum[2] /= numPixels;
+		long[] sums = new long[HASH_COLUMNS * HASH_ROWS];
+		long[] counts = new long[HASH_COLUMNS * HASH_ROWS];
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			int cell = y * HASH_ROWS / height * HASH_COLUMNS;
+			for (int x = 0; x < width; x++) {
+				int rgb = row[x];
+				//Integer luma, the same weights as a greyscale conversion
+				sums[cell + columns[x]] += ((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114;
+				counts[cell + columns[x]]++;
+			}
 		}
 		
-		return new Color((int) accum[0], (int) accum[1], (int) accum[2]);
+		long hash = 0;
+		for (int y = 0; y < HASH_ROWS; y++) {
+			for (int x = 0; x < HASH_COLUMNS - 1; x++) {
+				int left = y * HASH_COLUMNS + x;
+				//Compare the averages without dividing, cells can have different numbers of pixels in them
+				if (sums[left] * counts[left + 1] > sums[left + 1] * counts[left]) hash |= 1L << (y * (HASH_COLUMNS - 1) + x);
+			}
+		}
+		return hash;
 		
 	}
 	
@@ -123,31 +391,253 @@ public class SimilarityFinder {
 
 	//We're adding this one to reduce the number of times we're getting all the signatures
 	public List<Map.Entry<String, Double>> checkSimilarity(ImageSignature signature, List<ImageSignature> signatures) {
+		
+		return checkSimilarity(signature, signatures, MAX_DISTANCE);
+	}
+	
+	/**
+	 * @return the hash and distance of every signature within the radius, closest first
+	 */
+	public List<Map.Entry<String, Double>> checkSimilarity(ImageSignature signature, List<ImageSignature> signatures, double radius) {
 
 		ConcurrentHashMap<String, Double> results = new ConcurrentHashMap<>();
 
-		signatures.stream().parallel().filter(Objects::nonNull).forEach(sig -> {
-			double result = calcDistance(signature, sig);
-			if (result <= 1000) results.put(sig.getHash(), result);
+		byte[] data = signature.getData();
+		int[] sums = signature.getChannelSums();
+		List<ImageSignature> list = signatures instanceof RandomAccess ? signatures : new ArrayList<>(signatures);
+		int numBlocks = (list.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		IntStream.range(0, numBlocks).parallel().forEach(block -> {
+			
+			//Cheap bound first, then the real distance for whatever's left
+			int end = Math.min(list.size(), (block + 1) * BLOCK_SIZE);
+			byte[] survivors = new byte[BLOCK_SIZE * ImageSignature.NUM_BYTES];
+			String[] hashes = new String[BLOCK_SIZE];
+			int count = 0;
+			for (int i = block * BLOCK_SIZE; i < end; i++) {
+				
+				ImageSignature sig = list.get(i);
+				if (sig == null || !mightBeWithin(sums, sig.getChannelSums(), 0, radius)) continue;
+				System.arraycopy(sig.getData(), 0, survivors, count * ImageSignature.NUM_BYTES, ImageSignature.NUM_BYTES);
+				hashes[count++] = sig.getHash();
+				
+			}
+			
+			double[] distances = new double[count];
+			calcDistancesWithin(data, survivors, count, radius, distances);
+			for (int i = 0; i < count; i++) {
+				if (distances[i] <= radius) results.put(hashes[i], distances[i]);
+			}
+			
 		});
 
 		return Utils.sortByValue(results);
 
 	}
 	
-	public List<Map.Entry<String, Double>> checkSimilarity(ImageSignature signature) {
+	/**
+	 * Same results as checking against every signature in the index, but only compares against the ones that could be close enough
+	 */
+	public List<Map.Entry<String, Double>> checkSimilarity(ImageSignature signature, SignatureIndex index) {
 		
-		ConcurrentHashMap<String, Double> results = new ConcurrentHashMap<>();
+		return checkSimilarity(signature, index, MAX_DISTANCE);
+	}
+	
+	public List<Map.Entry<String, Double>> checkSimilarity(ImageSignature signature, SignatureIndex index, double radius) {
 		
-		List<ImageSignature> signatures = mDBHandler.getAllSignatures();
+		return index.findWithin(signature, radius);
+	}
+	
+	/**
+	 * @return the hash and distance of every signature in the snapshot within the radius, closest first
+	 */
+	public List<Map.Entry<String, Double>> checkSimilarity(ImageSignature signature, SignatureRegistry.Snapshot snapshot, double radius) {
+		
+		ConcurrentHashMap<String, Double> results = new ConcurrentHashMap<>();
 		
-		signatures.stream().parallel().filter(Objects::nonNull).forEach(sig -> {
-			double result = calcDistance(signature, sig);
-			if (result <= 1000) results.put(sig.getHash(), result);
+		byte[] data = signature.getData();
+		int[] sums = signature.getChannelSums();
+		int numBlocks = (snapshot.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		IntStream.range(0, numBlocks).parallel().forEach(block -> {
+			
+			//Blocks never cross a chunk, so the whole block is in the same arrays
+			int start = block * BLOCK_SIZE;
+			int end = Math.min(snapshot.size(), start + BLOCK_SIZE);
+			byte[] packed = snapshot.getPacked(start);
+			int[] packedSums = snapshot.getSums(start);
+			byte[] survivors = new byte[BLOCK_SIZE * ImageSignature.NUM_BYTES];
+			int[] ids = new int[BLOCK_SIZE];
+			int count = 0;
+			for (int id = start; id < end; id++) {
+				
+				int index = id % SignatureRegistry.CHUNK_SIZE;
+				if (!mightBeWithin(sums, packedSums, index * 3, radius)) continue;
+				System.arraycopy(packed, index * ImageSignature.NUM_BYTES, survivors, count * ImageSignature.NUM_BYTES, ImageSignature.NUM_BYTES);
+				ids[count++] = id;
+				
+			}
+			
+			double[] distances = new double[count];
+			calcDistancesWithin(data, survivors, count, radius, distances);
+			for (int i = 0; i < count; i++) {
+				if (distances[i] <= radius) results.put(snapshot.getHash(ids[i]), distances[i]);
+			}
+			
 		});
 		
 		return Utils.sortByValue(results);
 		
 	}
 	
+	/**
+	 * Check against every signature in the library, and everything in the recent signatures
+	 */
+	public List<Map.Entry<String, Double>> checkSimilarity(ImageSignature signature) {
+		
+		Map<String, Double> results = new HashMap<>();
+		for (Map.Entry<String, Double> entry : checkSimilarity(signature, mDBHandler.getAllSignatures())) {
+			results.put(entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<String, Double> entry : checkSimilarity(signature, mRecent.snapshot(), MAX_DISTANCE)) {
+			results.merge(entry.getKey(), entry.getValue(), Math::min);
+		}
+		return Utils.sortByValue(results);
+		
+	}
+	
+	/**
+	 * @return the hash and distance of the k closest signatures within the radius, closest first
+	 */
+	public List<Map.Entry<String, Double>> findMostSimilar(ImageSignature signature, List<ImageSignature> signatures, int k, double radius) {
+		
+		if (k <= 0) return new ArrayList<>();
+		
+		byte[] data = signature.getData();
+		int[] sums = signature.getChannelSums();
+		List<ImageSignature> list = signatures instanceof RandomAccess ? signatures : new ArrayList<>(signatures);
+		int numBlocks = (list.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		
+		//Each thread fills its own heap, and they're merged once at the end
+		BoundedHeap nearest = IntStream.range(0, numBlocks).parallel().collect(() -> new BoundedHeap(k), (heap, block) -> {
+			
+			int end = Math.min(list.size(), (block + 1) * BLOCK_SIZE);
+			for (int i = block * BLOCK_SIZE; i < end; i++) {
+				
+				ImageSignature sig = list.get(i);
+				if (sig == null) continue;
+				double limit = Math.min(radius, heap.getLimit());
+				if (!mightBeWithin(sums, sig.getChannelSums(), 0, limit)) continue;
+				double result = calcDistance(data, sig.getData(), 0, limit);
+				if (result <= radius) heap.offer(i, result);
+				
+			}
+			
+		}, BoundedHeap::merge);
+		
+		return nearest.toSortedList(i -> list.get(i).getHash());
+		
+	}
+	
+	/**
+	 * Scan the memory mapped signatures straight off the file, nothing gets loaded or parsed first so there's no wait before the first check
+	 *
+	 * @return the hash and distance of the k closest signatures within the radius, closest first
+	 */
+	public List<Map.Entry<String, Double>> findMostSimilar(ImageSignature signature, SignatureStore store, int k, double radius) {
+		
+		if (k <= 0) return new ArrayList<>();
+		
+		byte[] data = signature.getData();
+		int[] sums = signature.getChannelSums();
+		int count = store.getNumRecords();
+		int numBlocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		
+		BoundedHeap nearest = IntStream.range(0, numBlocks).parallel().collect(() -> new BoundedHeap(k), (heap, block) -> {
+			
+			byte[] other = new byte[ImageSignature.NUM_BYTES];
+			int[] otherSums = new int[3];
+			int end = Math.min(count, (block + 1) * BLOCK_SIZE);
+			for (int id = block * BLOCK_SIZE; id < end; id++) {
+				
+				if (store.isRemoved(id)) continue;
+				double limit = Math.min(radius, heap.getLimit());
+				store.getChannelSums(id, otherSums, 0);
+				if (!mightBeWithin(sums, otherSums, 0, limit)) continue;
+				store.getData(id, other, 0);
+				double result = calcDistance(data, other, 0, limit);
+				if (result <= radius) heap.offer(id, result);
+				
+			}
+			
+		}, BoundedHeap::merge);
+		
+		return nearest.toSortedList(store::getHash);
+		
+	}
+	
+	/**
+	 * Scan the snapshot's chunks in place, nothing is copied
+	 *
+	 * @return the hash and distance of the k closest signatures within the radius, closest first
+	 */
+	public List<Map.Entry<String, Double>> findMostSimilar(ImageSignature signature, SignatureRegistry.Snapshot snapshot, int k, double radius) {
+		
+		if (k <= 0) return new ArrayList<>();
+		
+		byte[] data = signature.getData();
+		int[] sums = signature.getChannelSums();
+		int numBlocks = (snapshot.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		
+		BoundedHeap nearest = IntStream.range(0, numBlocks).parallel().collect(() -> new BoundedHeap(k), (heap, block) -> {
+			
+			int start = block * BLOCK_SIZE;
+			int end = Math.min(snapshot.size(), start + BLOCK_SIZE);
+			byte[] packed = snapshot.getPacked(start);
+			int[] packedSums = snapshot.getSums(start);
+			for (int id = start; id < end; id++) {
+				
+				int index = id % SignatureRegistry.CHUNK_SIZE;
+				double limit = Math.min(radius, heap.getLimit());
+				if (!mightBeWithin(sums, packedSums, index * 3, limit)) continue;
+				double result = calcDistance(data, packed, index * ImageSignature.NUM_BYTES, limit);
+				if (result <= radius) heap.offer(id, result);
+				
+			}
+			
+		}, BoundedHeap::merge);
+		
+		return nearest.toSortedList(snapshot::getHash);
+		
+	}
+	
+	public List<Map.Entry<String, Double>> findMostSimilar(ImageSignature signature, SignatureIndex index, int k, double radius) {
+		
+		return index.findNearest(signature, k, radius);
+	}
+	
+	/**
+	 * @return the hashes of the k most similar items in the library, most similar first
+	 */
+	public List<String> findMostSimilarHashes(ImageSignature signature, int k) {
+		
+		//Scan the signature file in place if there is one, rather than loading every signature from it
+		SignatureStore store = mDBHandler.getSignatureStore();
+		List<Map.Entry<String, Double>> library = store != null ? findMostSimilar(signature, store, k, MAX_DISTANCE) : findMostSimilar(signature, mDBHandler.getAllSignatures(), k, MAX_DISTANCE);
+		
+		Map<String, Double> results = new HashMap<>();
+		for (Map.Entry<String, Double> entry : library) {
+			results.put(entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<String, Double> entry : findMostSimilar(signature, mRecent.snapshot(), k, MAX_DISTANCE)) {
+			results.merge(entry.getKey(), entry.getValue(), Math::min);
+		}
+		
+		List<String> hashes = new ArrayList<>(k);
+		for (Map.Entry<String, Double> entry : Utils.sortByValue(results)) {
+			if (hashes.size() == k) break;
+			hashes.add(entry.getKey());
+		}
+		return hashes;
+		
+	}
+	
 }
@@ -0,0 +1,164 @@
+/*
+ *     CountingBloomFilter
+ *     Last Modified: 2026-10-18, 6:05 p.m.
+ *     Copyright (C) 2026-10-18, 6:05 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.MediaDB.utils;
+
+/**
+ * A Bloom filter for strings that also supports removing them, by keeping a small counter in each slot instead of a single bit.
+ * If mightContain returns false the string was definitely never added, if it returns true it probably was.
+ * Counters stop at 255, a slot that gets that full is never decremented again so it can't cause a false negative.
+ */
+public class CountingBloomFilter {
+	
+	private static final int MAX_COUNT = 0xFF;
+	
+	private final byte[] mCounters;
+	private final int mNumHashes;
+	private final int mCapacity;
+	private long mSize = 0;
+	
+	/**
+	 * @param expectedInsertions how many strings we expect to hold at once, it still works past this but the false positive rate goes up
+	 * @param falsePositiveRate  the false positive rate we want at the expected number of insertions, between 0 and 1
+	 */
+	public CountingBloomFilter(int expectedInsertions, double falsePositiveRate) {
+		
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+		
+		mCapacity = Math.max(1, expectedInsertions);
+		long slots = (long) Math.ceil(-mCapacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		mCounters = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(64, slots))];
+		mNumHashes = Math.max(1, (int) Math.round((double) mCounters.length / mCapacity * Math.log(2)));
+		
+	}
+	
+	public synchronized void add(String value) {
+		
+		long hash1 = hash1(value);
+		long hash2 = hash2(value);
+		for (int i = 0; i < mNumHashes; i++) {
+			int index = index(hash1, hash2, i);
+			int count = mCounters[index] & MAX_COUNT;
+			if (count < MAX_COUNT) mCounters[index] = (byte) (count + 1);
+		}
+		mSize++;
+		
+	}
+	
+	/**
+	 * Only remove strings that were actually added, removing anything else can cause false negatives for other strings
+	 */
+	public synchronized void remove(String value) {
+		
+		if (!mightContain(value)) return;
+		
+		long hash1 = hash1(value);
+		long hash2 = hash2(value);
+		for (int i = 0; i < mNumHashes; i++) {
+			int index = index(hash1, hash2, i);
+			int count = mCounters[index] & MAX_COUNT;
+			if (count < MAX_COUNT) mCounters[index] = (byte) (count - 1);
+		}
+		mSize--;
+		
+	}
+	
+	/**
+	 * @return false if the string is definitely not in the filter, true if it might be
+	 */
+	public synchronized boolean mightContain(String value) {
+		
+		long hash1 = hash1(value);
+		long hash2 = hash2(value);
+		for (int i = 0; i < mNumHashes; i++) {
+			if (mCounters[index(hash1, hash2, i)] == 0) return false;
+		}
+		return true;
+		
+	}
+	
+	/**
+	 * @return the number of strings currently in the filter
+	 */
+	public synchronized long size() {
+		
+		return mSize;
+	}
+	
+	public int getCapacity() {
+		
+		return mCapacity;
+	}
+	
+	public int getNumHashes() {
+		
+		return mNumHashes;
+	}
+	
+	/**
+	 * @return the memory used by the counters, in bytes
+	 */
+	public long getMemoryUsage() {
+		
+		return mCounters.length;
+	}
+	
+	/**
+	 * @return the expected false positive rate for the number of strings currently in the filter
+	 */
+	public synchronized double getExpectedFalsePositiveRate() {
+		
+		return Math.pow(1 - Math.exp(-(double) mNumHashes * mSize / mCounters.length), mNumHashes);
+	}
+	
+	private int index(long hash1, long hash2, int i) {
+		
+		//Double hashing, each of the k slots is hash1 + i * hash2, which behaves about as well as k independent hashes
+		return (int) Long.remainderUnsigned(hash1 + i * hash2, mCounters.length);
+	}
+	
+	private static long hash1(String value) {
+		
+		//64 bit FNV-1a
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+		
+	}
+	
+	private static long hash2(String value) {
+		
+		//Polynomial hash run through the MurmurHash3 finalizer, forced odd so it never steps by zero
+		long hash = 0x9e3779b97f4a7c15L;
+		for (int i = 0; i < value.length(); i++) {
+			hash = hash * 31 + value.charAt(i);
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash | 1;
+		
+	}
+	
+}
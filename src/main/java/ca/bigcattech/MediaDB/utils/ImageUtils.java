@@ -295,7 +295,9 @@ public class ImageUtils {
 	public static ImageSignature calcImageSignature(File image) throws IOException {
 		
 		ImageData imageData = loadImage(image);
-		return SimilarityFinder.calcSignature(imageData.getBufferedImage());
+		ImageSignature signature = SimilarityFinder.calcSignature(imageData.getBufferedImage());
+		signature.setPerceptualHash(SimilarityFinder.calcPerceptualHash(imageData.getBufferedImage()));
+		return signature;
 		
 	}
 	
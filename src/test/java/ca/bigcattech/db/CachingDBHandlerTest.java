@@ -0,0 +1,79 @@
+/*
+ *     CachingDBHandlerTest
+ *     Last Modified: 2026-10-18, 2:30 p.m.
+ *     Copyright (C) 2026-10-18, 2:30 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.db;
+
+import ca.bigcattech.MediaDB.db.CachingDBHandler;
+import ca.bigcattech.MediaDB.db.InMemoryDBHandler;
+import ca.bigcattech.MediaDB.db.tag.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingDBHandlerTest {
+	
+	@Test
+	void tagCache() {
+		
+		InMemoryDBHandler inMemoryDBHandler = new InMemoryDBHandler();
+		inMemoryDBHandler.exportTag(new Tag("cat"), false);
+		inMemoryDBHandler.incrementTagUses(new String[]{"cat"});
+		
+		CachingDBHandler dbHandler = new CachingDBHandler(inMemoryDBHandler);
+		dbHandler.initDB();
+		assertEquals(1, dbHandler.getCacheSize());
+		
+		assertEquals(1, dbHandler.getTagFromName("cat").getNumUses());
+		assertEquals(1, dbHandler.getCacheHits());
+		assertEquals(0, dbHandler.getCacheMisses());
+		
+		//Changing the returned tag shouldn't change the cached one
+		dbHandler.getTagFromName("cat").setRestricted(true);
+		assertFalse(dbHandler.isTagRestricted(new String[]{"cat"}));
+		
+		//Writes should show up without having to go back to the database
+		dbHandler.incrementTagUses(new String[]{"cat"});
+		assertEquals(2, dbHandler.getTagFromName("cat").getNumUses());
+		dbHandler.exportTag(new Tag("cat", new String[]{}, true), false);
+		assertTrue(dbHandler.isTagRestricted(new String[]{"cat"}));
+		//Saving a tag with an out of date count shouldn't undo the increments
+		assertEquals(2, dbHandler.getTagFromName("cat").getNumUses());
+		assertEquals(2, inMemoryDBHandler.getTagFromName("cat").getNumUses());
+		assertEquals(0, dbHandler.getCacheMisses());
+		
+		assertNull(dbHandler.getTagFromName("dog"));
+		assertEquals(1, dbHandler.getCacheMisses());
+		
+		//A write the database turns down, because it would make a cycle, shouldn't end up in the cache either
+		assertTrue(dbHandler.exportTag(new Tag("kitten", new String[]{"cat"}, false), false));
+		assertFalse(dbHandler.exportTag(new Tag("cat", new String[]{"kitten"}, false), false));
+		assertEquals(0, dbHandler.getTagFromName("cat").getParentTags().length);
+		assertTrue(dbHandler.getTagFromName("cat").isRestricted());
+		assertTrue(dbHandler.isTagRestricted(new String[]{"cat"}));
+		assertFalse(dbHandler.exportTagParents("cat", new String[]{"kitten"}));
+		assertEquals(0, dbHandler.getTagFromName("cat").getParentTags().length);
+		dbHandler.deleteTag("kitten");
+		
+		dbHandler.deleteTag("cat");
+		assertNull(dbHandler.getTagFromName("cat"));
+		assertEquals(0, dbHandler.getCacheSize());
+		
+	}
+	
+}
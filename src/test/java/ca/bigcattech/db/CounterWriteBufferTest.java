@@ -0,0 +1,149 @@
+/*
+ *     CounterWriteBufferTest
+ *     Last Modified: 2026-10-18, 7:30 p.m.
+ *     Copyright (C) 2026-10-18, 7:30 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.db;
+
+import ca.bigcattech.MediaDB.db.CounterWriteBuffer;
+import ca.bigcattech.MediaDB.db.DBHandler;
+import ca.bigcattech.MediaDB.db.InMemoryDBHandler;
+import ca.bigcattech.MediaDB.db.content.Content;
+import ca.bigcattech.MediaDB.db.content.ContentType;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CounterWriteBufferTest {
+	
+	@Test
+	void mergeAndFlush() throws Exception {
+		
+		File dir = Files.createTempDirectory("media_db_test").toFile();
+		File file = new File(dir, "a.png");
+		file.createNewFile();
+		
+		DBHandler dbHandler = new InMemoryDBHandler();
+		dbHandler.initDB();
+		dbHandler.exportContent(Content.builder(ContentType.IMAGE).hash("a").file(file).build());
+		
+		//Long enough that nothing gets flushed in the background during the test
+		CounterWriteBuffer buffer = new CounterWriteBuffer(dbHandler, 60000);
+		
+		Content content = dbHandler.getContentFromHash("a");
+		content.incrementViews();
+		content.incrementTimeSpent(100);
+		buffer.takeCounters(content);
+		assertFalse(content.isDirty());
+		
+		buffer.addViews("a", 2);
+		buffer.addTimeSpent("a", 50);
+		buffer.addViews("missing", 1);
+		assertEquals(2, buffer.getNumPending());
+		assertEquals(0, dbHandler.getContentFromHash("a").getViews());
+		
+		buffer.flush();
+		assertEquals(0, buffer.getNumPending());
+		assertEquals(3, dbHandler.getContentFromHash("a").getViews());
+		assertEquals(150, dbHandler.getContentFromHash("a").getTimeSpent());
+		
+		buffer.addViews("a", 1);
+		buffer.close();
+		assertEquals(4, dbHandler.getContentFromHash("a").getViews());
+		
+	}
+	
+	@Test
+	void dirtyExportAfterTake() throws Exception {
+		
+		File dir = Files.createTempDirectory("media_db_test").toFile();
+		File file = new File(dir, "a.png");
+		file.createNewFile();
+		
+		DBHandler dbHandler = new InMemoryDBHandler();
+		dbHandler.initDB();
+		dbHandler.exportContent(Content.builder(ContentType.IMAGE).hash("a").file(file).build());
+		CounterWriteBuffer buffer = new CounterWriteBuffer(dbHandler, 60000);
+		
+		//The same as leaving the content view after changing something else
+		Content content = dbHandler.getContentFromHash("a");
+		content.incrementViews();
+		content.incrementTimeSpent(100);
+		buffer.takeCounters(content);
+		content.setFavorite(true);
+		dbHandler.exportContent(content);
+		buffer.flush();
+		
+		Content stored = dbHandler.getContentFromHash("a");
+		assertTrue(stored.isFavorite());
+		assertEquals(1, stored.getViews());
+		assertEquals(100, stored.getTimeSpent());
+		
+		buffer.close();
+		
+	}
+	
+	@Test
+	void retryOnlyFailed() throws Exception {
+		
+		File dir = Files.createTempDirectory("media_db_test").toFile();
+		File file = new File(dir, "a.png");
+		file.createNewFile();
+		
+		//Writes everything, but reports "b" as failed the first time
+		Set<String> failOnce = new HashSet<>(Set.of("b"));
+		InMemoryDBHandler dbHandler = new InMemoryDBHandler() {
+			@Override
+			public Set<String> incrementContentCounters(Map<String, Integer> views, Map<String, Long> timeSpent) {
+				
+				Map<String, Integer> written = new HashMap<>(views);
+				written.keySet().removeAll(failOnce);
+				super.incrementContentCounters(written, timeSpent);
+				Set<String> failed = new HashSet<>(failOnce);
+				failed.retainAll(views.keySet());
+				failOnce.clear();
+				return failed;
+				
+			}
+		};
+		dbHandler.initDB();
+		dbHandler.exportContent(Content.builder(ContentType.IMAGE).hash("a").file(file).build());
+		dbHandler.exportContent(Content.builder(ContentType.IMAGE).hash("b").file(file).build());
+		
+		CounterWriteBuffer buffer = new CounterWriteBuffer(dbHandler, 60000);
+		buffer.addViews("a", 1);
+		buffer.addViews("b", 2);
+		
+		buffer.flush();
+		assertEquals(1, buffer.getNumPending());
+		assertEquals(1, dbHandler.getContentFromHash("a").getViews());
+		assertEquals(0, dbHandler.getContentFromHash("b").getViews());
+		
+		buffer.close();
+		assertEquals(1, dbHandler.getContentFromHash("a").getViews());
+		assertEquals(2, dbHandler.getContentFromHash("b").getViews());
+		
+	}
+	
+}
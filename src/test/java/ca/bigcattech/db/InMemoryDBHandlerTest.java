@@ -0,0 +1,161 @@
+/*
+ *     InMemoryDBHandlerTest
+ *     Last Modified: 2026-10-18, 1:40 p.m.
+ *     Copyright (C) 2026-10-18, 1:40 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.db;
+
+import ca.bigcattech.MediaDB.core.Options;
+import ca.bigcattech.MediaDB.db.DBHandler;
+import ca.bigcattech.MediaDB.db.InMemoryDBHandler;
+import ca.bigcattech.MediaDB.db.content.Content;
+import ca.bigcattech.MediaDB.db.content.ContentPage;
+import ca.bigcattech.MediaDB.db.content.ContentType;
+import ca.bigcattech.MediaDB.db.tag.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryDBHandlerTest {
+	
+	private static Content createContent(File dir, String hash, String... tags) throws IOException, Content.ContentValidationException {
+		
+		File file = new File(dir, hash + ".png");
+		file.createNewFile();
+		return Content.builder(ContentType.IMAGE).hash(hash).file(file).tags(tags).build();
+		
+	}
+	
+	@Test
+	void exportAndSearch() throws IOException, Content.ContentValidationException {
+		
+		File dir = Files.createTempDirectory("media_db_test").toFile();
+		DBHandler dbHandler = new InMemoryDBHandler();
+		dbHandler.initDB();
+		
+		dbHandler.exportTag(new Tag("secret", true), false);
+		dbHandler.exportContent(Arrays.asList(
+				createContent(dir, "a", "cat", "dog"),
+				createContent(dir, "b", "cat"),
+				createContent(dir, "c", "cat", "secret")));
+		
+		assertEquals(3, dbHandler.getNumContent());
+		assertTrue(dbHandler.checkHash("a"));
+		assertTrue(dbHandler.getContentFromHash("c").isRestricted());
+		
+		Options.SearchOptions searchOptions = new Options().getSearchOptions();
+		searchOptions.setRestricted(false);
+		assertEquals(2, dbHandler.searchForContentByTags(searchOptions, new String[]{"cat"}, new String[]{}).length);
+		assertEquals(1, dbHandler.searchForContentByTags(searchOptions, new String[]{"cat", "dog"}, new String[]{}).length);
+		assertEquals(1, dbHandler.searchForContentByTags(searchOptions, new String[]{"cat"}, new String[]{"dog"}).length);
+		searchOptions.setRestricted(true);
+		assertEquals(3, dbHandler.searchForContentByTags(searchOptions, new String[]{"cat"}, new String[]{}).length);
+		assertEquals(3, dbHandler.searchForContentSummariesByTags(searchOptions, new String[]{"cat"}, new String[]{}).length);
+		
+		//Changes to returned objects shouldn't show up until they're exported
+		Content content = dbHandler.getContentFromHash("a");
+		content.setTitle("changed");
+		assertNotEquals("changed", dbHandler.getContentFromHash("a").getTitle());
+		
+		dbHandler.removeTagFromAllContent("dog");
+		assertEquals(0, dbHandler.searchForContentByTags(searchOptions, new String[]{"dog"}, new String[]{}).length);
+		dbHandler.updateAllTags();
+		assertEquals(3, dbHandler.getTagFromName("cat").getNumUses());
+		assertEquals(0, dbHandler.getTagFromName("dog").getNumUses());
+		
+		dbHandler.deleteContent("b");
+		assertFalse(dbHandler.checkHash("b"));
+		assertEquals(2, dbHandler.searchForContentByTags(searchOptions, new String[]{"cat"}, new String[]{}).length);
+		
+	}
+	
+	@Test
+	void pagedSearch() throws IOException, Content.ContentValidationException {
+		
+		File dir = Files.createTempDirectory("media_db_test").toFile();
+		DBHandler dbHandler = new InMemoryDBHandler();
+		dbHandler.initDB();
+		
+		for (int i = 0; i < 5; i++) {
+			Content content = createContent(dir, "hash" + i, "cat", i % 2 == 0 ? "even" : "odd");
+			for (int j = 0; j < i; j++) content.incrementViews();
+			dbHandler.exportContent(content);
+		}
+		
+		Options.SearchOptions searchOptions = new Options().getSearchOptions();
+		searchOptions.setSearchType(Options.SearchOptions.SortType.VIEWS);
+		
+		ContentPage page = dbHandler.searchForContentPage(searchOptions, new String[]{"cat"}, new String[]{}, 1, 2);
+		assertEquals(5, page.getTotalResults());
+		assertEquals(3, page.getNumPages());
+		assertEquals("hash2", page.getResults()[0].getHash());
+		assertEquals("hash1", page.getResults()[1].getHash());
+		
+		page = dbHandler.searchForContentPage(searchOptions, new String[]{"cat"}, new String[]{"odd"}, 0, 0);
+		assertEquals(3, page.getTotalResults());
+		assertEquals(1, page.getNumPages());
+		assertEquals("hash4", page.getResults()[0].getHash());
+		
+	}
+	
+	@Test
+	void dirtyTracking() throws IOException, Content.ContentValidationException {
+		
+		File dir = Files.createTempDirectory("media_db_test").toFile();
+		DBHandler dbHandler = new InMemoryDBHandler();
+		dbHandler.initDB();
+		
+		Content created = createContent(dir, "a", "cat");
+		assertFalse(created.isTracked());
+		dbHandler.exportContent(created);
+		assertTrue(created.isTracked());
+		assertFalse(created.isDirty());
+		
+		Content content = dbHandler.getContentFromHash("a");
+		assertTrue(content.isTracked());
+		assertFalse(content.isDirty());
+		
+		//Counters are sent as increments, everything else as the new value
+		content.incrementViews();
+		content.incrementTimeSpent(500);
+		assertTrue(content.getDirtyFields().isEmpty());
+		assertEquals(1, content.getViewsDelta());
+		assertEquals(500, content.getTimeSpentDelta());
+		content.setFavorite(true);
+		assertEquals(EnumSet.of(Content.Field.FAVORITE), content.getDirtyFields());
+		
+		//Adding a tag that's already there doesn't change anything
+		content.addTags(new String[]{"cat"}, dbHandler);
+		assertFalse(content.getDirtyFields().contains(Content.Field.TAGS));
+		
+		dbHandler.exportContent(content);
+		assertFalse(content.isDirty());
+		
+		Content loaded = dbHandler.getContentFromHash("a");
+		assertEquals(1, loaded.getViews());
+		assertEquals(500, loaded.getTimeSpent());
+		assertTrue(loaded.isFavorite());
+		
+	}
+	
+}
@@ -0,0 +1,109 @@
+/*
+ *     TagGraphTest
+ *     Last Modified: 2026-10-18, 5:40 p.m.
+ *     Copyright (C) 2026-10-18, 5:40 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.db;
+
+import ca.bigcattech.MediaDB.db.DBHandler;
+import ca.bigcattech.MediaDB.db.InMemoryDBHandler;
+import ca.bigcattech.MediaDB.db.content.Content;
+import ca.bigcattech.MediaDB.db.content.ContentType;
+import ca.bigcattech.MediaDB.db.tag.Tag;
+import ca.bigcattech.MediaDB.db.tag.TagGraph;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagGraphTest {
+	
+	@Test
+	void ancestorsAndCycles() throws TagGraph.TagCycleException {
+		
+		TagGraph graph = new TagGraph();
+		graph.load(List.of(
+				new Tag("animal", new String[]{}, true),
+				new Tag("mammal", new String[]{"animal"}, false),
+				new Tag("cat", new String[]{"mammal"}, false),
+				new Tag("car", new String[]{}, false)));
+		
+		assertEquals(Set.of("mammal", "animal"), graph.getAncestors("cat"));
+		assertArrayEquals(new String[]{"cat", "car", "mammal", "animal"}, graph.expand(new String[]{"cat", "car"}));
+		assertTrue(graph.isRestricted(new String[]{"car", "cat"}));
+		assertFalse(graph.isRestricted(new String[]{"car"}));
+		assertEquals(3, graph.getNumRestricted());
+		
+		assertTrue(graph.wouldCreateCycle("animal", new String[]{"cat"}));
+		assertTrue(graph.wouldCreateCycle("cat", new String[]{"cat"}));
+		assertFalse(graph.wouldCreateCycle("cat", new String[]{"car"}));
+		assertThrows(TagGraph.TagCycleException.class, () -> graph.putTag(new Tag("animal", new String[]{"cat"}, true)));
+		assertTrue(graph.getAncestors("animal").isEmpty());
+		
+		//Changing a tag has to update everything below it
+		graph.putTag(new Tag("mammal", new String[]{"car"}, false));
+		assertEquals(Set.of("mammal", "car"), graph.getAncestors("cat"));
+		assertFalse(graph.isRestricted("cat"));
+		graph.putTag(new Tag("car", new String[]{}, true));
+		assertTrue(graph.isRestricted("cat"));
+		
+		graph.removeTag("mammal");
+		assertEquals(Set.of("mammal"), graph.getAncestors("cat"));
+		assertFalse(graph.isRestricted("cat"));
+		
+	}
+	
+	@Test
+	void contentUpdate() throws Exception {
+		
+		File dir = Files.createTempDirectory("media_db_test").toFile();
+		DBHandler dbHandler = new InMemoryDBHandler();
+		dbHandler.initDB();
+		dbHandler.exportTag(new Tag("animal", new String[]{}, true), false);
+		dbHandler.exportTag(new Tag("cat", new String[]{"animal"}, false), false);
+		
+		File file = new File(dir, "a.png");
+		file.createNewFile();
+		Content content = Content.builder(ContentType.IMAGE).hash("a").file(file).tags(new String[]{"cat"}).build();
+		content.update(dbHandler);
+		
+		assertEquals(Arrays.asList("cat", "animal"), Arrays.asList(content.getTags()));
+		assertTrue(content.isRestricted());
+		
+		//The cycle is refused, and nothing gets written
+		dbHandler.exportTag(new Tag("animal", new String[]{"cat"}, true), false);
+		assertEquals(0, dbHandler.getTagFromName("animal").getParentTags().length);
+		
+		//Only the parents change, the restriction and use count stay as they were
+		int uses = dbHandler.getTagFromName("animal").getNumUses();
+		dbHandler.exportTagParents("animal", new String[]{"living"});
+		Tag animal = dbHandler.getTagFromName("animal");
+		assertEquals(Arrays.asList("living"), Arrays.asList(animal.getParentTags()));
+		assertEquals(uses, animal.getNumUses());
+		assertTrue(animal.isRestricted());
+		assertEquals(Set.of("animal", "living"), dbHandler.getTagGraph().getAncestors("cat"));
+		dbHandler.exportTagParents("living", new String[]{"cat"});
+		assertNull(dbHandler.getTagFromName("living"));
+		
+	}
+	
+}
@@ -0,0 +1,207 @@
+/*
+ *     DuplicateClusterJobTest
+ *     Last Modified: 2026-10-18, 11:20 p.m.
+ *     Copyright (C) 2026-10-18, 11:20 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.bigcattech.image;
+
+import ca.bigcattech.MediaDB.db.DBHandler;
+import ca.bigcattech.MediaDB.db.InMemoryDBHandler;
+import ca.bigcattech.MediaDB.image.DuplicateClusterJob;
+import ca.bigcattech.MediaDB.image.DuplicateScanProgress;
+import ca.bigcattech.MediaDB.image.ImageSignature;
+import ca.bigcattech.MediaDB.image.PerceptualHashIndex;
+import ca.bigcattech.MediaDB.image.SimilarityFinder;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuplicateClusterJobTest {
+	
+	private static final double RADIUS = 120;
+	private static final int PERCEPTUAL_DISTANCE = 6;
+	
+	/**
+	 * Every pair compared directly, joined the same way the job does it
+	 */
+	private static Set<Set<String>> bruteForce(List<ImageSignature> signatures) {
+		
+		Map<String, Set<String>> groups = new HashMap<>();
+		for (ImageSignature signature : signatures) {
+			groups.put(signature.getHash(), new HashSet<>(Set.of(signature.getHash())));
+		}
+		for (int i = 0; i < signatures.size(); i++) {
+			for (int j = i + 1; j < signatures.size(); j++) {
+				ImageSignature a = signatures.get(i);
+				ImageSignature b = signatures.get(j);
+				boolean match = a.hasPerceptualHash() && b.hasPerceptualHash()
+						? PerceptualHashIndex.hammingDistance(a.getPerceptualHash(), b.getPerceptualHash()) <= PERCEPTUAL_DISTANCE
+						: SimilarityFinder.calcDistance(a, b) <= RADIUS;
+				Set<String> groupA = groups.get(a.getHash());
+				Set<String> groupB = groups.get(b.getHash());
+				if (!match || groupA == groupB) continue;
+				groupA.addAll(groupB);
+				for (String hash : groupB) {
+					groups.put(hash, groupA);
+				}
+			}
+		}
+		
+		Set<Set<String>> clusters = new HashSet<>();
+		for (Set<String> group : groups.values()) {
+			if (group.size() > 1) clusters.add(group);
+		}
+		return clusters;
+		
+	}
+	
+	private static Set<Set<String>> toSets(List<List<String>> clusters) {
+		
+		Set<Set<String>> sets = new HashSet<>();
+		for (List<String> cluster : clusters) {
+			sets.add(new HashSet<>(cluster));
+		}
+		return sets;
+		
+	}
+	
+	@Test
+	void matchesBruteForce() {
+		
+		Random random = new Random(13);
+		List<ImageSignature> signatures = SignatureIndexTest.clusteredSignatures(random, 1500, true);
+		//Half of them get perceptual hashes, the groups of ten share a base hash
+		long base = 0;
+		for (int i = 0; i < signatures.size(); i++) {
+			if (i % 10 == 0) base = random.nextLong();
+			if (i % 2 == 0) signatures.get(i).setPerceptualHash(base ^ (1L << random.nextInt(64)) ^ (1L << random.nextInt(64)));
+		}
+		
+		DBHandler dbHandler = new InMemoryDBHandler();
+		dbHandler.initDB();
+		signatures.forEach(dbHandler::exportSignature);
+		
+		DuplicateClusterJob job = new DuplicateClusterJob(dbHandler, RADIUS, PERCEPTUAL_DISTANCE);
+		job.setCheckpointSize(200);
+		List<Integer> progress = new ArrayList<>();
+		job.setProgressListener((done, total) -> {
+			assertEquals(signatures.size(), total);
+			progress.add(done);
+		});
+		Set<Set<String>> expected = bruteForce(signatures);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, toSets(job.run()));
+		assertTrue(job.isFinished());
+		assertEquals(List.of(0, 200, 400, 600, 800, 1000, 1200, 1400, 1500), progress);
+		assertEquals(expected, toSets(dbHandler.getDuplicateClusters()));
+		assertNull(dbHandler.getDuplicateScanProgress());
+		
+	}
+	
+	@Test
+	void resume() {
+		
+		Random random = new Random(17);
+		List<ImageSignature> signatures = SignatureIndexTest.clusteredSignatures(random, 1000, true);
+		
+		//Stops itself after the first checkpoint is saved
+		DuplicateClusterJob[] job = new DuplicateClusterJob[1];
+		DBHandler dbHandler = new InMemoryDBHandler() {
+			@Override
+			public void exportDuplicateScanCheckpoint(DuplicateScanProgress progress, List<String> pairs) {
+				
+				super.exportDuplicateScanCheckpoint(progress, pairs);
+				job[0].cancel();
+				
+			}
+		};
+		dbHandler.initDB();
+		signatures.forEach(dbHandler::exportSignature);
+		
+		//A cancel from before it starts still stops it, without saving anything
+		job[0] = new DuplicateClusterJob(dbHandler, RADIUS, -1);
+		job[0].setCheckpointSize(300);
+		job[0].cancel();
+		job[0].run();
+		assertFalse(job[0].isFinished());
+		assertNull(dbHandler.getDuplicateScanProgress());
+		
+		job[0].run();
+		DuplicateScanProgress progress = dbHandler.getDuplicateScanProgress();
+		assertNotNull(progress);
+		assertEquals(0, progress.getCheckpoint());
+		
+		//Keep going one checkpoint at a time until it's done, all in the same run
+		List<List<String>> clusters = job[0].run();
+		assertEquals(progress.getRunId(), dbHandler.getDuplicateScanProgress().getRunId());
+		while (dbHandler.getDuplicateScanProgress() != null) {
+			clusters = job[0].run();
+		}
+		assertEquals(bruteForce(signatures), toSets(clusters));
+		assertEquals(bruteForce(signatures), toSets(dbHandler.getDuplicateClusters()));
+		
+	}
+	
+	@Test
+	void changesStartOver() {
+		
+		Random random = new Random(19);
+		List<ImageSignature> signatures = SignatureIndexTest.clusteredSignatures(random, 1000, true);
+		
+		DuplicateClusterJob[] job = new DuplicateClusterJob[1];
+		DBHandler dbHandler = new InMemoryDBHandler() {
+			@Override
+			public void exportDuplicateScanCheckpoint(DuplicateScanProgress progress, List<String> pairs) {
+				
+				super.exportDuplicateScanCheckpoint(progress, pairs);
+				job[0].cancel();
+				
+			}
+		};
+		dbHandler.initDB();
+		signatures.subList(0, 900).forEach(dbHandler::exportSignature);
+		
+		job[0] = new DuplicateClusterJob(dbHandler, RADIUS, -1);
+		job[0].setCheckpointSize(300);
+		job[0].run();
+		String runId = dbHandler.getDuplicateScanProgress().getRunId();
+		
+		//Different settings start a new run
+		job[0] = new DuplicateClusterJob(dbHandler, RADIUS + 1, -1);
+		job[0].setCheckpointSize(300);
+		job[0].run();
+		assertNotEquals(runId, dbHandler.getDuplicateScanProgress().getRunId());
+		runId = dbHandler.getDuplicateScanProgress().getRunId();
+		
+		//So does adding signatures, even with the same settings, since they can sort in before where it got to
+		signatures.subList(900, 1000).forEach(dbHandler::exportSignature);
+		job[0].run();
+		assertNotEquals(runId, dbHandler.getDuplicateScanProgress().getRunId());
+		assertEquals(0, dbHandler.getDuplicateScanProgress().getCheckpoint());
+		
+		job[0] = new DuplicateClusterJob(dbHandler, RADIUS, -1);
+		job[0].setCheckpointSize(300);
+		List<List<String>> clusters;
+		do {
+			clusters = job[0].run();
+		} while (dbHandler.getDuplicateScanProgress() != null);
+		assertEquals(bruteForce(signatures), toSets(clusters));
+		
+	}
+	
+}
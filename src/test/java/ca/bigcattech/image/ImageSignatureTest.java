@@ -0,0 +1,65 @@
+/*
+ *     ImageSignatureTest
+ *     Last Modified: 2026-10-18, 7:55 p.m.
+ *     Copyright (C) 2026-10-18, 7:55 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.image;
+
+import ca.bigcattech.MediaDB.image.ImageSignature;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageSignatureTest {
+	
+	@Test
+	void packedFormat() {
+		
+		Color[][] colors = new Color[5][5];
+		for (int x = 0; x < 5; x++) {
+			for (int y = 0; y < 5; y++) {
+				colors[x][y] = new Color(x * 50, y * 60, 255 - x * y * 10);
+			}
+		}
+		
+		ImageSignature signature = new ImageSignature("a", colors);
+		byte[] data = signature.getData();
+		assertEquals(ImageSignature.NUM_BYTES, data.length);
+		
+		//The packed bytes, and the old hex strings, have to give back the same colours
+		ImageSignature fromBytes = new ImageSignature("a", data.clone());
+		ImageSignature fromHex = new ImageSignature("a", signature.convertDataStructure());
+		assertArrayEquals(data, fromHex.getData());
+		for (int x = 0; x < 5; x++) {
+			for (int y = 0; y < 5; y++) {
+				assertEquals(colors[x][y], fromBytes.getSignature()[x][y]);
+			}
+		}
+		
+		List<List<String>> legacy = new ArrayList<>();
+		for (int x = 0; x < 5; x++) {
+			legacy.add(List.of("#ff0000", "#00ff00", "#0000ff", "#ffffff", "#000000"));
+		}
+		assertEquals(new Color(0, 0, 255), new ImageSignature(legacy).getSignature()[2][2]);
+		
+	}
+	
+}
@@ -0,0 +1,119 @@
+/*
+ *     PerceptualHashIndexTest
+ *     Last Modified: 2026-10-18, 10:41 p.m.
+ *     Copyright (C) 2026-10-18, 10:41 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.bigcattech.image;
+
+import ca.bigcattech.MediaDB.image.ImageSignature;
+import ca.bigcattech.MediaDB.image.PerceptualHashIndex;
+import ca.bigcattech.MediaDB.image.SimilarityFinder;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerceptualHashIndexTest {
+	
+	private static ImageSignature withHash(String hash, long perceptualHash) {
+		
+		ImageSignature signature = new ImageSignature(hash, new byte[ImageSignature.NUM_BYTES]);
+		signature.setPerceptualHash(perceptualHash);
+		return signature;
+		
+	}
+	
+	@Test
+	void matchesLinearScan() {
+		
+		Random random = new Random(11);
+		List<ImageSignature> signatures = new ArrayList<>();
+		//Groups of near copies, so there's actually something to find
+		long base = 0;
+		for (int i = 0; i < 20000; i++) {
+			if (i % 5 == 0) base = random.nextLong();
+			long hash = base;
+			for (int flips = random.nextInt(12); flips > 0; flips--) {
+				hash ^= 1L << random.nextInt(64);
+			}
+			signatures.add(withHash(Integer.toString(i), hash));
+		}
+		//Without a perceptual hash it should just be skipped
+		signatures.add(new ImageSignature("none", new byte[ImageSignature.NUM_BYTES]));
+		
+		PerceptualHashIndex index = new PerceptualHashIndex(signatures.subList(0, 12000));
+		index.addAll(signatures.subList(12000, signatures.size()));
+		assertEquals(20000, index.size());
+		
+		for (int i = 0; i < 200; i++) {
+			long query = signatures.get(random.nextInt(20000)).getPerceptualHash() ^ (1L << random.nextInt(64));
+			for (int maxDistance : new int[]{0, 3, 8, 11, 16}) {
+				List<Double> expected = new ArrayList<>();
+				for (ImageSignature signature : signatures) {
+					int dist = PerceptualHashIndex.hammingDistance(query, signature.getPerceptualHash());
+					if (signature.hasPerceptualHash() && dist <= maxDistance) expected.add((double) dist);
+				}
+				expected.sort(Double::compare);
+				
+				List<Map.Entry<String, Double>> results = index.findWithin(query, maxDistance);
+				assertEquals(expected, results.stream().map(Map.Entry::getValue).toList());
+				assertEquals(results.size(), results.stream().map(Map.Entry::getKey).distinct().count());
+				
+				List<Map.Entry<String, Double>> nearest = index.findNearest(query, 3, maxDistance);
+				assertEquals(expected.subList(0, Math.min(3, expected.size())), nearest.stream().map(Map.Entry::getValue).toList());
+			}
+		}
+		
+	}
+	
+	@Test
+	void perceptualHash() {
+		
+		//A smooth pattern, then the same pattern at half the size and darker, which should hash almost the same
+		BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+		BufferedImage smaller = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < 400; x++) {
+			for (int y = 0; y < 300; y++) {
+				int value = (int) (127 + 100 * Math.sin(x / 37.0) * Math.cos(y / 23.0));
+				image.setRGB(x, y, value << 16 | value << 8 | value);
+				if (x % 2 == 0 && y % 2 == 0) {
+					int darker = value * 3 / 4;
+					smaller.setRGB(x / 2, y / 2, darker << 16 | darker << 8 | darker);
+				}
+			}
+		}
+		
+		long hash = SimilarityFinder.calcPerceptualHash(image);
+		assertTrue(Long.bitCount(hash) > 8 && Long.bitCount(hash) < 56);
+		assertTrue(PerceptualHashIndex.hammingDistance(hash, SimilarityFinder.calcPerceptualHash(smaller)) <= 2);
+		
+		//Flipping it left to right turns every comparison around
+		BufferedImage flipped = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < 400; x++) {
+			for (int y = 0; y < 300; y++) {
+				flipped.setRGB(399 - x, y, image.getRGB(x, y));
+			}
+		}
+		assertTrue(PerceptualHashIndex.hammingDistance(hash, SimilarityFinder.calcPerceptualHash(flipped)) > 16);
+		
+	}
+	
+}
@@ -0,0 +1,117 @@
+/*
+ *     SignatureIndexTest
+ *     Last Modified: 2026-10-18, 9:35 p.m.
+ *     Copyright (C) 2026-10-18, 9:35 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.image;
+
+import ca.bigcattech.MediaDB.image.ImageSignature;
+import ca.bigcattech.MediaDB.image.SignatureIndex;
+import ca.bigcattech.MediaDB.image.SimilarityFinder;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignatureIndexTest {
+	
+	/**
+	 * Groups of about ten signatures that are slight variations on each other, which is closer to a real library than pure noise.
+	 * If smooth is set each group is based on a flat colour plus a gradient, like most photos, otherwise on random noise which is the worst case for the index.
+	 */
+	static List<ImageSignature> clusteredSignatures(Random random, int count, boolean smooth) {
+		
+		List<ImageSignature> signatures = new ArrayList<>(count);
+		byte[] base = null;
+		for (int i = 0; i < count; i++) {
+			if (i % 10 == 0) base = smooth ? smoothSignature(random) : SimilarityFinderTest.randomSignature(random, "").getData();
+			byte[] data = new byte[ImageSignature.NUM_BYTES];
+			for (int b = 0; b < data.length; b++) {
+				data[b] = clamp((base[b] & 0xFF) + random.nextInt(31) - 15);
+			}
+			signatures.add(new ImageSignature(Integer.toString(i), data));
+		}
+		return signatures;
+		
+	}
+	
+	private static byte[] smoothSignature(Random random) {
+		
+		byte[] data = new byte[ImageSignature.NUM_BYTES];
+		for (int channel = 0; channel < 3; channel++) {
+			int colour = random.nextInt(256);
+			int gradientX = random.nextInt(41) - 20;
+			int gradientY = random.nextInt(41) - 20;
+			for (int x = 0; x < ImageSignature.SIZE; x++) {
+				for (int y = 0; y < ImageSignature.SIZE; y++) {
+					data[(x * ImageSignature.SIZE + y) * 3 + channel] = clamp(colour + gradientX * (x - 2) + gradientY * (y - 2) + random.nextInt(61) - 30);
+				}
+			}
+		}
+		return data;
+		
+	}
+	
+	private static byte clamp(int value) {
+		
+		return (byte) Math.max(0, Math.min(255, value));
+	}
+	
+	private static void assertSameResults(List<Map.Entry<String, Double>> expected, List<Map.Entry<String, Double>> actual) {
+		
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getValue(), actual.get(i).getValue());
+		}
+		
+	}
+	
+	@Test
+	void matchesLinearScan() {
+		
+		Random random = new Random(3);
+		List<ImageSignature> signatures = clusteredSignatures(random, 2500, true);
+		signatures.addAll(clusteredSignatures(random, 2500, false));
+		SimilarityFinder finder = new SimilarityFinder(null);
+		
+		//Some built all at once, the rest added one at a time
+		SignatureIndex index = new SignatureIndex(signatures.subList(0, 1500));
+		index.addAll(signatures.subList(1500, 5000));
+		assertEquals(5000, index.size());
+		
+		for (int i = 0; i < 50; i++) {
+			ImageSignature query = signatures.get(random.nextInt(signatures.size()));
+			assertSameResults(finder.checkSimilarity(query, signatures), finder.checkSimilarity(query, index));
+			
+			List<Map.Entry<String, Double>> nearest = index.findNearest(query, 20);
+			assertSameResults(index.findWithin(query, nearest.get(19).getValue()).subList(0, 20), nearest);
+		}
+		
+		//Identical signatures can't be split apart, they should still all be found
+		ImageSignature copy = signatures.get(0);
+		for (int i = 0; i < 200; i++) {
+			index.add(new ImageSignature("copy" + i, copy.getData()));
+		}
+		assertEquals(201, index.findWithin(copy, 0).size());
+		
+	}
+	
+}
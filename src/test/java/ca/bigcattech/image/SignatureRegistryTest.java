@@ -0,0 +1,119 @@
+/*
+ *     SignatureRegistryTest
+ *     Last Modified: 2026-10-18, 11:59 p.m.
+ *     Copyright (C) 2026-10-18, 11:59 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.bigcattech.image;
+
+import ca.bigcattech.MediaDB.image.ImageSignature;
+import ca.bigcattech.MediaDB.image.SignatureRegistry;
+import ca.bigcattech.MediaDB.image.SimilarityFinder;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignatureRegistryTest {
+	
+	@Test
+	void snapshots() {
+		
+		Random random = new Random(23);
+		List<ImageSignature> signatures = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			ImageSignature signature = SimilarityFinderTest.randomSignature(random, "hash" + i);
+			if (i % 3 == 0) signature.setPerceptualHash(random.nextLong());
+			signatures.add(signature);
+		}
+		
+		SignatureRegistry registry = new SignatureRegistry();
+		registry.addAll(signatures.subList(0, 5000));
+		SignatureRegistry.Snapshot half = registry.snapshot();
+		registry.addAll(signatures.subList(5000, 10000));
+		SignatureRegistry.Snapshot all = registry.snapshot();
+		registry.clear();
+		
+		//Neither snapshot should have noticed anything that happened after it was taken
+		assertEquals(0, registry.size());
+		assertEquals(5000, half.size());
+		assertEquals(10000, all.size());
+		assertThrows(IndexOutOfBoundsException.class, () -> half.getHash(5000));
+		for (int id = 0; id < 10000; id += 7) {
+			ImageSignature signature = all.getSignature(id);
+			assertEquals(signatures.get(id).getHash(), signature.getHash());
+			assertArrayEquals(signatures.get(id).getData(), signature.getData());
+			assertEquals(signatures.get(id).hasPerceptualHash(), all.hasPerceptualHash(id));
+			assertEquals(signatures.get(id).getPerceptualHash(), all.getPerceptualHash(id));
+		}
+		
+		SimilarityFinder finder = new SimilarityFinder(null);
+		for (int i = 0; i < 20; i++) {
+			ImageSignature query = SimilarityFinderTest.randomSignature(random, "");
+			assertEquals(finder.findMostSimilar(query, signatures, 10, SimilarityFinder.MAX_DISTANCE), finder.findMostSimilar(query, all, 10, SimilarityFinder.MAX_DISTANCE));
+			assertEquals(finder.checkSimilarity(query, signatures.subList(0, 5000), 950), finder.checkSimilarity(query, half, 950));
+		}
+		
+	}
+	
+	@Test
+	void concurrentReaders() throws InterruptedException {
+		
+		Random random = new Random(29);
+		List<ImageSignature> signatures = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			signatures.add(SimilarityFinderTest.randomSignature(random, Integer.toString(i)));
+		}
+		
+		SignatureRegistry registry = new SignatureRegistry();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread writer = new Thread(() -> registry.addAll(signatures));
+		List<Thread> readers = new ArrayList<>();
+		for (int r = 0; r < 3; r++) {
+			readers.add(new Thread(() -> {
+				try {
+					int seen = 0;
+					while (seen < signatures.size()) {
+						//Whatever size a snapshot has, everything under it has to be fully written
+						SignatureRegistry.Snapshot snapshot = registry.snapshot();
+						assertTrue(snapshot.size() >= seen);
+						for (int id = seen; id < snapshot.size(); id++) {
+							assertEquals(signatures.get(id).getHash(), snapshot.getHash(id));
+							assertArrayEquals(signatures.get(id).getData(), snapshot.getSignature(id).getData());
+						}
+						seen = snapshot.size();
+					}
+				}
+				catch (Throwable e) {
+					failure.set(e);
+				}
+			}));
+		}
+		
+		readers.forEach(Thread::start);
+		writer.start();
+		writer.join();
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		assertNull(failure.get());
+		
+	}
+	
+}
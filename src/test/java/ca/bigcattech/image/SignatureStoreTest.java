@@ -0,0 +1,102 @@
+/*
+ *     SignatureStoreTest
+ *     Last Modified: 2026-10-18, 9:58 p.m.
+ *     Copyright (C) 2026-10-18, 9:58 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.bigcattech.image;
+
+import ca.bigcattech.MediaDB.image.ImageSignature;
+import ca.bigcattech.MediaDB.image.SignatureStore;
+import ca.bigcattech.MediaDB.image.SimilarityFinder;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignatureStoreTest {
+	
+	@Test
+	void reopen() throws IOException {
+		
+		Random random = new Random(5);
+		File file = File.createTempFile("signatures", ".dat");
+		file.deleteOnExit();
+		//The file starts out empty, which should be treated the same as a new one
+		List<ImageSignature> signatures = new ArrayList<>();
+		try (SignatureStore store = SignatureStore.open(file)) {
+			//Enough to have to grow the file a couple of times
+			for (int i = 0; i < 3000; i++) {
+				ImageSignature signature = SimilarityFinderTest.randomSignature(random, "hash" + i);
+				if (i % 2 == 0) signature.setPerceptualHash(random.nextLong());
+				signatures.add(signature);
+				store.put(signature);
+			}
+			store.put(signatures.get(0));
+			assertEquals(3000, store.getNumRecords());
+			
+			store.remove("hash1");
+			ImageSignature replacement = SimilarityFinderTest.randomSignature(random, "hash2");
+			store.put(replacement);
+			signatures.set(2, replacement);
+			signatures.remove(1);
+			assertEquals(2999, store.size());
+			assertEquals(0, store.getRevision());
+			store.setRevision(42);
+		}
+		
+		try (SignatureStore store = SignatureStore.open(file)) {
+			assertEquals(2999, store.size());
+			assertEquals(2, store.getNumRemoved());
+			assertEquals(42, store.getRevision());
+			
+			List<ImageSignature> loaded = store.loadAll();
+			assertEquals(signatures.size(), loaded.size());
+			assertEquals("hash2", loaded.get(loaded.size() - 1).getHash());
+			assertArrayEquals(signatures.get(1).getData(), loaded.get(loaded.size() - 1).getData());
+			assertArrayEquals(signatures.get(0).getChannelSums(), loaded.get(0).getChannelSums());
+			assertEquals(signatures.size(), store.getHashes().size());
+			assertTrue(store.contains("hash2"));
+			assertFalse(store.contains("hash1"));
+			//The replacement went on the end, so everything after it is one further along
+			for (int i = 2; i < 100; i++) {
+				assertEquals(signatures.get(i).getHash(), loaded.get(i - 1).getHash());
+				assertEquals(signatures.get(i).hasPerceptualHash(), loaded.get(i - 1).hasPerceptualHash());
+				assertEquals(signatures.get(i).getPerceptualHash(), loaded.get(i - 1).getPerceptualHash());
+			}
+			
+			SimilarityFinder finder = new SimilarityFinder(null);
+			for (int i = 0; i < 20; i++) {
+				ImageSignature query = SimilarityFinderTest.randomSignature(random, "");
+				List<Map.Entry<String, Double>> expected = finder.findMostSimilar(query, signatures, 10, SimilarityFinder.MAX_DISTANCE);
+				List<Map.Entry<String, Double>> actual = finder.findMostSimilar(query, store, 10, SimilarityFinder.MAX_DISTANCE);
+				assertEquals(expected, actual);
+			}
+			
+			store.clear();
+			assertEquals(0, store.size());
+			assertEquals(42, store.getRevision());
+		}
+		assertTrue(file.delete());
+		
+	}
+	
+}
@@ -0,0 +1,101 @@
+/*
+ *     SimilarityBenchmark
+ *     Last Modified: 2026-10-18, 8:55 p.m.
+ *     Copyright (C) 2026-10-18, 8:55 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.image;
+
+import ca.bigcattech.MediaDB.image.ImageSignature;
+import ca.bigcattech.MediaDB.image.SignatureIndex;
+import ca.bigcattech.MediaDB.image.SimilarityFinder;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Not a test, times the similarity search against random libraries of different sizes so changes to it can be compared.
+ * Run it with gradle similarityBenchmark, or pass the library sizes to try as arguments.
+ */
+public class SimilarityBenchmark {
+	
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+	
+	public static void main(String[] args) {
+		
+		int[] sizes = args.length == 0 ? new int[]{10_000, 100_000, 1_000_000} : new int[args.length];
+		for (int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+		
+		System.out.println("Vector API: " + (SimilarityFinder.isVectorized() ? "on" : "off"));
+		for (int size : sizes) {
+			run(size, false);
+			run(size, true);
+		}
+		
+	}
+	
+	private static void run(int size, boolean smooth) {
+		
+		Random random = new Random(size);
+		List<ImageSignature> signatures = SignatureIndexTest.clusteredSignatures(random, size, smooth);
+		byte[][] data = new byte[size][];
+		for (int i = 0; i < size; i++) {
+			data[i] = signatures.get(i).getData();
+		}
+		ImageSignature query = signatures.get(random.nextInt(size));
+		double[] out = new double[size];
+		SimilarityFinder finder = new SimilarityFinder(null);
+		
+		System.out.println(size + (smooth ? " smooth" : " noise") + " signatures:");
+		time("  scalar distance", () -> SimilarityFinder.calcDistancesScalar(query.getData(), data, size, out));
+		time("  batch distance", () -> SimilarityFinder.calcDistances(query.getData(), data, size, out));
+		time("  linear checkSimilarity", () -> finder.checkSimilarity(query, signatures));
+		time("  linear radius 500", () -> finder.checkSimilarity(query, signatures, 500));
+		time("  linear 20 nearest", () -> finder.findMostSimilar(query, signatures, 20, Double.POSITIVE_INFINITY));
+		
+		long start = System.nanoTime();
+		SignatureIndex index = new SignatureIndex(signatures);
+		System.out.printf("  index build: %.3fms%n", (System.nanoTime() - start) / 1e6);
+		time("  index checkSimilarity", () -> finder.checkSimilarity(query, index));
+		time("  index radius 500", () -> finder.checkSimilarity(query, index, 500));
+		time("  index 20 nearest", () -> index.findNearest(query, 20));
+		
+	}
+	
+	static void time(String name, Runnable task) {
+		
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			task.run();
+		}
+		
+		long best = Long.MAX_VALUE;
+		long total = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			long start = System.nanoTime();
+			task.run();
+			long time = System.nanoTime() - start;
+			best = Math.min(best, time);
+			total += time;
+		}
+		
+		System.out.printf("%s: best %.3fms, average %.3fms%n", name, best / 1e6, total / 1e6 / ROUNDS);
+		
+	}
+	
+}
@@ -0,0 +1,292 @@
+/*
+ *     SimilarityFinderTest
+ *     Last Modified: 2026-10-18, 8:20 p.m.
+ *     Copyright (C) 2026-10-18, 8:20 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.image;
+
+import ca.bigcattech.MediaDB.image.ImageSignature;
+import ca.bigcattech.MediaDB.image.SignatureIndex;
+import ca.bigcattech.MediaDB.image.SimilarityFinder;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimilarityFinderTest {
+	
+	static ImageSignature randomSignature(Random random, String hash) {
+		
+		byte[] data = new byte[ImageSignature.NUM_BYTES];
+		random.nextBytes(data);
+		return new ImageSignature(hash, data);
+		
+	}
+	
+	//The original Color based distance, the packed version has to match it exactly
+	private static double referenceDistance(ImageSignature signature, ImageSignature signatureOther) {
+		
+		double dist = 0;
+		for (int x = 0; x < 5; x++) {
+			for (int y = 0; y < 5; y++) {
+				Color c1 = signature.getSignature()[x][y];
+				Color c2 = signatureOther.getSignature()[x][y];
+				dist += Math.sqrt(Math.pow(c1.getRed() - c2.getRed(), 2) + Math.pow(c1.getGreen() - c2.getGreen(), 2) + Math.pow(c1.getBlue() - c2.getBlue(), 2));
+			}
+		}
+		return dist;
+		
+	}
+	
+	@Test
+	void distance() {
+		
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			ImageSignature a = randomSignature(random, "a");
+			ImageSignature b = randomSignature(random, "b");
+			assertEquals(referenceDistance(a, b), SimilarityFinder.calcDistance(a, b));
+			assertEquals(0, SimilarityFinder.calcDistance(a, a));
+		}
+		
+	}
+	
+	@Test
+	void batchDistance() {
+		
+		Random random = new Random(7);
+		ImageSignature signature = randomSignature(random, "a");
+		
+		//Odd sizes so there's always a partial vector left over
+		for (int count : new int[]{0, 1, 3, 17, 255}) {
+			
+			byte[][] others = new byte[count][];
+			for (int i = 0; i < count; i++) {
+				others[i] = randomSignature(random, "b" + i).getData();
+			}
+			
+			double[] distances = new double[count];
+			double[] scalar = new double[count];
+			SimilarityFinder.calcDistances(signature.getData(), others, count, distances);
+			SimilarityFinder.calcDistancesScalar(signature.getData(), others, count, scalar);
+			
+			for (int i = 0; i < count; i++) {
+				assertEquals(SimilarityFinder.calcDistance(signature.getData(), others[i]), distances[i]);
+				assertEquals(distances[i], scalar[i]);
+			}
+			
+			//With a limit, anything within it has to be exact and anything past it only has to stay past it
+			byte[] packed = new byte[count * ImageSignature.NUM_BYTES];
+			for (int i = 0; i < count; i++) {
+				System.arraycopy(others[i], 0, packed, i * ImageSignature.NUM_BYTES, ImageSignature.NUM_BYTES);
+			}
+			for (double limit : new double[]{0, 3500, 4500, Double.MAX_VALUE}) {
+				double[] within = new double[count];
+				SimilarityFinder.calcDistancesWithin(signature.getData(), packed, count, limit, within);
+				for (int i = 0; i < count; i++) {
+					if (distances[i] <= limit) assertEquals(distances[i], within[i]);
+					else assertTrue(within[i] > limit);
+				}
+			}
+			
+		}
+		
+	}
+	
+	@Test
+	void pruning() {
+		
+		Random random = new Random(11);
+		List<ImageSignature> signatures = SignatureIndexTest.clusteredSignatures(random, 2000, true);
+		SimilarityFinder finder = new SimilarityFinder(null);
+		
+		for (int i = 0; i < 20; i++) {
+			
+			ImageSignature query = signatures.get(random.nextInt(signatures.size()));
+			for (double radius : new double[]{100, 500, 1000, 3000}) {
+				
+				List<Double> expected = new ArrayList<>();
+				for (ImageSignature signature : signatures) {
+					double dist = SimilarityFinder.calcDistance(query, signature);
+					assertEquals(dist <= radius ? dist : Double.POSITIVE_INFINITY, limited(query, signature, radius));
+					if (dist <= radius) {
+						assertTrue(SimilarityFinder.mightBeWithin(query.getChannelSums(), signature.getChannelSums(), 0, radius), "Bound ruled out a match");
+						expected.add(dist);
+					}
+				}
+				expected.sort(null);
+				
+				List<Map.Entry<String, Double>> results = finder.checkSimilarity(query, signatures, radius);
+				assertEquals(expected.size(), results.size());
+				for (int j = 0; j < expected.size(); j++) {
+					assertEquals(expected.get(j), results.get(j).getValue());
+				}
+				
+			}
+			
+		}
+		
+	}
+	
+	@Test
+	void topK() {
+		
+		Random random = new Random(13);
+		List<ImageSignature> signatures = SignatureIndexTest.clusteredSignatures(random, 3000, true);
+		SignatureIndex index = new SignatureIndex(signatures);
+		SimilarityFinder finder = new SimilarityFinder(null);
+		
+		for (int i = 0; i < 20; i++) {
+			
+			ImageSignature query = signatures.get(random.nextInt(signatures.size()));
+			for (int k : new int[]{1, 5, 20, 100}) {
+				for (double radius : new double[]{500, Double.POSITIVE_INFINITY}) {
+					
+					List<Map.Entry<String, Double>> all = finder.checkSimilarity(query, signatures, radius);
+					List<Map.Entry<String, Double>> expected = all.subList(0, Math.min(k, all.size()));
+					assertSameDistances(expected, finder.findMostSimilar(query, signatures, k, radius));
+					assertSameDistances(expected, finder.findMostSimilar(query, index, k, radius));
+					
+				}
+			}
+			
+		}
+		
+		assertTrue(finder.findMostSimilar(signatures.get(0), signatures, 0, 1000).isEmpty());
+		
+	}
+	
+	private static void assertSameDistances(List<Map.Entry<String, Double>> expected, List<Map.Entry<String, Double>> actual) {
+		
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getValue(), actual.get(i).getValue());
+		}
+		
+	}
+	
+	private static double limited(ImageSignature signature, ImageSignature signatureOther, double limit) {
+		
+		double dist = SimilarityFinder.calcDistance(signature.getData(), signatureOther.getData(), 0, limit);
+		return dist <= limit ? dist : Double.POSITIVE_INFINITY;
+		
+	}
+	
+	/**
+	 * Averages each window pixel by pixel through getRGB, or the raw sample for grey, the way the signature is meant to be worked out
+	 */
+	private static byte[] referenceSignature(BufferedImage image, boolean rawGrey) {
+		
+		int width = image.getWidth();
+		int height = image.getHeight();
+		byte[] data = new byte[ImageSignature.NUM_BYTES];
+		for (int x = 0; x < ImageSignature.SIZE; x++) {
+			for (int y = 0; y < ImageSignature.SIZE; y++) {
+				int startX = (int) Math.floor((2 * x + 1) / 10f * (double) width - 15);
+				int startY = (int) Math.floor((2 * y + 1) / 10f * (double) height - 15);
+				long[] sums = new long[3];
+				for (int dx = 0; dx < 30; dx++) {
+					for (int dy = 0; dy < 30; dy++) {
+						int px = Math.max(0, Math.min(width - 1, startX + dx));
+						int py = Math.max(0, Math.min(height - 1, startY + dy));
+						int rgb = rawGrey ? image.getRaster().getSample(px, py, 0) * 0x010101 : image.getRGB(px, py);
+						sums[0] += (rgb >> 16) & 0xFF;
+						sums[1] += (rgb >> 8) & 0xFF;
+						sums[2] += rgb & 0xFF;
+					}
+				}
+				for (int c = 0; c < 3; c++) {
+					data[(x * ImageSignature.SIZE + y) * 3 + c] = (byte) (sums[c] / 900);
+				}
+			}
+		}
+		return data;
+		
+	}
+	
+	private static BufferedImage convert(BufferedImage image, int type) {
+		
+		BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), type);
+		Graphics2D graphics = converted.createGraphics();
+		graphics.drawImage(image, 0, 0, null);
+		graphics.dispose();
+		return converted;
+		
+	}
+	
+	@Test
+	void signatureFromImage() {
+		
+		Random random = new Random(19);
+		for (int[] size : new int[][]{{640, 480}, {123, 457}, {7, 5}}) {
+			
+			BufferedImage image = new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_RGB);
+			for (int x = 0; x < size[0]; x++) {
+				for (int y = 0; y < size[1]; y++) {
+					image.setRGB(x, y, (x * 255 / size[0]) << 16 | (y * 255 / size[1]) << 8 | random.nextInt(256));
+				}
+			}
+			byte[] expected = referenceSignature(image, false);
+			assertArrayEquals(expected, SimilarityFinder.calcSignature(image).getData());
+			
+			//Every type that can hold the colours exactly should come out the same
+			for (int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_BGR}) {
+				assertArrayEquals(expected, SimilarityFinder.calcSignature(convert(image, type)).getData());
+			}
+			
+			//Indexed images have to be looked up in the palette, not averaged as indexes
+			BufferedImage indexed = convert(image, BufferedImage.TYPE_BYTE_INDEXED);
+			assertArrayEquals(referenceSignature(indexed, false), SimilarityFinder.calcSignature(indexed).getData());
+			
+			BufferedImage grey = convert(image, BufferedImage.TYPE_BYTE_GRAY);
+			byte[] greySignature = SimilarityFinder.calcSignature(grey).getData();
+			assertArrayEquals(referenceSignature(grey, true), greySignature);
+			for (int i = 0; i < greySignature.length; i += 3) {
+				assertEquals(greySignature[i], greySignature[i + 1]);
+				assertEquals(greySignature[i], greySignature[i + 2]);
+			}
+			
+		}
+		
+	}
+	
+	@Test
+	void oldSignatureCompatibility() {
+		
+		BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+		assertTrue(SimilarityFinder.matchesOldSignature(image));
+		assertTrue(SimilarityFinder.matchesOldSignature(convert(image, BufferedImage.TYPE_3BYTE_BGR)));
+		assertTrue(SimilarityFinder.matchesOldSignature(convert(image, BufferedImage.TYPE_INT_BGR)));
+		
+		for (int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_INDEXED, BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_565_RGB}) {
+			assertFalse(SimilarityFinder.matchesOldSignature(convert(image, type)));
+		}
+		
+		//Too small for the windows to fit
+		assertFalse(SimilarityFinder.matchesOldSignature(new BufferedImage(300, 149, BufferedImage.TYPE_INT_RGB)));
+		assertFalse(SimilarityFinder.matchesOldSignature(new BufferedImage(100, 300, BufferedImage.TYPE_INT_RGB)));
+		assertTrue(SimilarityFinder.matchesOldSignature(new BufferedImage(150, 150, BufferedImage.TYPE_INT_RGB)));
+		
+	}
+	
+}
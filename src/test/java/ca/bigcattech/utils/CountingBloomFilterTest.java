@@ -0,0 +1,61 @@
+/*
+ *     CountingBloomFilterTest
+ *     Last Modified: 2026-10-18, 6:20 p.m.
+ *     Copyright (C) 2026-10-18, 6:20 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.utils;
+
+import ca.bigcattech.MediaDB.utils.CountingBloomFilter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountingBloomFilterTest {
+	
+	@Test
+	void membership() {
+		
+		CountingBloomFilter filter = new CountingBloomFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			filter.add("hash" + i);
+		}
+		assertEquals(10000, filter.size());
+		
+		//No false negatives
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(filter.mightContain("hash" + i));
+		}
+		
+		int falsePositives = 0;
+		for (int i = 10000; i < 110000; i++) {
+			if (filter.mightContain("hash" + i)) falsePositives++;
+		}
+		assertTrue(falsePositives < 2000, "False positive rate too high: " + falsePositives / 100000d);
+		assertTrue(filter.getExpectedFalsePositiveRate() < 0.02);
+		
+		//Removing a value shouldn't affect any of the others
+		for (int i = 0; i < 5000; i++) {
+			filter.remove("hash" + i);
+		}
+		assertEquals(5000, filter.size());
+		for (int i = 5000; i < 10000; i++) {
+			assertTrue(filter.mightContain("hash" + i));
+		}
+		
+	}
+	
+}
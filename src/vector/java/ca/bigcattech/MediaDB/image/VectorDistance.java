@@ -0,0 +1,166 @@
+/*
+ *     VectorDistance
+ *     Last Modified: 2026-10-18, 8:45 p.m.
+ *     Copyright (C) 2026-10-18, 8:45 p.m.  CameronBarnes
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ca.bigcattech.MediaDB.image;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The signature distance using the incubating Vector API, each lane works on a different candidate so several are compared at once.
+ * It's built separately from the rest and only loaded by name from SimilarityFinder, it won't load at all if the jdk.incubator.vector module isn't there.
+ * Every lane adds its 25 cell distances in the same order as the scalar code, and a vector sqrt is exact just like Math.sqrt, so the results are bit-identical.
+ */
+final class VectorDistance implements DistanceKernel {
+	
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	//Same number of lanes as the doubles, so the integer math converts straight across
+	private static final VectorSpecies<Integer> INT_SPECIES = VectorSpecies.of(int.class, VectorShape.forBitSize(Math.max(64, SPECIES.vectorBitSize() / 2)));
+	private static final int CELLS = ImageSignature.SIZE * ImageSignature.SIZE;
+	
+	VectorDistance() {}
+	
+	@Override
+	public int getLanes() {
+		
+		return INT_SPECIES.length() == SPECIES.length() ? SPECIES.length() : 1;
+	}
+	
+	@Override
+	public void calcDistances(byte[] signature, byte[][] others, int count, double[] out) {
+		
+		int lanes = SPECIES.length();
+		//The candidates' colour values turned sideways, byte by byte with one slot per lane, so each channel of each cell loads as a single vector
+		int[] planes = new int[ImageSignature.NUM_BYTES * lanes];
+		
+		int i = 0;
+		for (; i + lanes <= count; i += lanes) {
+			
+			for (int lane = 0; lane < lanes; lane++) {
+				byte[] other = others[i + lane];
+				for (int b = 0; b < ImageSignature.NUM_BYTES; b++) {
+					planes[b * lanes + lane] = other[b] & 0xFF;
+				}
+			}
+			accumulate(signature, planes, out, i);
+			
+		}
+		
+		//Whatever doesn't fill a whole vector
+		for (; i < count; i++) {
+			out[i] = SimilarityFinder.calcDistance(signature, others[i]);
+		}
+		
+	}
+	
+	@Override
+	public void calcDistances(byte[] signature, byte[] others, int count, double[] out) {
+		
+		int lanes = SPECIES.length();
+		int[] planes = new int[ImageSignature.NUM_BYTES * lanes];
+		
+		int i = 0;
+		for (; i + lanes <= count; i += lanes) {
+			
+			for (int lane = 0, offset = i * ImageSignature.NUM_BYTES; lane < lanes; lane++, offset += ImageSignature.NUM_BYTES) {
+				for (int b = 0; b < ImageSignature.NUM_BYTES; b++) {
+					planes[b * lanes + lane] = others[offset + b] & 0xFF;
+				}
+			}
+			accumulate(signature, planes, out, i);
+			
+		}
+		
+		for (; i < count; i++) {
+			out[i] = SimilarityFinder.calcDistance(signature, others, i * ImageSignature.NUM_BYTES);
+		}
+		
+	}
+	
+	@Override
+	public void calcDistances(byte[] signature, byte[] others, int count, double limit, double[] out) {
+		
+		int lanes = SPECIES.length();
+		//Only one cell turned sideways at a time, so nothing is spent on the cells after every lane has gone past the limit
+		int[] cellPlanes = new int[3 * lanes];
+		
+		int i = 0;
+		for (; i + lanes <= count; i += lanes) {
+			
+			DoubleVector dist = DoubleVector.zero(SPECIES);
+			for (int cell = 0, b = 0; cell < CELLS; cell++, b += 3) {
+				
+				for (int lane = 0, offset = i * ImageSignature.NUM_BYTES + b; lane < lanes; lane++, offset += ImageSignature.NUM_BYTES) {
+					cellPlanes[lane] = others[offset] & 0xFF;
+					cellPlanes[lanes + lane] = others[offset + 1] & 0xFF;
+					cellPlanes[2 * lanes + lane] = others[offset + 2] & 0xFF;
+				}
+				dist = dist.add(cellDistance(signature, b, cellPlanes, lanes));
+				//Same as the scalar version, every cell only adds to the total so a lane that's over stays over
+				if (dist.compare(VectorOperators.GT, limit).allTrue()) break;
+				
+			}
+			dist.intoArray(out, i);
+			
+		}
+		
+		for (; i < count; i++) {
+			out[i] = SimilarityFinder.calcDistance(signature, others, i * ImageSignature.NUM_BYTES, limit);
+		}
+		
+	}
+	
+	/**
+	 * The distance for one cell in every lane, with the cell's three channels laid out one after the other in planes
+	 */
+	private static DoubleVector cellDistance(byte[] signature, int b, int[] planes, int lanes) {
+		
+		IntVector r = IntVector.fromArray(INT_SPECIES, planes, 0).sub(signature[b] & 0xFF);
+		IntVector g = IntVector.fromArray(INT_SPECIES, planes, lanes).sub(signature[b + 1] & 0xFF);
+		IntVector bl = IntVector.fromArray(INT_SPECIES, planes, 2 * lanes).sub(signature[b + 2] & 0xFF);
+		IntVector square = r.mul(r).add(g.mul(g)).add(bl.mul(bl));
+		
+		DoubleVector squareDouble = (DoubleVector) square.convertShape(VectorOperators.I2D, SPECIES, 0);
+		return squareDouble.lanewise(VectorOperators.SQRT);
+		
+	}
+	
+	private static void accumulate(byte[] signature, int[] planes, double[] out, int index) {
+		
+		int lanes = SPECIES.length();
+		DoubleVector dist = DoubleVector.zero(SPECIES);
+		for (int cell = 0, b = 0; cell < CELLS; cell++, b += 3) {
+			
+			IntVector r = IntVector.fromArray(INT_SPECIES, planes, b * lanes).sub(signature[b] & 0xFF);
+			IntVector g = IntVector.fromArray(INT_SPECIES, planes, (b + 1) * lanes).sub(signature[b + 1] & 0xFF);
+			IntVector bl = IntVector.fromArray(INT_SPECIES, planes, (b + 2) * lanes).sub(signature[b + 2] & 0xFF);
+			IntVector square = r.mul(r).add(g.mul(g)).add(bl.mul(bl));
+			
+			DoubleVector squareDouble = (DoubleVector) square.convertShape(VectorOperators.I2D, SPECIES, 0);
+			dist = dist.add(squareDouble.lanewise(VectorOperators.SQRT));
+			
+		}
+		dist.intoArray(out, index);
+		
+	}
+	
+}